@@ -0,0 +1,106 @@
+package org.graylog.integrations.s3.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.TestDataGenerator;
+import org.graylog2.gelfclient.GelfMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of each {@link S3Codec} on generated Cloudflare Logpush messages.
+ *
+ * The messages are built with {@link TestDataGenerator#buildMessage(int, int)}: the 60 standard fields, plus a number
+ * of extra string fields of a given length. Each invocation decodes the next message of a pre-generated set, so the
+ * results are not skewed by decoding the same string over and over. The messages are decoded from their UTF-8 bytes,
+ * as in {@link org.graylog.integrations.s3.GraylogS3Function}.
+ *
+ * Run with {@code mvn -Pjmh test-compile exec:exec}. The GC profiler is enabled, so the results include the bytes
+ * allocated per operation ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S3CodecBenchmark {
+
+    private static final int MESSAGE_COUNT = 1024;
+
+    @Param({"0", "40", "200"})
+    private int extraFields;
+
+    @Param({"16", "256"})
+    private int extraValueLength;
+
+    private byte[][] messages;
+    private int nextMessage;
+    private final DecodeContext context = new DecodeContext();
+
+    private CloudflareLogCodec cloudflareLogCodec;
+    private ApplicationJsonCodec applicationJsonCodec;
+    private PlainTextCodec plainTextCodec;
+
+    @Setup
+    public void setUp() {
+        messages = new byte[MESSAGE_COUNT][];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            messages[i] = TestDataGenerator.buildMessage(extraFields, extraValueLength).getBytes(StandardCharsets.UTF_8);
+        }
+
+        cloudflareLogCodec = new CloudflareLogCodec(new Configuration(), new ObjectMapper());
+        applicationJsonCodec = new ApplicationJsonCodec(new Configuration(), new ObjectMapper());
+        plainTextCodec = new PlainTextCodec();
+    }
+
+    @Benchmark
+    public GelfMessage cloudflareLog() throws IOException {
+        final byte[] message = nextMessage();
+        return cloudflareLogCodec.decode(message, 0, message.length, context);
+    }
+
+    @Benchmark
+    public GelfMessage applicationJson() throws IOException {
+        final byte[] message = nextMessage();
+        return applicationJsonCodec.decode(message, 0, message.length, context);
+    }
+
+    @Benchmark
+    public GelfMessage plainText() {
+        final byte[] message = nextMessage();
+        return plainTextCodec.decode(message, 0, message.length, context);
+    }
+
+    private byte[] nextMessage() {
+        final byte[] message = messages[nextMessage];
+        nextMessage = (nextMessage + 1) % MESSAGE_COUNT;
+        return message;
+    }
+
+    /**
+     * Runs the benchmarks of this class from the IDE.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(S3CodecBenchmark.class.getSimpleName())
+                                       .addProfiler(GCProfiler.class)
+                                       .build()).run();
+    }
+}
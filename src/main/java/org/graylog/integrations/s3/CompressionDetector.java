@@ -0,0 +1,132 @@
+package org.graylog.integrations.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+
+/**
+ * Detects the compression of an S3 object for the {@link CompressionType#AUTO} compression type.
+ *
+ * All supported formats start with magic bytes, so the first bytes of the content decide. The Content-Encoding of the
+ * object and the suffix of its key are only used to warn about objects that claim to be compressed but are not.
+ */
+class CompressionDetector {
+    private static final Logger LOG = LogManager.getLogger(CompressionDetector.class);
+
+    /**
+     * The number of bytes that must be pushed back into the stream after detection.
+     */
+    static final int MAGIC_LENGTH = 10;
+
+    private static final byte[] GZIP_MAGIC = {0x1f, (byte) 0x8b};
+    private static final byte[] ZSTD_MAGIC = {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd};
+    // The last three bytes of the skippable frame magic 0x184D2A5?, which pzstd writes before the first frame.
+    private static final byte[] ZSTD_SKIPPABLE_MAGIC = {0x2a, 0x4d, 0x18};
+    private static final byte[] SNAPPY_MAGIC = {(byte) 0xff, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y'};
+    // "BZh" and the block size, followed by the magic of the first block or of the end of the stream. Checking the
+    // block magic avoids mistaking a text line starting with "BZh1" for bzip2.
+    private static final byte[] BZIP2_MAGIC = {'B', 'Z', 'h'};
+    private static final byte[] BZIP2_BLOCK_MAGIC = {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+    private static final byte[] BZIP2_END_MAGIC = {0x17, 0x72, 0x45, 0x38, 0x50, (byte) 0x90};
+
+    private CompressionDetector() {
+    }
+
+    /**
+     * Reads the first bytes of the content and pushes them back.
+     *
+     * @param content         The object content, with a pushback buffer of at least {@link #MAGIC_LENGTH} bytes.
+     * @param objectKey       The S3 object key.
+     * @param contentEncoding The Content-Encoding of the object, or null if it is not known.
+     * @return The compression of the content, {@link CompressionType#NONE} if it is not compressed.
+     */
+    static CompressionType detect(PushbackInputStream content, String objectKey, String contentEncoding)
+            throws IOException {
+        final byte[] header = new byte[MAGIC_LENGTH];
+        int length = 0;
+        int read;
+        while (length < header.length && (read = content.read(header, length, header.length - length)) != -1) {
+            length += read;
+        }
+        content.unread(header, 0, length);
+
+        final CompressionType detected = detectFromMagicBytes(header, length);
+        if (detected == CompressionType.NONE && length > 0) {
+            final CompressionType declared = detectFromMetadata(objectKey, contentEncoding);
+            if (declared != CompressionType.NONE) {
+                LOG.warn("Object [{}] is declared as [{}] by its Content-Encoding [{}] or key, but does not start " +
+                         "with the magic bytes of the format. Reading it uncompressed.",
+                         objectKey, declared.getType(), contentEncoding);
+            }
+        }
+        return detected;
+    }
+
+    static CompressionType detectFromMagicBytes(byte[] header, int length) {
+        if (startsWith(header, length, 0, GZIP_MAGIC)) {
+            return CompressionType.GZIP;
+        }
+        if (startsWith(header, length, 0, ZSTD_MAGIC)
+            || (length >= 4 && (header[0] & 0xf0) == 0x50 && startsWith(header, length, 1, ZSTD_SKIPPABLE_MAGIC))) {
+            return CompressionType.ZSTD;
+        }
+        if (startsWith(header, length, 0, SNAPPY_MAGIC)) {
+            return CompressionType.SNAPPY;
+        }
+        if (startsWith(header, length, 0, BZIP2_MAGIC) && length > 3 && header[3] >= '1' && header[3] <= '9'
+            && (startsWith(header, length, 4, BZIP2_BLOCK_MAGIC) || startsWith(header, length, 4, BZIP2_END_MAGIC))) {
+            return CompressionType.BZIP2;
+        }
+        return CompressionType.NONE;
+    }
+
+    /**
+     * @return The compression declared by the Content-Encoding, or else by the key suffix.
+     */
+    static CompressionType detectFromMetadata(String objectKey, String contentEncoding) {
+        if (contentEncoding != null) {
+            switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+                case "gzip":
+                case "x-gzip":
+                    return CompressionType.GZIP;
+                case "zstd":
+                    return CompressionType.ZSTD;
+                case "bzip2":
+                case "x-bzip2":
+                    return CompressionType.BZIP2;
+                case "snappy":
+                case "x-snappy-framed":
+                    return CompressionType.SNAPPY;
+                default:
+                    break;
+            }
+        }
+
+        final String key = objectKey == null ? "" : objectKey.toLowerCase(Locale.ROOT);
+        if (key.endsWith(".gz") || key.endsWith(".gzip")) {
+            return CompressionType.GZIP;
+        } else if (key.endsWith(".zst") || key.endsWith(".zstd")) {
+            return CompressionType.ZSTD;
+        } else if (key.endsWith(".bz2")) {
+            return CompressionType.BZIP2;
+        } else if (key.endsWith(".sz") || key.endsWith(".snappy")) {
+            return CompressionType.SNAPPY;
+        }
+        return CompressionType.NONE;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, byte[] magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
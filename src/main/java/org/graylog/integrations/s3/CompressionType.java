@@ -12,6 +12,12 @@ import java.util.Objects;
  */
 public enum CompressionType {
     GZIP("gzip"),
+    ZSTD("zstd"),
+    BZIP2("bzip2"),
+    // Snappy framing format, see https://github.com/google/snappy/blob/main/framing_format.txt
+    SNAPPY("snappy"),
+    // Detected for each object, see CompressionDetector.
+    AUTO("auto"),
     NONE("none");
 
     private static final Logger LOG = LogManager.getLogger(CompressionType.class);
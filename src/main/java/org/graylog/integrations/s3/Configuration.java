@@ -1,9 +1,15 @@
 package org.graylog.integrations.s3;
 
 import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.ValidationException;
+import com.github.joschi.jadconfig.ValidatorMethod;
 import com.github.joschi.jadconfig.converters.TrimmedStringListConverter;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.StringNotBlankValidator;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.HostAndPort;
+import org.graylog.integrations.s3.filter.FilterRule;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,11 +34,51 @@ public class Configuration {
     private static final String TCP_NO_DELAY = "TCP_NO_DELAY";
     private static final String TCP_QUEUE_SIZE = "TCP_QUEUE_SIZE";
     private static final String TCP_MAX_IN_FLIGHT_SENDS = "TCP_MAX_IN_FLIGHT_SENDS";
+    private static final String ADAPTIVE_SENDING = "ADAPTIVE_SENDING";
     private static final String CONTENT_TYPE = "CONTENT_TYPE";
     private static final String COMPRESSION_TYPE = "COMPRESSION_TYPE";
     private static final String PROTOCOL_TYPE = "PROTOCOL_TYPE";
+    private static final String LOAD_BALANCING = "LOAD_BALANCING";
+    private static final String HTTP_BATCH_SIZE = "HTTP_BATCH_SIZE";
+    private static final String HTTP_LINGER_MS = "HTTP_LINGER_MS";
+    private static final String HTTP_GZIP = "HTTP_GZIP";
+    private static final String HTTP_TLS = "HTTP_TLS";
+    private static final String HTTP_SOCKET_TIMEOUT = "HTTP_SOCKET_TIMEOUT";
     private static final String SHUTDOWN_FLUSH_TIMEOUT_MS = "SHUTDOWN_FLUSH_TIMEOUT_MS";
     private static final String SHUTDOWN_FLUSH_RETRIES = "SHUTDOWN_FLUSH_RETRIES";
+    private static final String MAX_LINE_LENGTH = "MAX_LINE_LENGTH";
+    private static final String S3_ENDPOINT = "S3_ENDPOINT";
+    private static final String RANGED_GET_THRESHOLD = "RANGED_GET_THRESHOLD";
+    private static final String RANGED_GET_CHUNK_SIZE = "RANGED_GET_CHUNK_SIZE";
+    private static final String RANGED_GET_PARALLELISM = "RANGED_GET_PARALLELISM";
+    private static final String RECORD_PARALLELISM = "RECORD_PARALLELISM";
+    private static final String DECODE_THREADS = "DECODE_THREADS";
+    private static final String DECODE_BATCH_SIZE = "DECODE_BATCH_SIZE";
+    private static final String DECODE_QUEUE_SIZE = "DECODE_QUEUE_SIZE";
+    private static final String DECODE_ERROR_BUDGET = "DECODE_ERROR_BUDGET";
+    private static final String DEAD_LETTER_SINK = "DEAD_LETTER_SINK";
+    private static final String DEAD_LETTER_FILE = "DEAD_LETTER_FILE";
+    private static final String DEAD_LETTER_BUCKET = "DEAD_LETTER_BUCKET";
+    private static final String DEAD_LETTER_PREFIX = "DEAD_LETTER_PREFIX";
+    private static final String DEAD_LETTER_BATCH_SIZE = "DEAD_LETTER_BATCH_SIZE";
+    private static final String FILTER_RULES = "FILTER_RULES";
+    private static final String GZIP_INFLATE_THREADS = "GZIP_INFLATE_THREADS";
+    private static final String GZIP_INFLATE_CHUNK_SIZE = "GZIP_INFLATE_CHUNK_SIZE";
+    private static final String CHECKPOINT_BUCKET = "CHECKPOINT_BUCKET";
+    private static final String CHECKPOINT_PREFIX = "CHECKPOINT_PREFIX";
+    private static final String CHECKPOINT_RESERVE_MS = "CHECKPOINT_RESERVE_MS";
+    private static final String IDEMPOTENCY_CACHE_SIZE = "IDEMPOTENCY_CACHE_SIZE";
+    private static final String IDEMPOTENCY_STORE = "IDEMPOTENCY_STORE";
+    private static final String IDEMPOTENCY_FILE = "IDEMPOTENCY_FILE";
+    private static final String IDEMPOTENCY_BUCKET = "IDEMPOTENCY_BUCKET";
+    private static final String IDEMPOTENCY_PREFIX = "IDEMPOTENCY_PREFIX";
+    private static final String METRICS_ENABLED = "METRICS_ENABLED";
+    private static final String METRICS_NAMESPACE = "METRICS_NAMESPACE";
+    private static final String PRIMING_MESSAGES = "PRIMING_MESSAGES";
+    private static final String JSON_MAX_DEPTH = "JSON_MAX_DEPTH";
+    private static final String JSON_MAX_FIELDS = "JSON_MAX_FIELDS";
+    private static final String JSON_INCLUDE_PATHS = "JSON_INCLUDE_PATHS";
+    private static final String JSON_EXCLUDE_PATHS = "JSON_EXCLUDE_PATHS";
 
     // Logpush config
     private static final String LOG_PUSH_PREFIX = "CLOUDFLARE_LOGPUSH_";
@@ -45,6 +91,7 @@ public class Configuration {
     @Parameter(value = LOG_LEVEL)
     private String logLevel;
 
+    // One or more comma-separated Graylog nodes, each with an optional port (e.g. "graylog-1:12201, graylog-2").
     @Parameter(value = GRAYLOG_HOST, required = true, validators = StringNotBlankValidator.class)
     private String graylogHost;
 
@@ -66,9 +113,16 @@ public class Configuration {
     @Parameter(value = TCP_QUEUE_SIZE, required = true, validators = PositiveIntegerValidator.class)
     private int queueSize = 512;
 
+    // The maximum number of messages written to a TCP or UDP transport before it is flushed. The name is kept from
+    // gelfclient, where it limited the messages in flight in the Netty pipeline.
     @Parameter(value = TCP_MAX_IN_FLIGHT_SENDS, required = true, validators = PositiveIntegerValidator.class)
     private int maxInflightSends = 512;
 
+    // Tune the queue size and in-flight sends from the send latency, queue wait time and free heap. The configured
+    // values are then the maximums.
+    @Parameter(value = ADAPTIVE_SENDING, required = true)
+    private boolean adaptiveSending = true;
+
     @Parameter(value = CONTENT_TYPE, required = true, validators = StringNotBlankValidator.class)
     private String contentType = ContentType.TEXT_PLAIN.getType();
 
@@ -78,6 +132,32 @@ public class Configuration {
     @Parameter(value = PROTOCOL_TYPE, required = true, validators = StringNotBlankValidator.class)
     private String protocolType = ProtocolType.TCP.getType();
 
+    // How messages are spread over the Graylog nodes, if there are several.
+    @Parameter(value = LOAD_BALANCING, required = true, validators = StringNotBlankValidator.class)
+    private String loadBalancing = LoadBalancingType.ROUND_ROBIN.getType();
+
+    // ** HTTP protocol specific fields.
+
+    // The number of messages sent in one request. More than one requires bulk receiving on the GELF HTTP input.
+    @Parameter(value = HTTP_BATCH_SIZE, required = true, validators = PositiveIntegerValidator.class)
+    private int httpBatchSize = 1;
+
+    // The number of milliseconds to wait for more messages before a request which is not full is sent.
+    @Parameter(value = HTTP_LINGER_MS, required = true)
+    private int httpLingerMs = 5;
+
+    // GZIP compress request bodies.
+    @Parameter(value = HTTP_GZIP, required = true)
+    private boolean httpGzip = false;
+
+    // Send requests with HTTPS.
+    @Parameter(value = HTTP_TLS, required = true)
+    private boolean httpTls = false;
+
+    // The number of milliseconds to wait for data of the response, after the request has been written.
+    @Parameter(value = HTTP_SOCKET_TIMEOUT, required = true, validators = PositiveIntegerValidator.class)
+    private int httpSocketTimeout = 60000;
+
     // The number of milliseconds to wait for messages to finish sending during shutdown.
     @Parameter(value = SHUTDOWN_FLUSH_TIMEOUT_MS, required = true, validators = PositiveIntegerValidator.class)
     private int shutdownFlushTimeoutMs = 100;
@@ -87,6 +167,142 @@ public class Configuration {
     @Parameter(value = SHUTDOWN_FLUSH_RETRIES, required = true, validators = PositiveIntegerValidator.class)
     private int shutdownFlushReties = 600;
 
+    // The maximum number of bytes in a single line of an S3 object. Longer lines are skipped.
+    @Parameter(value = MAX_LINE_LENGTH, required = true, validators = PositiveIntegerValidator.class)
+    private int maxLineLength = 8 * 1024 * 1024;
+
+    // The endpoint of an S3 compatible service, instead of AWS S3.
+    @Parameter(value = S3_ENDPOINT)
+    private String s3Endpoint;
+
+    // Uncompressed objects of at least this many bytes are downloaded with concurrent byte-range requests. With
+    // COMPRESSION_TYPE auto, a small range request for the first bytes of such an object detects its compression.
+    @Parameter(value = RANGED_GET_THRESHOLD, required = true, validators = PositiveIntegerValidator.class)
+    private int rangedGetThreshold = 64 * 1024 * 1024;
+
+    // The number of bytes requested by each byte-range request.
+    @Parameter(value = RANGED_GET_CHUNK_SIZE, required = true, validators = PositiveIntegerValidator.class)
+    private int rangedGetChunkSize = 8 * 1024 * 1024;
+
+    // The maximum number of concurrent byte-range requests per object. 1 disables byte-range requests.
+    @Parameter(value = RANGED_GET_PARALLELISM, required = true, validators = PositiveIntegerValidator.class)
+    private int rangedGetParallelism = 4;
+
+    // The number of S3 event records (objects) processed concurrently. 0 uses one per available processor.
+    @Parameter(value = RECORD_PARALLELISM, required = true)
+    private int recordParallelism = 0;
+
+    // The number of threads decoding messages. 0 uses one per available processor.
+    @Parameter(value = DECODE_THREADS, required = true)
+    private int decodeThreads = 0;
+
+    // The number of lines handed from the reader to the decode threads at once.
+    @Parameter(value = DECODE_BATCH_SIZE, required = true, validators = PositiveIntegerValidator.class)
+    private int decodeBatchSize = 256;
+
+    // The maximum number of batches per object that are waiting to be decoded.
+    @Parameter(value = DECODE_QUEUE_SIZE, required = true, validators = PositiveIntegerValidator.class)
+    private int decodeQueueSize = 8;
+
+    // The number of lines per object which may fail to decode. The rest of the object is skipped after that.
+    @Parameter(value = DECODE_ERROR_BUDGET, required = true)
+    private int decodeErrorBudget = 100;
+
+    // Where lines which failed to decode are kept.
+    @Parameter(value = DEAD_LETTER_SINK, required = true, validators = StringNotBlankValidator.class)
+    private String deadLetterSink = DeadLetterSinkType.LOGGING.getType();
+
+    @Parameter(value = DEAD_LETTER_FILE, required = true, validators = StringNotBlankValidator.class)
+    private String deadLetterFile = "/tmp/graylog-s3-lambda/dead-letters.json";
+
+    @Parameter(value = DEAD_LETTER_BUCKET)
+    private String deadLetterBucket;
+
+    @Parameter(value = DEAD_LETTER_PREFIX, required = true)
+    private String deadLetterPrefix = "dead-letters/";
+
+    // The number of dead letters written at once. Remaining ones are written at the end of each invocation.
+    @Parameter(value = DEAD_LETTER_BATCH_SIZE, required = true, validators = PositiveIntegerValidator.class)
+    private int deadLetterBatchSize = 1000;
+
+    // Which lines are dropped or sampled before they are decoded. See FilterRule for the format.
+    @Parameter(value = FILTER_RULES)
+    private String filterRules;
+
+    // The number of threads inflating the members of multi-member gzip objects. 0 uses one per available processor,
+    // 1 inflates serially.
+    @Parameter(value = GZIP_INFLATE_THREADS, required = true)
+    private int gzipInflateThreads = 0;
+
+    // The number of compressed bytes of a multi-member gzip object that are inflated by one task.
+    @Parameter(value = GZIP_INFLATE_CHUNK_SIZE, required = true, validators = PositiveIntegerValidator.class)
+    private int gzipInflateChunkSize = 1024 * 1024;
+
+    // ** Checkpoint specific fields.
+
+    // The bucket in which checkpoints of partly processed objects are stored. Checkpointing is disabled if not set.
+    @Parameter(value = CHECKPOINT_BUCKET)
+    private String checkpointBucket;
+
+    @Parameter(value = CHECKPOINT_PREFIX, required = true)
+    private String checkpointPrefix = "checkpoints/";
+
+    // The number of milliseconds before the Lambda timeout at which reading stops, to flush and store checkpoints.
+    @Parameter(value = CHECKPOINT_RESERVE_MS, required = true, validators = PositiveIntegerValidator.class)
+    private int checkpointReserveMs = 15000;
+
+    // ** Idempotency specific fields.
+
+    // The number of processed objects remembered in memory. 0 only uses the idempotency store.
+    @Parameter(value = IDEMPOTENCY_CACHE_SIZE, required = true)
+    private int idempotencyCacheSize = 10000;
+
+    // Where processed objects are remembered across containers.
+    @Parameter(value = IDEMPOTENCY_STORE, required = true, validators = StringNotBlankValidator.class)
+    private String idempotencyStore = IdempotencyStoreType.NONE.getType();
+
+    @Parameter(value = IDEMPOTENCY_FILE, required = true, validators = StringNotBlankValidator.class)
+    private String idempotencyFile = "/tmp/graylog-s3-lambda/processed-objects";
+
+    @Parameter(value = IDEMPOTENCY_BUCKET)
+    private String idempotencyBucket;
+
+    @Parameter(value = IDEMPOTENCY_PREFIX, required = true)
+    private String idempotencyPrefix = "processed/";
+
+    // ** Metrics specific fields.
+
+    // Write the stage metrics of each invocation to stdout in CloudWatch embedded metric format.
+    @Parameter(value = METRICS_ENABLED, required = true)
+    private boolean metricsEnabled = false;
+
+    @Parameter(value = METRICS_NAMESPACE, required = true, validators = StringNotBlankValidator.class)
+    private String metricsNamespace = "Graylog/S3Lambda";
+
+    // ** SnapStart specific fields.
+
+    // The number of generated messages decoded before a snapshot is taken, so that the snapshot holds compiled code.
+    @Parameter(value = PRIMING_MESSAGES, required = true)
+    private int primingMessages = 20000;
+
+    // ** JSON (application/json) specific fields.
+
+    // The maximum nesting depth of objects and arrays which are flattened. Deeper values are dropped.
+    @Parameter(value = JSON_MAX_DEPTH, required = true, validators = PositiveIntegerValidator.class)
+    private int jsonMaxDepth = 32;
+
+    // The maximum number of fields added to a message. The remaining fields are dropped.
+    @Parameter(value = JSON_MAX_FIELDS, required = true, validators = PositiveIntegerValidator.class)
+    private int jsonMaxFields = 1000;
+
+    // Flattened paths (e.g. "requestParameters" or "Records[0]_eventName") to include. This defaults to all.
+    @Parameter(value = JSON_INCLUDE_PATHS, converter = TrimmedStringListConverter.class)
+    private List<String> jsonIncludePaths = new ArrayList<>();
+
+    // Flattened paths to exclude, including everything below them.
+    @Parameter(value = JSON_EXCLUDE_PATHS, converter = TrimmedStringListConverter.class)
+    private List<String> jsonExcludePaths = new ArrayList<>();
+
     // ** Logpush specific fields.
 
     // Fields to parse and store with the message in Graylog. This defaults to all.
@@ -96,12 +312,85 @@ public class Configuration {
     @Parameter(value = LOGPUSH_MESSAGE_SUMMARY_FIELDS, required = true, converter = TrimmedStringListConverter.class)
     private List<String> messageSummaryFields = Arrays.asList("ClientRequestHost", "ClientRequestPath", "OriginIP", "ClientSrcPort", "EdgeServerIP", "EdgeResponseBytes");
 
+    // Parsed from graylogHost on first use.
+    private List<HostAndPort> graylogEndpoints;
+
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateGraylogEndpoints() throws ValidationException {
+        try {
+            getGraylogEndpoints();
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid " + GRAYLOG_HOST + " [" + graylogHost + "]: " + e.getMessage());
+        }
+    }
+
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateIdempotencyStore() throws ValidationException {
+        if (idempotencyCacheSize < 0) {
+            throw new ValidationException(IDEMPOTENCY_CACHE_SIZE + " must not be negative.");
+        }
+        if (getIdempotencyStoreType() == IdempotencyStoreType.S3 && getIdempotencyBucket() == null) {
+            throw new ValidationException(IDEMPOTENCY_BUCKET + " is required for " + IDEMPOTENCY_STORE + " ["
+                                          + idempotencyStore + "].");
+        }
+    }
+
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateDeadLetterSink() throws ValidationException {
+        if (decodeErrorBudget < 0) {
+            throw new ValidationException(DECODE_ERROR_BUDGET + " must not be negative.");
+        }
+        if (getDeadLetterSinkType() == DeadLetterSinkType.S3 && getDeadLetterBucket() == null) {
+            throw new ValidationException(DEAD_LETTER_BUCKET + " is required for " + DEAD_LETTER_SINK + " ["
+                                          + deadLetterSink + "].");
+        }
+    }
+
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateFilterRules() throws ValidationException {
+        final List<FilterRule> rules;
+        try {
+            rules = getFilterRules();
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid " + FILTER_RULES + " [" + filterRules + "]: " + e.getMessage());
+        }
+        if (getContentType() == ContentType.TEXT_PLAIN
+            && rules.stream().anyMatch(rule -> !rule.getConditions().isEmpty())) {
+            throw new ValidationException(FILTER_RULES + " can only have conditions on fields for JSON content types.");
+        }
+    }
+
     public String getLogLevel() {
         return logLevel;
     }
 
+    /**
+     * @return The host of the first Graylog node.
+     */
     public String getGraylogHost() {
-        return graylogHost;
+        return graylogHost == null ? null : getGraylogEndpoints().get(0).getHost();
+    }
+
+    /**
+     * @return The Graylog nodes. Nodes without a port use {@link #getGraylogPort()}.
+     */
+    public List<HostAndPort> getGraylogEndpoints() {
+        if (graylogEndpoints == null) {
+            final ImmutableList.Builder<HostAndPort> endpoints = ImmutableList.builder();
+            for (String endpoint : Splitter.on(',').trimResults().omitEmptyStrings().split(graylogHost)) {
+                endpoints.add(HostAndPort.fromString(endpoint).withDefaultPort(graylogPort));
+            }
+            final List<HostAndPort> parsed = endpoints.build();
+            if (parsed.isEmpty()) {
+                throw new IllegalArgumentException("No Graylog host specified.");
+            }
+            graylogEndpoints = parsed;
+        }
+        return graylogEndpoints;
     }
 
     public int getGraylogPort() {
@@ -132,6 +421,30 @@ public class Configuration {
         return maxInflightSends;
     }
 
+    public boolean getAdaptiveSending() {
+        return adaptiveSending;
+    }
+
+    public int getHttpBatchSize() {
+        return httpBatchSize;
+    }
+
+    public int getHttpLingerMs() {
+        return httpLingerMs;
+    }
+
+    public boolean getHttpGzip() {
+        return httpGzip;
+    }
+
+    public boolean getHttpTls() {
+        return httpTls;
+    }
+
+    public int getHttpSocketTimeout() {
+        return httpSocketTimeout;
+    }
+
     public ContentType getContentType() {
         return ContentType.findByType(contentType);
     }
@@ -148,6 +461,10 @@ public class Configuration {
         return ProtocolType.findByType(protocolType);
     }
 
+    public LoadBalancingType getLoadBalancingType() {
+        return LoadBalancingType.findByType(loadBalancing);
+    }
+
     public int getShutdownFlushTimeoutMs() {
         return shutdownFlushTimeoutMs;
     }
@@ -156,6 +473,161 @@ public class Configuration {
         return shutdownFlushReties;
     }
 
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    public String getS3Endpoint() {
+        return s3Endpoint == null || s3Endpoint.trim().isEmpty() ? null : s3Endpoint.trim();
+    }
+
+    public int getRangedGetThreshold() {
+        return rangedGetThreshold;
+    }
+
+    public int getRangedGetChunkSize() {
+        return rangedGetChunkSize;
+    }
+
+    public int getRangedGetParallelism() {
+        return rangedGetParallelism;
+    }
+
+    public int getRecordParallelism() {
+        return recordParallelism > 0 ? recordParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads > 0 ? decodeThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getDecodeBatchSize() {
+        return decodeBatchSize;
+    }
+
+    public int getDecodeQueueSize() {
+        return decodeQueueSize;
+    }
+
+    public int getDecodeErrorBudget() {
+        return decodeErrorBudget;
+    }
+
+    public DeadLetterSinkType getDeadLetterSinkType() {
+        return DeadLetterSinkType.findByType(deadLetterSink);
+    }
+
+    public String getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    public String getDeadLetterBucket() {
+        return deadLetterBucket == null || deadLetterBucket.trim().isEmpty() ? null : deadLetterBucket.trim();
+    }
+
+    public String getDeadLetterPrefix() {
+        return deadLetterPrefix;
+    }
+
+    public int getDeadLetterBatchSize() {
+        return deadLetterBatchSize;
+    }
+
+    /**
+     * @return The rules of FILTER_RULES, in order. Empty if no lines are filtered.
+     * @throws IllegalArgumentException If a rule is invalid.
+     */
+    public List<FilterRule> getFilterRules() {
+        return FilterRule.parseAll(filterRules);
+    }
+
+    public int getGzipInflateThreads() {
+        return gzipInflateThreads > 0 ? gzipInflateThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getGzipInflateChunkSize() {
+        return gzipInflateChunkSize;
+    }
+
+    /**
+     * @return The checkpoint bucket, or null if checkpointing is disabled.
+     */
+    public String getCheckpointBucket() {
+        return checkpointBucket == null || checkpointBucket.trim().isEmpty() ? null : checkpointBucket.trim();
+    }
+
+    public String getCheckpointPrefix() {
+        return checkpointPrefix;
+    }
+
+    public int getCheckpointReserveMs() {
+        return checkpointReserveMs;
+    }
+
+    public int getIdempotencyCacheSize() {
+        return idempotencyCacheSize;
+    }
+
+    public IdempotencyStoreType getIdempotencyStoreType() {
+        return IdempotencyStoreType.findByType(idempotencyStore);
+    }
+
+    public String getIdempotencyFile() {
+        return idempotencyFile;
+    }
+
+    public String getIdempotencyBucket() {
+        return idempotencyBucket == null || idempotencyBucket.trim().isEmpty() ? null : idempotencyBucket.trim();
+    }
+
+    public String getIdempotencyPrefix() {
+        return idempotencyPrefix;
+    }
+
+    public boolean getMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public String getMetricsNamespace() {
+        return metricsNamespace;
+    }
+
+    public int getPrimingMessages() {
+        return primingMessages;
+    }
+
+    public int getJsonMaxDepth() {
+        return jsonMaxDepth;
+    }
+
+    public void setJsonMaxDepth(int jsonMaxDepth) {
+        this.jsonMaxDepth = jsonMaxDepth;
+    }
+
+    public int getJsonMaxFields() {
+        return jsonMaxFields;
+    }
+
+    public void setJsonMaxFields(int jsonMaxFields) {
+        this.jsonMaxFields = jsonMaxFields;
+    }
+
+    public List<String> getJsonIncludePaths() {
+        return jsonIncludePaths;
+    }
+
+    public void setJsonIncludePaths(List<String> jsonIncludePaths) {
+        this.jsonIncludePaths = jsonIncludePaths;
+    }
+
+    public List<String> getJsonExcludePaths() {
+        return jsonExcludePaths;
+    }
+
+    public void setJsonExcludePaths(List<String> jsonExcludePaths) {
+        this.jsonExcludePaths = jsonExcludePaths;
+    }
+
     public List<String> getMessageFields() {
         return messageFields;
     }
@@ -183,9 +655,49 @@ public class Configuration {
                ", tcpNoDelay=" + tcpNoDelay +
                ", queueSize=" + queueSize +
                ", maxInflightSends=" + maxInflightSends +
+               ", adaptiveSending=" + adaptiveSending +
                ", contentType='" + contentType + '\'' +
                ", compressionType='" + compressionType + '\'' +
                ", protocolType='" + protocolType + '\'' +
+               ", loadBalancing='" + loadBalancing + '\'' +
+               ", httpBatchSize=" + httpBatchSize +
+               ", httpLingerMs=" + httpLingerMs +
+               ", httpGzip=" + httpGzip +
+               ", httpTls=" + httpTls +
+               ", httpSocketTimeout=" + httpSocketTimeout +
+               ", maxLineLength=" + maxLineLength +
+               ", s3Endpoint='" + s3Endpoint + '\'' +
+               ", rangedGetThreshold=" + rangedGetThreshold +
+               ", rangedGetChunkSize=" + rangedGetChunkSize +
+               ", rangedGetParallelism=" + rangedGetParallelism +
+               ", recordParallelism=" + recordParallelism +
+               ", decodeThreads=" + decodeThreads +
+               ", decodeBatchSize=" + decodeBatchSize +
+               ", decodeQueueSize=" + decodeQueueSize +
+               ", decodeErrorBudget=" + decodeErrorBudget +
+               ", deadLetterSink='" + deadLetterSink + '\'' +
+               ", deadLetterFile='" + deadLetterFile + '\'' +
+               ", deadLetterBucket='" + deadLetterBucket + '\'' +
+               ", deadLetterPrefix='" + deadLetterPrefix + '\'' +
+               ", deadLetterBatchSize=" + deadLetterBatchSize +
+               ", filterRules='" + filterRules + '\'' +
+               ", gzipInflateThreads=" + gzipInflateThreads +
+               ", gzipInflateChunkSize=" + gzipInflateChunkSize +
+               ", checkpointBucket='" + checkpointBucket + '\'' +
+               ", checkpointPrefix='" + checkpointPrefix + '\'' +
+               ", checkpointReserveMs=" + checkpointReserveMs +
+               ", idempotencyCacheSize=" + idempotencyCacheSize +
+               ", idempotencyStore='" + idempotencyStore + '\'' +
+               ", idempotencyFile='" + idempotencyFile + '\'' +
+               ", idempotencyBucket='" + idempotencyBucket + '\'' +
+               ", idempotencyPrefix='" + idempotencyPrefix + '\'' +
+               ", metricsEnabled=" + metricsEnabled +
+               ", metricsNamespace='" + metricsNamespace + '\'' +
+               ", primingMessages=" + primingMessages +
+               ", jsonMaxDepth=" + jsonMaxDepth +
+               ", jsonMaxFields=" + jsonMaxFields +
+               ", jsonIncludePaths='" + jsonIncludePaths + '\'' +
+               ", jsonExcludePaths='" + jsonExcludePaths + '\'' +
                ", messageFields='" + messageFields + '\'' +
                ", messageSummaryFields='" + messageSummaryFields + '\'' +
                '}';
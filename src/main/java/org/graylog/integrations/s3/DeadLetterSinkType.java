@@ -0,0 +1,47 @@
+package org.graylog.integrations.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Configurable destination for lines which failed to decode.
+ * See {@link Configuration}.
+ */
+public enum DeadLetterSinkType {
+    // Each line is logged.
+    LOGGING("log"),
+    // Lines are appended to a local file as JSON, one per line.
+    FILE("file"),
+    // Lines are written to a bucket as gzip-compressed JSON objects, one per batch.
+    S3("s3");
+
+    private static final Logger LOG = LogManager.getLogger(DeadLetterSinkType.class);
+    private final String type;
+
+    DeadLetterSinkType(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Get the DeadLetterSinkType enum for the specified type.
+     * Default to LOGGING.
+     */
+    public static DeadLetterSinkType findByType(String type) {
+
+        return Arrays.stream(DeadLetterSinkType.values())
+                     .filter(Objects::nonNull)
+                     .filter(v -> v.type.equals(type))
+                     .findAny()
+                     .orElseGet(() -> {
+                         LOG.warn("Dead-letter sink type [{}] not found. Defaulting to [{}].", type, LOGGING);
+                         return LOGGING;
+                     });
+    }
+}
@@ -0,0 +1,374 @@
+package org.graylog.integrations.s3;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.codec.DecodeContext;
+import org.graylog.integrations.s3.codec.S3Codec;
+import org.graylog.integrations.s3.deadletter.DeadLetterSink;
+import org.graylog.integrations.s3.filter.MessageFilter;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.gelf.GelfFrameWriter;
+import org.graylog.integrations.s3.metrics.Metric;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog.integrations.s3.transport.GelfFrameTransport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads, decodes and sends the lines of an S3 object in separate stages, so that decompression, decoding and network
+ * I/O overlap instead of blocking each other.
+ *
+ * - The calling thread reads lines and copies their bytes into batches. No String is built for a line.
+ * - A shared pool of decode threads drops the lines the filter rules do not keep, encodes each remaining line
+ *   straight into a GELF frame, and passes the frames to the transport.
+ * - The transport sends the messages from its own bounded queue.
+ *
+ * The number of batches waiting for or being decoded is bounded per object, so a slow transport applies backpressure
+ * to the reader rather than letting decoded messages pile up in memory. Messages from different batches may be sent
+ * out of order.
+ */
+class DecodePipeline {
+    private static final Logger LOG = LogManager.getLogger(DecodePipeline.class);
+
+    private static final int INITIAL_BATCH_BYTES = 64 * 1024;
+    private static final int MAX_RETAINED_BATCH_BYTES = 4 * 1024 * 1024;
+
+    private final S3Codec s3Codec;
+    private final MessageFilter messageFilter;
+    private final GelfFrameTransport gelfTransport;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final int errorBudget;
+    private final DeadLetterSink deadLetterSink;
+    private final StageMetrics metrics;
+    private final ExecutorService decodeExecutor;
+    // Batches are reused, so that reading an object does not allocate new buffers for every batch.
+    private final Queue<LineBatch> freeBatches = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param messageFilter  Decides which lines are decoded and sent.
+     * @param errorBudget    The number of lines per object which may fail to decode before the rest of the object is
+     *                       skipped.
+     * @param deadLetterSink Receives the lines which failed to decode.
+     */
+    DecodePipeline(S3Codec s3Codec, MessageFilter messageFilter, GelfFrameTransport gelfTransport, int decodeThreads,
+                   int batchSize, int maxPendingBatches, int errorBudget, DeadLetterSink deadLetterSink,
+                   StageMetrics metrics) {
+        this.s3Codec = s3Codec;
+        this.messageFilter = messageFilter;
+        this.gelfTransport = gelfTransport;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPendingBatches = Math.max(1, maxPendingBatches);
+        this.errorBudget = Math.max(0, errorBudget);
+        this.deadLetterSink = deadLetterSink;
+        this.metrics = metrics;
+        this.decodeExecutor = Executors.newFixedThreadPool(Math.max(1, decodeThreads),
+                                                           new ThreadFactoryBuilder().setNameFormat("s3-decode-%d")
+                                                                                     .setDaemon(true)
+                                                                                     .build());
+    }
+
+    /**
+     * Processes all lines of an object. Lines which fail to decode are handed to the dead-letter sink. Processing stops
+     * when more lines than the error budget fail to decode, or when a message fails to send.
+     *
+     * @return The number of messages that were sent.
+     */
+    long process(LineReader lineReader, String objectKey) throws IOException, InterruptedException {
+        return process(lineReader, objectKey, () -> false).getSentMessages();
+    }
+
+    /**
+     * Processes the lines of an object until the end of the object, or until a stop is requested. The stop is checked
+     * after each batch, so that all lines up to {@link Result#getPosition()} have been processed when this returns.
+     * A stop which is requested after the last batch of the object is ignored, since nothing would be left to resume.
+     */
+    Result process(LineReader lineReader, String objectKey, BooleanSupplier stopRequested)
+            throws IOException, InterruptedException {
+        final ObjectRun run = new ObjectRun(objectKey);
+        boolean stopped = false;
+        try {
+            LineBatch batch = takeBatch();
+            while (!run.aborted.get()) {
+                try {
+                    if (!lineReader.nextLine()) {
+                        break;
+                    }
+                } catch (LineReader.MalformedLineException e) {
+                    LOG.warn("Skipping unreadable line in file [{}]: {}", objectKey, e.getMessage());
+                    metrics.increment(Metric.MALFORMED_LINES);
+                    continue;
+                }
+
+                if (lineReader.getLineLength() == 0) {
+                    LOG.warn("Line is empty. Skipping.");
+                    continue;
+                }
+
+                batch.add(lineReader.getLineBuffer(), lineReader.getLineOffset(), lineReader.getLineLength());
+                if (batch.size() == batchSize) {
+                    submit(run, batch);
+                    batch = takeBatch();
+                    if (stopRequested.getAsBoolean() && lineReader.hasRemaining()) {
+                        stopped = true;
+                        break;
+                    }
+                }
+            }
+
+            if (batch.size() > 0 && !run.aborted.get()) {
+                submit(run, batch);
+            } else {
+                releaseBatch(batch);
+            }
+        } finally {
+            // Wait until all submitted batches are done, even if reading failed.
+            run.pendingBatches.acquireUninterruptibly(maxPendingBatches);
+        }
+        if (run.failedLines.get() > 0) {
+            LOG.warn("[{}] lines of file [{}] failed to decode.", run.failedLines.get(), objectKey);
+        }
+        return new Result(run.sentMessages.get(), stopped && !run.aborted.get(), run.aborted.get(),
+                          lineReader.getPosition());
+    }
+
+    private void submit(ObjectRun run, LineBatch batch) throws InterruptedException {
+        // Blocks while the maximum number of batches is pending for this object.
+        try {
+            run.pendingBatches.acquire();
+        } catch (InterruptedException e) {
+            releaseBatch(batch);
+            throw e;
+        }
+        metrics.add(Metric.LINES_FRAMED, batch.size());
+        try {
+            decodeExecutor.execute(() -> decodeAndSend(run, batch));
+        } catch (RuntimeException e) {
+            run.pendingBatches.release();
+            releaseBatch(batch);
+            throw e;
+        }
+    }
+
+    private void decodeAndSend(ObjectRun run, LineBatch batch) {
+        final DecodeContext context = DecodeContext.forCurrentThread();
+        final long startNanos = System.nanoTime();
+        final boolean filtering = !messageFilter.isEmpty();
+        int filteredLines = 0;
+        // Time blocked on the transport, which is not decoding time. The transport reports its own stages.
+        long sendNanos = 0;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (run.aborted.get()) {
+                    return;
+                }
+
+                if (filtering && !messageFilter.accept(batch.data, batch.getOffset(i), batch.getLength(i))) {
+                    filteredLines++;
+                    continue;
+                }
+
+                final GelfFrame frame;
+                try {
+                    frame = encode(batch.data, batch.getOffset(i), batch.getLength(i), context);
+                } catch (IOException | RuntimeException e) {
+                    // A broken line only costs itself, until the object has used up its error budget.
+                    metrics.increment(Metric.DECODE_FAILURES);
+                    deadLetterSink.add(run.objectKey, batch.getLine(i), e);
+                    if (run.failedLines.incrementAndGet() > errorBudget && run.aborted.compareAndSet(false, true)) {
+                        LOG.error("More than [{}] lines of file [{}] failed to decode. Skipping the rest of the file.",
+                                  errorBudget, run.objectKey);
+                    }
+                    continue;
+                }
+
+                final long sendStartNanos = System.nanoTime();
+                try {
+                    gelfTransport.send(frame);
+                    sendNanos += System.nanoTime() - sendStartNanos;
+                } catch (InterruptedException e) {
+                    frame.release();
+                    LOG.error("Interrupted while sending messages of file [{}]. Skipping the rest of the file.",
+                              run.objectKey);
+                    run.aborted.set(true);
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    frame.release();
+                    LOG.error("An uncaught exception was thrown while processing file [{}]. Skipping file.",
+                              run.objectKey, e);
+                    run.aborted.set(true);
+                    return;
+                }
+
+                final long sent = run.sentMessages.incrementAndGet();
+                if (LOG.isDebugEnabled() && sent % 100 == 0) { // Only log once per 100 messages.
+                    LOG.debug("Sent [{}] messages.", sent);
+                }
+            }
+        } finally {
+            metrics.add(Metric.DECODE_TIME, System.nanoTime() - startNanos - sendNanos);
+            if (filteredLines > 0) {
+                metrics.add(Metric.LINES_FILTERED, filteredLines);
+            }
+            releaseBatch(batch);
+            run.pendingBatches.release();
+        }
+    }
+
+    /**
+     * @return A frame with the encoded message.
+     */
+    private GelfFrame encode(byte[] line, int offset, int length, DecodeContext context) throws IOException {
+        final GelfFrame frame = gelfTransport.newFrame();
+        final GelfFrameWriter writer = context.getFrameWriter();
+        boolean encoded = false;
+        try {
+            writer.start(frame);
+            s3Codec.decode(line, offset, length, context, writer);
+            encoded = true;
+        } finally {
+            if (!encoded) {
+                writer.abort();
+                frame.release();
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Stops the decode threads. Objects must not be processed afterwards.
+     */
+    void shutdown() {
+        decodeExecutor.shutdown();
+    }
+
+    private LineBatch takeBatch() {
+        final LineBatch batch = freeBatches.poll();
+        return batch != null ? batch : new LineBatch(batchSize);
+    }
+
+    private void releaseBatch(LineBatch batch) {
+        // Batches which had to grow for a few very long lines are not kept.
+        if (batch.data.length <= MAX_RETAINED_BATCH_BYTES) {
+            batch.clear();
+            freeBatches.offer(batch);
+        }
+    }
+
+    /**
+     * The outcome of processing an object.
+     */
+    static class Result {
+        private final long sentMessages;
+        private final boolean stopped;
+        private final boolean aborted;
+        private final long position;
+
+        private Result(long sentMessages, boolean stopped, boolean aborted, long position) {
+            this.sentMessages = sentMessages;
+            this.stopped = stopped;
+            this.aborted = aborted;
+            this.position = position;
+        }
+
+        long getSentMessages() {
+            return sentMessages;
+        }
+
+        /**
+         * @return true if processing stopped on request, before the end of the object.
+         */
+        boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * @return true if processing stopped at a line which failed to decode or send.
+         */
+        boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * @return The position of the line reader after the last line that was processed.
+         */
+        long getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * The state of a single object that is being processed.
+     */
+    private class ObjectRun {
+        private final String objectKey;
+        private final Semaphore pendingBatches = new Semaphore(maxPendingBatches);
+        private final AtomicBoolean aborted = new AtomicBoolean();
+        private final AtomicLong sentMessages = new AtomicLong();
+        private final AtomicInteger failedLines = new AtomicInteger();
+
+        private ObjectRun(String objectKey) {
+            this.objectKey = objectKey;
+        }
+    }
+
+    /**
+     * The bytes of a batch of lines, copied back to back into a single array.
+     */
+    private static class LineBatch {
+        private byte[] data = new byte[INITIAL_BATCH_BYTES];
+        // The end of each line in the data.
+        private final int[] ends;
+        private int size;
+
+        private LineBatch(int batchSize) {
+            this.ends = new int[batchSize];
+        }
+
+        private void add(byte[] bytes, int offset, int length) {
+            final int start = size == 0 ? 0 : ends[size - 1];
+            if (data.length - start < length) {
+                data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8,
+                                                          Math.max((long) data.length * 2, (long) start + length)));
+            }
+            System.arraycopy(bytes, offset, data, start, length);
+            ends[size++] = start + length;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int getOffset(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
+
+        private int getLength(int index) {
+            return ends[index] - getOffset(index);
+        }
+
+        /**
+         * @return The line as a String, for log messages.
+         */
+        private String getLine(int index) {
+            return new String(data, getOffset(index), getLength(index), StandardCharsets.UTF_8);
+        }
+
+        private void clear() {
+            size = 0;
+        }
+    }
+}
@@ -3,13 +3,18 @@ package org.graylog.integrations.s3;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
-import com.google.inject.Guice;
-import com.google.inject.Injector;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configurator;
+import org.graylog.integrations.s3.metrics.EmfMetricsWriter;
+import org.graylog.integrations.s3.metrics.Metric;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 
 /**
@@ -22,12 +27,21 @@ public class GraylogS3Function implements RequestHandler<S3Event, Object> {
 
     private final Configuration config;
     private final S3EventProcessor eventProcessor;
+    private final StageMetrics metrics;
+    private final EmfMetricsWriter metricsWriter;
 
     public GraylogS3Function() {
-        Injector injector = Guice.createInjector(new S3ProcessorModule());
+        this(S3ProcessorComponents.fromEnvironment());
+    }
 
-        config = injector.getInstance(Configuration.class);
-        eventProcessor = injector.getInstance(S3EventProcessor.class);
+    /**
+     * Allows tests and benchmarks to run the function with other components (e.g. the S3 client).
+     */
+    GraylogS3Function(S3ProcessorComponents components) {
+        config = components.getConfiguration();
+        eventProcessor = components.getEventProcessor();
+        metrics = components.getMetrics();
+        metricsWriter = components.getMetricsWriter();
     }
 
     public Object handleRequest(final S3Event s3Event, final Context context) {
@@ -37,12 +51,65 @@ public class GraylogS3Function implements RequestHandler<S3Event, Object> {
         LOG.debug(config);
 
         // Multiple messages could be provided with the S3 event callback.
-        s3Event.getRecords().forEach(record -> eventProcessor.processS3Event(record.getS3()));
+        final boolean complete;
+        try {
+            complete = eventProcessor.processS3Records(s3Event.getRecords(), getDeadline(context));
+        } finally {
+            writeMetrics(context);
+        }
+        if (!complete) {
+            // Failing the invocation makes Lambda retry it, and the retry resumes at the saved checkpoints.
+            throw new RuntimeException("Not all S3 events were processed completely. Processing resumes " +
+                                       "when the invocation is retried.");
+        }
 
         LOG.info("Processed [{}] S3 events.", s3Event.getRecords().size());
         return String.format("Processed %d S3 events.", s3Event.getRecords().size());
     }
 
+    /**
+     * @return A check whether processing must stop, so that checkpoints can be saved before the invocation times out.
+     * Never true if checkpoints are disabled.
+     */
+    private BooleanSupplier getDeadline(Context context) {
+        if (config.getCheckpointBucket() == null || context == null) {
+            return () -> false;
+        }
+        final long reserveMs = getCheckpointReserveMs(context.getRemainingTimeInMillis());
+        return () -> context.getRemainingTimeInMillis() <= reserveMs;
+    }
+
+    /**
+     * A reserve that is not well below the function timeout would stop each invocation right away, so that it never
+     * gets further than the first batch of each object. The reserve is therefore capped at half the remaining time.
+     */
+    long getCheckpointReserveMs(long remainingMs) {
+        final long reserveMs = config.getCheckpointReserveMs();
+        if (reserveMs <= remainingMs / 2) {
+            return reserveMs;
+        }
+        LOG.warn("CHECKPOINT_RESERVE_MS [{}] is more than half the remaining invocation time of [{}] ms. Reserving " +
+                 "[{}] ms instead. Increase the function timeout or decrease CHECKPOINT_RESERVE_MS.",
+                 reserveMs, remainingMs, remainingMs / 2);
+        return remainingMs / 2;
+    }
+
+    /**
+     * Writes the metrics of the invocation to stdout, where CloudWatch picks them up. The metrics are reset either way,
+     * so that each invocation only reports its own.
+     */
+    private void writeMetrics(Context context) {
+        final Map<Metric, Long> invocationMetrics = metrics.snapshotAndReset();
+        if (!config.getMetricsEnabled()) {
+            return;
+        }
+        try {
+            metricsWriter.write(invocationMetrics, context == null ? null : context.getFunctionName(), System.out);
+        } catch (IOException e) {
+            LOG.warn("Failed to write metrics.", e);
+        }
+    }
+
     /**
      * Sets a user-defined logger level if specified in the configuration.
      *
@@ -0,0 +1,47 @@
+package org.graylog.integrations.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Configurable backend which remembers the S3 objects that have already been processed, beyond the lifetime of a
+ * Lambda container. See {@link Configuration}.
+ */
+public enum IdempotencyStoreType {
+    // Objects are only remembered by the container which processed them.
+    NONE("none"),
+    // A local file, e.g. on a shared file system.
+    FILE("file"),
+    // An empty marker object per processed object in a bucket.
+    S3("s3");
+
+    private static final Logger LOG = LogManager.getLogger(IdempotencyStoreType.class);
+    private final String type;
+
+    IdempotencyStoreType(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Get the IdempotencyStoreType enum for the specified type.
+     * Default to NONE.
+     */
+    public static IdempotencyStoreType findByType(String type) {
+
+        return Arrays.stream(IdempotencyStoreType.values())
+                     .filter(Objects::nonNull)
+                     .filter(v -> v.type.equals(type))
+                     .findAny()
+                     .orElseGet(() -> {
+                         LOG.warn("Idempotency store type [{}] not found. Defaulting to [{}].", type, NONE);
+                         return NONE;
+                     });
+    }
+}
@@ -0,0 +1,323 @@
+package org.graylog.integrations.s3;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits an input stream into newline-delimited lines.
+ *
+ * This replaces {@link java.util.Scanner}, which is regex-driven, decodes with the platform default charset, and copies
+ * each line several times. Here the stream is read in large chunks into a single reusable byte buffer, line boundaries
+ * are found with a plain byte scan, and each line is checked to be strict UTF-8. Lines can be handed out as a slice of
+ * the buffer ({@link #nextLine()}), so callers which work on bytes never need a String of the line.
+ *
+ * Lines are terminated by {@code \n}. A trailing {@code \r} is removed, so {@code \r\n} terminated files are also
+ * supported. The last line does not need to be terminated.
+ *
+ * This class is not thread-safe.
+ */
+public class LineReader implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final InputStream inputStream;
+    private final int maxLineLength;
+
+    private byte[] buffer;
+
+    // The number of bytes of the stream before the start of the buffer.
+    private long bufferStart;
+    // The start of the next unread line in the buffer.
+    private int position;
+    // The end of the valid data in the buffer.
+    private int limit;
+    private boolean endOfStream;
+
+    // The line returned by the last call to nextLine().
+    private int lineOffset;
+    private int lineLength;
+
+    /**
+     * @param inputStream   The stream to read lines from. It is closed when this reader is closed.
+     * @param maxLineLength The maximum number of bytes a line may have. Longer lines are skipped.
+     */
+    public LineReader(InputStream inputStream, int maxLineLength) {
+        this(inputStream, maxLineLength, DEFAULT_BUFFER_SIZE);
+    }
+
+    LineReader(InputStream inputStream, int maxLineLength, int bufferSize) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("The maximum line length must be positive.");
+        }
+        this.inputStream = inputStream;
+        this.maxLineLength = maxLineLength;
+        this.buffer = new byte[Math.max(1, Math.min(bufferSize, maxLineLength + 1))];
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * If the line is longer than the maximum line length or is not valid UTF-8, a {@link MalformedLineException} is
+     * thrown. The offending line has been consumed at that point, so reading can continue with the next line.
+     *
+     * @return The next line without its line terminator, or null if the end of the stream has been reached.
+     */
+    public String readLine() throws IOException {
+        if (!nextLine()) {
+            return null;
+        }
+        return lineLength == 0 ? "" : new String(buffer, lineOffset, lineLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next line without turning it into a String. The line is available from {@link #getLineBuffer()},
+     * {@link #getLineOffset()} and {@link #getLineLength()} until the next call to this reader.
+     *
+     * If the line is longer than the maximum line length or is not valid UTF-8, a {@link MalformedLineException} is
+     * thrown. The offending line has been consumed at that point, so reading can continue with the next line.
+     *
+     * @return false if the end of the stream has been reached.
+     */
+    public boolean nextLine() throws IOException {
+        int scanFrom = position;
+        while (true) {
+            final int newline = indexOfLineFeed(scanFrom, limit);
+            if (newline >= 0) {
+                final int start = position;
+                position = newline + 1;
+                if (newline - start > maxLineLength) {
+                    throw lineTooLong();
+                }
+                setLine(start, newline);
+                return true;
+            }
+
+            if (limit - position > maxLineLength) {
+                discardUntilNextLine();
+                throw lineTooLong();
+            }
+
+            if (endOfStream) {
+                if (position == limit) {
+                    return false;
+                }
+                final int start = position;
+                position = limit;
+                setLine(start, limit);
+                return true;
+            }
+
+            // Only scan the bytes that have not been scanned yet.
+            final int scanned = limit - position;
+            fill();
+            scanFrom = position + scanned;
+        }
+    }
+
+    /**
+     * Skips bytes of the stream without splitting them into lines, e.g. the lines which an earlier run has already read.
+     *
+     * @throws EOFException If the stream ends before all bytes have been skipped.
+     */
+    public void skip(long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            if (position == limit) {
+                if (endOfStream) {
+                    throw new EOFException("The stream ended [" + remaining + "] bytes before the skipped position.");
+                }
+                fill();
+                continue;
+            }
+            final int skipped = (int) Math.min(remaining, limit - position);
+            position += skipped;
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Reads from the stream if all bytes read so far have been consumed.
+     *
+     * @return true if bytes are left after the last line, false if the end of the stream has been reached.
+     */
+    public boolean hasRemaining() throws IOException {
+        while (position == limit && !endOfStream) {
+            fill();
+        }
+        return position < limit;
+    }
+
+    /**
+     * @return The number of bytes of the stream which have been read, up to and including the terminator of the last
+     * line. Reading continues from this position.
+     */
+    public long getPosition() {
+        return bufferStart + position;
+    }
+
+    /**
+     * @return The buffer containing the line read by {@link #nextLine()}.
+     */
+    public byte[] getLineBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The position of the line read by {@link #nextLine()} in the line buffer.
+     */
+    public int getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return The number of bytes of the line read by {@link #nextLine()}, without its line terminator.
+     */
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer (growing it if it is full) and reads more data from the stream.
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            bufferStart += position;
+            limit -= position;
+            position = 0;
+        }
+
+        if (limit == buffer.length) {
+            // A line never needs more than maxLineLength + 1 bytes to be detected as too long.
+            final int newSize = (int) Math.min((long) buffer.length * 2, (long) maxLineLength + 1);
+            final byte[] newBuffer = new byte[Math.max(newSize, buffer.length + 1)];
+            System.arraycopy(buffer, 0, newBuffer, 0, limit);
+            buffer = newBuffer;
+        }
+
+        final int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Drops all bytes up to and including the next line feed.
+     */
+    private void discardUntilNextLine() throws IOException {
+        position = limit;
+        while (!endOfStream) {
+            fill();
+            final int newline = indexOfLineFeed(position, limit);
+            if (newline >= 0) {
+                position = newline + 1;
+                return;
+            }
+            position = limit;
+        }
+    }
+
+    private int indexOfLineFeed(int from, int to) {
+        final byte[] bytes = buffer;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == LINE_FEED) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void setLine(int start, int end) throws MalformedLineException {
+        if (end > start && buffer[end - 1] == CARRIAGE_RETURN) {
+            end--;
+        }
+        if (!isValidUtf8(buffer, start, end)) {
+            throw new MalformedLineException("Line is not valid UTF-8.");
+        }
+        lineOffset = start;
+        lineLength = end - start;
+    }
+
+    /**
+     * Checks the bytes the same way as a strict UTF-8 decoder: overlong encodings, surrogates, code points above
+     * U+10FFFF and truncated sequences are rejected.
+     */
+    static boolean isValidUtf8(byte[] bytes, int from, int to) {
+        int i = from;
+        while (i < to) {
+            final int b = bytes[i];
+            if (b >= 0) {
+                i++;
+                continue;
+            }
+
+            final int lead = b & 0xff;
+            final int length;
+            int min = 0x80;
+            int max = 0xbf;
+            if (lead >= 0xc2 && lead <= 0xdf) {
+                length = 2;
+            } else if (lead >= 0xe0 && lead <= 0xef) {
+                length = 3;
+                if (lead == 0xe0) {
+                    min = 0xa0;
+                } else if (lead == 0xed) {
+                    max = 0x9f;
+                }
+            } else if (lead >= 0xf0 && lead <= 0xf4) {
+                length = 4;
+                if (lead == 0xf0) {
+                    min = 0x90;
+                } else if (lead == 0xf4) {
+                    max = 0x8f;
+                }
+            } else {
+                return false;
+            }
+
+            if (to - i < length) {
+                return false;
+            }
+            // The range of the second byte depends on the lead byte. All further bytes are 0x80 to 0xbf.
+            final int second = bytes[i + 1] & 0xff;
+            if (second < min || second > max) {
+                return false;
+            }
+            for (int j = i + 2; j < i + length; j++) {
+                if ((bytes[j] & 0xc0) != 0x80) {
+                    return false;
+                }
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    private MalformedLineException lineTooLong() {
+        return new MalformedLineException("Line exceeds the maximum length of [" + maxLineLength + "] bytes.");
+    }
+
+    /**
+     * Thrown when a single line cannot be read. The reader remains usable.
+     */
+    public static class MalformedLineException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedLineException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.graylog.integrations.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Configurable way to spread messages over several Graylog nodes.
+ * See {@link Configuration}.
+ */
+public enum LoadBalancingType {
+    // Each node gets the next message in turn.
+    ROUND_ROBIN("round-robin"),
+    // The node with the fewest messages waiting to be sent gets the next message.
+    LEAST_IN_FLIGHT("least-in-flight");
+
+    private static final Logger LOG = LogManager.getLogger(LoadBalancingType.class);
+    private final String type;
+
+    LoadBalancingType(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Get the LoadBalancingType enum for the specified type.
+     * Default to ROUND_ROBIN.
+     */
+    public static LoadBalancingType findByType(String type) {
+
+        return Arrays.stream(LoadBalancingType.values())
+                     .filter(Objects::nonNull)
+                     .filter(v -> v.type.equals(type))
+                     .findAny()
+                     .orElseGet(() -> {
+                         LOG.warn("Load balancing type [{}] not found. Defaulting to [{}].", type, ROUND_ROBIN);
+                         return ROUND_ROBIN;
+                     });
+    }
+}
@@ -0,0 +1,97 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.inject.Provider;
+import java.io.InputStream;
+
+/**
+ * An S3 client which can be closed and reopened, e.g. around a SnapStart snapshot: the pooled connections of a client
+ * do not survive a restore, and a client cannot be used again once it has been shut down.
+ *
+ * After {@link #shutdown()}, the next request builds a new client. Only the requests the function uses are passed on;
+ * the others throw {@link UnsupportedOperationException}.
+ */
+class ManagedAmazonS3 extends AbstractAmazonS3 {
+    private static final Logger LOG = LogManager.getLogger(ManagedAmazonS3.class);
+
+    private final Provider<AmazonS3> clientProvider;
+    private volatile AmazonS3 delegate;
+
+    /**
+     * @param clientProvider Builds a new client each time it is called.
+     */
+    ManagedAmazonS3(Provider<AmazonS3> clientProvider) {
+        this.clientProvider = clientProvider;
+    }
+
+    /**
+     * Builds the client now instead of on the first request.
+     */
+    void open() {
+        getDelegate();
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getDelegate().getObject(bucketName, key);
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest getObjectRequest) {
+        return getDelegate().getObject(getObjectRequest);
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, String content) {
+        return getDelegate().putObject(bucketName, key, content);
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, InputStream input, ObjectMetadata metadata) {
+        return getDelegate().putObject(bucketName, key, input, metadata);
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        getDelegate().deleteObject(bucketName, key);
+    }
+
+    @Override
+    public boolean doesObjectExist(String bucketName, String objectName) {
+        return getDelegate().doesObjectExist(bucketName, objectName);
+    }
+
+    /**
+     * Closes the connections of the client. Requests which are still running fail.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (delegate != null) {
+            LOG.debug("Shutting down the S3 client.");
+            delegate.shutdown();
+            delegate = null;
+        }
+    }
+
+    private AmazonS3 getDelegate() {
+        AmazonS3 current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                if (delegate == null) {
+                    LOG.debug("Building the S3 client.");
+                    delegate = clientProvider.get();
+                }
+                current = delegate;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,35 @@
+package org.graylog.integrations.s3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A {@link GZIPInputStream} which reads all members of a multi-member gzip stream.
+ *
+ * After each member, GZIPInputStream only looks for another member if the underlying stream reports available bytes.
+ * A network stream reports none while it waits for the next packet, so the rest of the object would be dropped.
+ */
+class MultiMemberGzipInputStream extends GZIPInputStream {
+
+    MultiMemberGzipInputStream(InputStream in, int size) throws IOException {
+        super(new AlwaysAvailableInputStream(in), size);
+    }
+
+    /**
+     * Reports at least one available byte. At the end of the stream, GZIPInputStream fails to read the next header and
+     * ends normally.
+     */
+    private static class AlwaysAvailableInputStream extends FilterInputStream {
+
+        AlwaysAvailableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.max(1, super.available());
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package org.graylog.integrations.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates a gzip stream which consists of several concatenated members on multiple threads.
+ *
+ * The compressed input is cut into chunks of about {@code chunkSize} bytes, at positions which look like the header
+ * of a member. Up to {@code maxChunksInFlight} chunks are inflated concurrently, and their output is returned in
+ * order. Compressed data may happen to look like a member header. A chunk which is cut there ends in the middle of a
+ * deflate stream, so it is joined with the next chunk and inflated again.
+ *
+ * If the input does not contain another member within the first chunk, or within {@code maxChunkSize} bytes later
+ * on, the rest is inflated serially by a {@link MultiMemberGzipInputStream}. Like {@link java.util.zip.GZIPInputStream},
+ * data after the last member which is not a member header is ignored.
+ *
+ * The stream is not thread-safe.
+ */
+class ParallelGzipInputStream extends InputStream {
+    private static final Logger LOG = LogManager.getLogger(ParallelGzipInputStream.class);
+
+    // The fixed part of a member header: magic, method, flags, mtime, extra flags and OS.
+    private static final int HEADER_LENGTH = 10;
+    private static final int TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int HEADER_INVALID = -1;
+    private static final int HEADER_TRUNCATED = -2;
+    // Inflated output is collected in pages, so that it never has to be copied to a larger buffer.
+    private static final int PAGE_SIZE = 256 * 1024;
+
+    private final InputStream input;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int maxChunkSize;
+    private final int maxChunksInFlight;
+    private final int serialBufferSize;
+    private final Deque<Chunk> chunksInFlight = new ArrayDeque<>();
+
+    // Compressed bytes which have been read but not been cut into a chunk yet. They start with a member header.
+    private byte[] pending;
+    private int pendingLength;
+    // Positions before this one have already been searched for a member header.
+    private int scannedLength;
+    private boolean inputExhausted;
+    private int chunkCount;
+    private boolean serialRequested;
+    private InputStream serial;
+    private boolean finished;
+
+    private Inflated inflated;
+    private int pageIndex;
+    private byte[] output;
+    private int outputPosition;
+    private int outputLength;
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * @param input             The compressed input.
+     * @param executor          Inflates the chunks.
+     * @param chunkSize         The minimum number of compressed bytes in a chunk.
+     * @param maxChunksInFlight The maximum number of chunks being inflated or waiting to be read.
+     * @param serialBufferSize  The input buffer size when inflating serially.
+     */
+    ParallelGzipInputStream(InputStream input, ExecutorService executor, int chunkSize, int maxChunksInFlight,
+                            int serialBufferSize) {
+        this.input = input;
+        this.executor = executor;
+        this.chunkSize = Math.max(HEADER_LENGTH, chunkSize);
+        this.maxChunkSize = this.chunkSize * 4;
+        this.maxChunksInFlight = Math.max(1, maxChunksInFlight);
+        this.serialBufferSize = serialBufferSize;
+        this.pending = new byte[this.chunkSize + serialBufferSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (outputPosition == outputLength) {
+            if (serial != null) {
+                return serial.read(b, off, len);
+            }
+            if (inflated != null && pageIndex < inflated.pages.size()) {
+                output = inflated.pages.get(pageIndex++);
+                outputPosition = 0;
+                outputLength = pageIndex == inflated.pages.size() ? inflated.lastPageLength : output.length;
+            } else if (!nextOutput()) {
+                return -1;
+            }
+        }
+
+        final int count = Math.min(len, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, count);
+        outputPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        cancelChunks();
+        if (serial != null) {
+            serial.close();
+        } else {
+            input.close();
+        }
+    }
+
+    /**
+     * Moves on to the output of the next chunk, or to serial inflation.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean nextOutput() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        submitChunks();
+        Chunk chunk = chunksInFlight.poll();
+        if (chunk == null) {
+            return startSerial(null);
+        }
+
+        Inflated result = await(chunk);
+        while (result.incomplete) {
+            // The next chunk does not start with a member, but in the middle of the last member of this one.
+            submitChunks();
+            final Chunk next = chunksInFlight.poll();
+            if (next == null) {
+                return startSerial(chunk);
+            }
+            next.result.cancel(false);
+            chunk = new Chunk(chunk, next);
+            result = inflate(chunk.data, chunk.length);
+        }
+
+        if (result.error != null) {
+            throw result.error;
+        }
+        if (result.endOfStream) {
+            finished = true;
+            cancelChunks();
+        }
+        inflated = result;
+        pageIndex = 0;
+        return true;
+    }
+
+    /**
+     * Inflates the rest of the input serially.
+     *
+     * @param incompleteChunk A chunk which ends in the middle of a member, or null.
+     * @return false if the stream has ended.
+     */
+    private boolean startSerial(Chunk incompleteChunk) throws IOException {
+        if (!serialRequested) {
+            finished = true;
+            if (incompleteChunk != null) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            return false;
+        }
+
+        byte[] rest = Arrays.copyOf(pending, pendingLength);
+        if (incompleteChunk != null) {
+            rest = new Chunk(incompleteChunk, rest, rest.length).data;
+        }
+        LOG.debug("Inflating the remaining [{}] buffered bytes and the rest of the input serially.", rest.length);
+        serial = new MultiMemberGzipInputStream(new SequenceInputStream(new ByteArrayInputStream(rest), input),
+                                                serialBufferSize);
+        pending = null;
+        pendingLength = 0;
+        return true;
+    }
+
+    private void submitChunks() throws IOException {
+        while (chunksInFlight.size() < maxChunksInFlight && !serialRequested && (pendingLength > 0 || !inputExhausted)) {
+            final int length = findCut();
+            if (length <= 0) {
+                return;
+            }
+
+            final Chunk chunk = new Chunk(Arrays.copyOf(pending, length), length);
+            chunk.result = executor.submit(() -> inflate(chunk.data, chunk.length));
+            chunksInFlight.add(chunk);
+            chunkCount++;
+
+            System.arraycopy(pending, length, pending, 0, pendingLength - length);
+            pendingLength -= length;
+            scannedLength = 0;
+        }
+    }
+
+    /**
+     * Reads input until the pending bytes can be cut into a chunk.
+     *
+     * @return The length of the next chunk, or 0 if there is none. Requests serial inflation if there is more input,
+     * but no place to cut it.
+     */
+    private int findCut() throws IOException {
+        while (true) {
+            final int cut = findMemberHeader(pending, Math.max(chunkSize, scannedLength), pendingLength);
+            if (cut > 0) {
+                return cut;
+            }
+            scannedLength = Math.max(scannedLength, pendingLength - HEADER_LENGTH + 1);
+
+            if (inputExhausted) {
+                if (chunkCount == 0) {
+                    // A single chunk is not worth handing to another thread.
+                    serialRequested = true;
+                    return 0;
+                }
+                return pendingLength;
+            }
+            if (pendingLength >= maxChunkSize) {
+                LOG.debug("No gzip member starts within [{}] bytes. Inflating the rest serially.", pendingLength);
+                serialRequested = true;
+                return 0;
+            }
+
+            if (pendingLength == pending.length) {
+                pending = Arrays.copyOf(pending, Math.min(pending.length * 2, maxChunkSize + serialBufferSize));
+            }
+            final int read = input.read(pending, pendingLength, pending.length - pendingLength);
+            if (read == -1) {
+                inputExhausted = true;
+            } else {
+                pendingLength += read;
+            }
+        }
+    }
+
+    private Inflated await(Chunk chunk) throws IOException {
+        try {
+            return chunk.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to inflate a chunk.", e.getCause());
+        }
+    }
+
+    private void cancelChunks() {
+        for (Chunk chunk : chunksInFlight) {
+            chunk.result.cancel(false);
+        }
+        chunksInFlight.clear();
+    }
+
+    /**
+     * Inflates a chunk, which starts with a member header and may contain any number of members.
+     */
+    static Inflated inflate(byte[] data, int length) {
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        final List<byte[]> pages = new ArrayList<>();
+        byte[] page = new byte[PAGE_SIZE];
+        pages.add(page);
+        int pageLength = 0;
+        int position = 0;
+        try {
+            while (position < length) {
+                final int headerLength = parseHeader(data, position, length);
+                if (headerLength == HEADER_TRUNCATED) {
+                    return Inflated.incomplete();
+                } else if (headerLength == HEADER_INVALID) {
+                    if (position == 0) {
+                        return Inflated.failed(new ZipException("Not in GZIP format"));
+                    }
+                    // Like GZIPInputStream, ignore trailing data which is not another member.
+                    return new Inflated(pages, pageLength, true);
+                }
+
+                inflater.reset();
+                inflater.setInput(data, position + headerLength, length - position - headerLength);
+                crc.reset();
+                int memberLength = 0;
+                while (!inflater.finished()) {
+                    if (pageLength == page.length) {
+                        page = new byte[PAGE_SIZE];
+                        pages.add(page);
+                        pageLength = 0;
+                    }
+                    final int count = inflater.inflate(page, pageLength, page.length - pageLength);
+                    if (count == 0) {
+                        if (inflater.needsInput()) {
+                            return Inflated.incomplete();
+                        } else if (inflater.needsDictionary()) {
+                            return Inflated.failed(new ZipException("Unexpected preset dictionary"));
+                        }
+                    }
+                    crc.update(page, pageLength, count);
+                    pageLength += count;
+                    memberLength += count;
+                }
+
+                position = length - inflater.getRemaining();
+                if (length - position < TRAILER_LENGTH) {
+                    return Inflated.incomplete();
+                }
+                if (readInt(data, position) != (int) crc.getValue()
+                    || readInt(data, position + 4) != memberLength) {
+                    return Inflated.failed(new ZipException("Corrupt GZIP trailer"));
+                }
+                position += TRAILER_LENGTH;
+            }
+            return new Inflated(pages, pageLength, false);
+        } catch (DataFormatException e) {
+            return Inflated.failed(new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid ZLIB data format"));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return The position of the first member header in {@code [from, to)}, or -1.
+     */
+    static int findMemberHeader(byte[] data, int from, int to) {
+        for (int i = from; i <= to - HEADER_LENGTH; i++) {
+            if (data[i] == 0x1f && looksLikeHeader(data, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean looksLikeHeader(byte[] data, int position) {
+        final int os = data[position + 9] & 0xff;
+        final int extraFlags = data[position + 8] & 0xff;
+        return (data[position + 1] & 0xff) == 0x8b
+               && data[position + 2] == 8
+               && (data[position + 3] & 0xe0) == 0
+               && (extraFlags == 0 || extraFlags == 2 || extraFlags == 4)
+               && (os <= 13 || os == 255);
+    }
+
+    /**
+     * @return The length of the member header at the position, {@link #HEADER_INVALID} or {@link #HEADER_TRUNCATED}.
+     */
+    private static int parseHeader(byte[] data, int position, int length) {
+        if (length - position < HEADER_LENGTH) {
+            return data[position] == 0x1f && (length - position == 1 || (data[position + 1] & 0xff) == 0x8b)
+                   ? HEADER_TRUNCATED : HEADER_INVALID;
+        }
+        if ((data[position] & 0xff) != 0x1f || (data[position + 1] & 0xff) != 0x8b || data[position + 2] != 8) {
+            return HEADER_INVALID;
+        }
+
+        final int flags = data[position + 3] & 0xff;
+        int end = position + HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            if (length - end < 2) {
+                return HEADER_TRUNCATED;
+            }
+            end += 2 + ((data[end] & 0xff) | (data[end + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            end = skipZeroTerminated(data, end, length);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            end = skipZeroTerminated(data, end, length);
+        }
+        if ((flags & FHCRC) != 0) {
+            if (end + 2 > length) {
+                return HEADER_TRUNCATED;
+            }
+            final CRC32 headerCrc = new CRC32();
+            headerCrc.update(data, position, end - position);
+            if (((data[end] & 0xff) | (data[end + 1] & 0xff) << 8) != ((int) headerCrc.getValue() & 0xffff)) {
+                return HEADER_INVALID;
+            }
+            end += 2;
+        }
+        return end > length ? HEADER_TRUNCATED : end - position;
+    }
+
+    private static int skipZeroTerminated(byte[] data, int position, int length) {
+        for (int i = position; i < length; i++) {
+            if (data[i] == 0) {
+                return i + 1;
+            }
+        }
+        return length + 1;
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return (data[position] & 0xff)
+               | (data[position + 1] & 0xff) << 8
+               | (data[position + 2] & 0xff) << 16
+               | (data[position + 3] & 0xff) << 24;
+    }
+
+    private static class Chunk {
+        final byte[] data;
+        final int length;
+        Future<Inflated> result;
+
+        Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        Chunk(Chunk first, Chunk second) {
+            this(first, second.data, second.length);
+        }
+
+        Chunk(Chunk first, byte[] second, int secondLength) {
+            this(Arrays.copyOf(first.data, first.length + secondLength), first.length + secondLength);
+            System.arraycopy(second, 0, data, first.length, secondLength);
+        }
+    }
+
+    static class Inflated {
+        final List<byte[]> pages;
+        final int lastPageLength;
+        // The chunk ends in the middle of a member.
+        final boolean incomplete;
+        // The chunk is followed by data which is not a member.
+        final boolean endOfStream;
+        final IOException error;
+
+        Inflated(List<byte[]> pages, int lastPageLength, boolean endOfStream) {
+            this(pages, lastPageLength, false, endOfStream, null);
+        }
+
+        private Inflated(List<byte[]> pages, int lastPageLength, boolean incomplete, boolean endOfStream,
+                         IOException error) {
+            this.pages = pages;
+            this.lastPageLength = lastPageLength;
+            this.incomplete = incomplete;
+            this.endOfStream = endOfStream;
+            this.error = error;
+        }
+
+        static Inflated incomplete() {
+            return new Inflated(Collections.emptyList(), 0, true, false, null);
+        }
+
+        static Inflated failed(IOException error) {
+            return new Inflated(Collections.emptyList(), 0, false, false, error);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.graylog.integrations.s3;
+
+import com.google.common.io.ByteStreams;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.codec.S3Codec;
+import org.graylog.integrations.s3.deadletter.DeadLetterSink;
+import org.graylog.integrations.s3.filter.MessageFilter;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.gelf.GelfFramePool;
+import org.graylog.integrations.s3.metrics.EmfMetricsWriter;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog.integrations.s3.transport.GelfFrameTransport;
+import org.graylog2.gelfclient.GelfMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs generated messages through the same reading and decoding code as an S3 object, so that the JIT has compiled
+ * that code before a SnapStart snapshot is taken, and the first invocations after a restore do not run interpreted.
+ *
+ * The messages are in the Cloudflare Logpush format, which is also valid JSON and plain text, and are decoded with
+ * the configured codec and filter rules. They are discarded instead of being sent, and are not counted in the metrics
+ * of the function.
+ */
+class Primer {
+    private static final Logger LOG = LogManager.getLogger(Primer.class);
+
+    private static final String OBJECT_KEY = "priming";
+    // The lines repeat, since generating a random message costs more than decoding it.
+    private static final int DISTINCT_MESSAGES = 256;
+
+    private final Configuration config;
+    private final S3Codec s3Codec;
+    private final S3ScannerFactory scannerFactory;
+    private final EmfMetricsWriter metricsWriter;
+
+    /**
+     * @param metricsWriter Null if metrics are disabled.
+     */
+    Primer(Configuration config, S3Codec s3Codec, S3ScannerFactory scannerFactory, EmfMetricsWriter metricsWriter) {
+        this.config = config;
+        this.s3Codec = s3Codec;
+        this.scannerFactory = scannerFactory;
+        this.metricsWriter = metricsWriter;
+    }
+
+    /**
+     * Decodes {@link Configuration#getPrimingMessages()} messages. Does nothing if that is 0.
+     *
+     * @return The number of messages that were decoded.
+     */
+    long prime() throws IOException, InterruptedException {
+        if (config.getPrimingMessages() <= 0) {
+            return 0;
+        }
+        final long startNanos = System.nanoTime();
+        final StageMetrics metrics = new StageMetrics();
+        final DecodePipeline pipeline = new DecodePipeline(s3Codec, new MessageFilter(config),
+                                                           new DiscardingTransport(), config.getDecodeThreads(),
+                                                           config.getDecodeBatchSize(), config.getDecodeQueueSize(),
+                                                           Integer.MAX_VALUE, new DiscardingDeadLetterSink(), metrics);
+        final long messages;
+        try (LineReader lineReader = openLines(buildLines(config.getPrimingMessages()))) {
+            messages = pipeline.process(lineReader, OBJECT_KEY);
+        } finally {
+            pipeline.shutdown();
+        }
+
+        if (metricsWriter != null) {
+            metricsWriter.write(metrics.snapshotAndReset(), null, new PrintStream(ByteStreams.nullOutputStream()));
+        }
+        LOG.info("Primed the function with [{}] messages in [{}] ms.", messages,
+                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return messages;
+    }
+
+    private static byte[] buildLines(int messageCount) {
+        final byte[][] messages = new byte[Math.min(messageCount, DISTINCT_MESSAGES)][];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = (TestDataGenerator.buildMessage() + '\n').getBytes(StandardCharsets.UTF_8);
+        }
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (int i = 0; i < messageCount; i++) {
+            final byte[] message = messages[i % messages.length];
+            lines.write(message, 0, message.length);
+        }
+        return lines.toByteArray();
+    }
+
+    /**
+     * Reads the lines the way an object with the configured compression is read. Only gzip is compressed for that,
+     * the other compression types read the lines uncompressed.
+     */
+    private LineReader openLines(byte[] lines) throws IOException {
+        switch (config.getCompressionType()) {
+            case NONE:
+                return scannerFactory.getLineReader(new ByteArrayInputStream(lines), OBJECT_KEY, null);
+            case AUTO:
+            case GZIP:
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(lines);
+                }
+                return scannerFactory.getLineReader(new ByteArrayInputStream(compressed.toByteArray()), OBJECT_KEY,
+                                                    null);
+            default:
+                return new LineReader(new ByteArrayInputStream(lines), config.getMaxLineLength());
+        }
+    }
+
+    /**
+     * Drops all messages.
+     */
+    private static class DiscardingTransport implements GelfFrameTransport {
+        private final GelfFramePool framePool = new GelfFramePool();
+
+        @Override
+        public GelfFrame newFrame() {
+            return framePool.acquire();
+        }
+
+        @Override
+        public void send(GelfFrame frame) {
+            frame.release();
+        }
+
+        @Override
+        public void send(GelfMessage message) {
+        }
+
+        @Override
+        public boolean trySend(GelfMessage message) {
+            return true;
+        }
+
+        @Override
+        public boolean flush(int waitDuration, TimeUnit timeUnit, int retries) {
+            return true;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void flushAndStopSynchronously(int waitDuration, TimeUnit timeUnit, int retries) {
+        }
+    }
+
+    private static class DiscardingDeadLetterSink implements DeadLetterSink {
+
+        @Override
+        public void add(String objectKey, String line, Throwable cause) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
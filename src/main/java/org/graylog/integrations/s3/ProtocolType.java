@@ -2,7 +2,6 @@ package org.graylog.integrations.s3;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.graylog2.gelfclient.GelfTransports;
 
 import java.util.Arrays;
 import java.util.Objects;
@@ -12,20 +11,15 @@ import java.util.Objects;
  * See {@link Configuration}.
  */
 public enum ProtocolType {
-    TCP("tcp", GelfTransports.TCP),
-    UDP("udp", GelfTransports.UDP);
+    TCP("tcp"),
+    UDP("udp"),
+    HTTP("http");
 
     private static final Logger LOG = LogManager.getLogger(ProtocolType.class);
     private final String type;
-    private final GelfTransports gelfTransport;
 
-    ProtocolType(String type, GelfTransports gelfTransport) {
+    ProtocolType(String type) {
         this.type = type;
-        this.gelfTransport = gelfTransport;
-    }
-
-    public GelfTransports getGelfTransport() {
-        return gelfTransport;
     }
 
     public String getType() {
@@ -0,0 +1,170 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an S3 object with several concurrent byte-range GET requests.
+ *
+ * The object is split into fixed-size chunks. Up to {@code parallelism} chunks are downloaded at the same time, and the
+ * chunks are returned strictly in order, so the stream content is identical to a single GET. Chunk boundaries do not
+ * need to line up with line boundaries: the {@link LineReader} reading this stream joins lines that span two chunks.
+ *
+ * This class is not thread-safe.
+ */
+class RangedS3InputStream extends InputStream {
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final String objectKey;
+    private final String eTag;
+    private final long objectSize;
+    private final int chunkSize;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    private final Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+    private long nextChunkStart;
+    private byte[] currentChunk = new byte[0];
+    private int currentPosition;
+    private boolean closed;
+
+    /**
+     * @param eTag The ETag of the object. All ranges must come from this version of the object. May be null.
+     */
+    RangedS3InputStream(AmazonS3 s3Client, String bucketName, String objectKey, String eTag, long objectSize,
+                        int chunkSize, int parallelism, ExecutorService executor) {
+        this(s3Client, bucketName, objectKey, eTag, 0, objectSize, chunkSize, parallelism, executor);
+    }
+
+    /**
+     * @param startOffset The position in the object to start reading at.
+     */
+    RangedS3InputStream(AmazonS3 s3Client, String bucketName, String objectKey, String eTag, long startOffset,
+                        long objectSize, int chunkSize, int parallelism, ExecutorService executor) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+        this.eTag = eTag;
+        this.objectSize = objectSize;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.nextChunkStart = startOffset;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return currentChunk[currentPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        final int count = Math.min(len, currentChunk.length - currentPosition);
+        System.arraycopy(currentChunk, currentPosition, b, off, count);
+        currentPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return currentChunk.length - currentPosition;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Future<byte[]> chunk : pendingChunks) {
+            chunk.cancel(true);
+        }
+        pendingChunks.clear();
+    }
+
+    /**
+     * @return true if there is at least one byte left to read in the current chunk.
+     */
+    private boolean ensureAvailable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream for object [" + objectKey + "] is closed.");
+        }
+
+        while (currentPosition == currentChunk.length) {
+            scheduleChunks();
+            final Future<byte[]> nextChunk = pendingChunks.poll();
+            if (nextChunk == null) {
+                return false;
+            }
+            currentChunk = awaitChunk(nextChunk);
+            currentPosition = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Keeps up to {@code parallelism} chunk downloads in flight.
+     */
+    private void scheduleChunks() {
+        while (pendingChunks.size() < parallelism && nextChunkStart < objectSize) {
+            final long start = nextChunkStart;
+            final long end = Math.min(start + chunkSize, objectSize) - 1;
+            pendingChunks.add(executor.submit(() -> fetchRange(start, end)));
+            nextChunkStart = end + 1;
+        }
+    }
+
+    private byte[] fetchRange(long start, long end) throws IOException {
+        final GetObjectRequest request = new GetObjectRequest(bucketName, objectKey).withRange(start, end);
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+
+        // The S3 client returns null when the ETag constraint is not met.
+        final S3Object s3Object = s3Client.getObject(request);
+        if (s3Object == null) {
+            throw new IOException("Object [" + objectKey + "] changed while it was being read.");
+        }
+
+        try (S3Object closeable = s3Object) {
+            final byte[] bytes = IOUtils.toByteArray(closeable.getObjectContent());
+            if (bytes.length != end - start + 1) {
+                throw new IOException("Expected [" + (end - start + 1) + "] bytes for range [" + start + "-" + end
+                                      + "] of object [" + objectKey + "] but received [" + bytes.length + "].");
+            }
+            return bytes;
+        }
+    }
+
+    private byte[] awaitChunk(Future<byte[]> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading object [" + objectKey + "].");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read a range of object [" + objectKey + "].", e.getCause());
+        }
+    }
+}
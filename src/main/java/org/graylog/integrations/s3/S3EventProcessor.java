@@ -1,99 +1,303 @@
 package org.graylog.integrations.s3;
 
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.S3Object;
-import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.graylog.integrations.s3.checkpoint.Checkpoint;
+import org.graylog.integrations.s3.checkpoint.CheckpointStore;
 import org.graylog.integrations.s3.codec.S3Codec;
-import org.graylog2.gelfclient.GelfMessage;
-import org.graylog2.gelfclient.transport.GelfTransport;
+import org.graylog.integrations.s3.deadletter.DeadLetterSink;
+import org.graylog.integrations.s3.filter.MessageFilter;
+import org.graylog.integrations.s3.idempotency.IdempotencyCache;
+import org.graylog.integrations.s3.metrics.Metric;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog.integrations.s3.transport.GelfFrameTransport;
 
-import javax.inject.Inject;
 import java.io.IOException;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 public class S3EventProcessor {
     private static final Logger LOG = LogManager.getLogger(S3EventProcessor.class);
 
     private final Configuration config;
-    private final GelfTransport gelfTransport;
-    private final AmazonS3 s3Client;
-    private final S3Codec s3Codec;
+    private final GelfFrameTransport gelfTransport;
+    private final S3ObjectFetcher objectFetcher;
     private final S3ScannerFactory scannerFactory;
+    private final ExecutorService recordExecutor;
+    private final DecodePipeline decodePipeline;
+    private final CheckpointStore checkpointStore;
+    private final IdempotencyCache idempotencyCache;
+    private final DeadLetterSink deadLetterSink;
+    private final StageMetrics metrics;
 
-    @Inject
-    public S3EventProcessor(Configuration config, GelfTransport gelfTransport, AmazonS3 s3Client, S3Codec s3Codec,
-                            S3ScannerFactory scannerFactory) {
+    public S3EventProcessor(Configuration config, GelfFrameTransport gelfTransport, S3ObjectFetcher objectFetcher,
+                            S3Codec s3Codec, S3ScannerFactory scannerFactory, CheckpointStore checkpointStore,
+                            IdempotencyCache idempotencyCache, DeadLetterSink deadLetterSink,
+                            StageMetrics metrics) {
         this.config = config;
+        this.metrics = metrics;
+        this.checkpointStore = checkpointStore;
+        this.idempotencyCache = idempotencyCache;
+        this.deadLetterSink = deadLetterSink;
         this.gelfTransport = gelfTransport;
-        this.s3Client = s3Client;
-        this.s3Codec = s3Codec;
+        this.objectFetcher = objectFetcher;
         this.scannerFactory = scannerFactory;
+        this.recordExecutor = Executors.newFixedThreadPool(Math.max(1, config.getRecordParallelism()),
+                                                           new ThreadFactoryBuilder().setNameFormat("s3-record-%d")
+                                                                                     .setDaemon(true)
+                                                                                     .build());
+        this.decodePipeline = new DecodePipeline(s3Codec, new MessageFilter(config), gelfTransport,
+                                                 config.getDecodeThreads(), config.getDecodeBatchSize(),
+                                                 config.getDecodeQueueSize(), config.getDecodeErrorBudget(),
+                                                 deadLetterSink, metrics);
     }
 
     /**
-     * Streams and processes the of the indicated S3 object.
+     * Processes all records of an S3 event notification, then waits for all messages to be sent.
      *
-     * @param s3Entity The key for the S3 object/file. This will be used to retrieve the object.
+     * Records are processed concurrently on a bounded pool, so a batched notification takes about as long as its
+     * slowest object. A failure in one record does not affect the others.
+     *
+     * @param records The records from the S3 event notification.
+     * @return true if all messages were sent.
+     */
+    public boolean processS3Records(List<S3EventNotification.S3EventNotificationRecord> records) {
+        return processS3Records(records, () -> false);
+    }
+
+    /**
+     * Processes the records of an S3 event notification until all objects have been sent, or until the deadline is
+     * reached. When checkpoints are enabled, the position of each object which was stopped is saved, and a later
+     * invocation for the same records resumes there. Objects which were completed are skipped by that invocation.
+     *
+     * Objects are only marked as processed once the transport has sent all of their messages. If it could not, the
+     * records are left as they were before this invocation, so that a retry processes them again.
+     *
+     * @param records         The records from the S3 event notification.
+     * @param deadlineReached Checked after each batch of lines. Objects stop being processed once it returns true.
+     * @return true if all objects were processed, false if some were stopped at the deadline or not all messages
+     * could be sent.
      */
-    public void processS3Event(S3EventNotification.S3Entity s3Entity) {
+    public boolean processS3Records(List<S3EventNotification.S3EventNotificationRecord> records,
+                                    BooleanSupplier deadlineReached) {
+        final List<RecordResult> results = new ArrayList<>(records.size());
+        if (records.size() == 1) {
+            // No need to hand a single record over to another thread.
+            results.add(processS3Event(records.get(0).getS3(), deadlineReached));
+        } else {
+            final Map<String, String> loggingContext = ThreadContext.getImmutableContext();
+            final List<Future<RecordResult>> futures = new ArrayList<>(records.size());
+            for (S3EventNotification.S3EventNotificationRecord record : records) {
+                futures.add(recordExecutor.submit(() -> {
+                    // Keep the AWS request ID in the log messages of the worker threads.
+                    ThreadContext.putAll(loggingContext);
+                    try {
+                        return processS3Event(record.getS3(), deadlineReached);
+                    } finally {
+                        ThreadContext.clearMap();
+                    }
+                }));
+            }
+            results.addAll(awaitRecords(futures));
+        }
+
+        // Wait for all messages to send before the invocation ends. The transport stays open for the next invocation.
+        LOG.debug("Waiting up to [{}ms] with [{}] retries while waiting for all messages to be sent.",
+                config.getShutdownFlushTimeoutMs(), config.getShutdownFlushReties());
+        final long flushStartNanos = System.nanoTime();
+        final boolean flushed = gelfTransport.flush(config.getShutdownFlushTimeoutMs(), TimeUnit.MILLISECONDS,
+                                                    config.getShutdownFlushReties());
+        metrics.add(Metric.FLUSH_TIME, System.nanoTime() - flushStartNanos);
+        LOG.debug("Transport flush complete.");
+        try {
+            deadLetterSink.flush();
+        } catch (IOException e) {
+            LOG.error("Failed to write dead letters.", e);
+        }
+
+        if (!flushed) {
+            LOG.error("Not all messages could be sent before the invocation ended. The files are not marked as " +
+                      "processed, so that they are processed again when the invocation is retried.");
+            return false;
+        }
+        if (idempotencyCache != null) {
+            results.stream().filter(result -> result.completed)
+                   .forEach(result -> idempotencyCache.markProcessed(result.objectId));
+        }
+        return updateCheckpoints(results);
+    }
+
+    private RecordResult processS3Event(S3EventNotification.S3Entity s3Entity, BooleanSupplier deadlineReached) {
         final String s3BucketName = s3Entity.getBucket().getName();
         final String s3ObjectKey = s3Entity.getObject().getKey();
-        LOG.info("Reading object [{}] from bucket [{}]", s3ObjectKey, s3BucketName);
+        final RecordResult result = new RecordResult(s3BucketName, s3ObjectKey, s3Entity.getObject().geteTag(),
+                                                     IdempotencyCache.getObjectId(s3BucketName, s3Entity.getObject()));
+        if (idempotencyCache != null && idempotencyCache.isProcessed(result.objectId)) {
+            LOG.info("Object [{}] from bucket [{}] was already processed. Skipping file.", s3ObjectKey, s3BucketName);
+            metrics.increment(Metric.OBJECTS_SKIPPED);
+            return result;
+        }
 
-        try (S3Object s3Object = s3Client.getObject(s3BucketName, s3ObjectKey)){
-            processObjectLines(s3Object);
+        final Checkpoint checkpoint = loadCheckpoint(result);
+        if (checkpoint != null && checkpoint.isComplete()) {
+            LOG.info("Object [{}] from bucket [{}] was already processed. Skipping file.", s3ObjectKey, s3BucketName);
+            metrics.increment(Metric.OBJECTS_SKIPPED);
+            result.completed = true;
+            return result;
+        }
+        metrics.increment(Metric.OBJECTS_PROCESSED);
+        final long position = checkpoint != null ? checkpoint.getPosition() : 0;
+        if (position > 0) {
+            LOG.info("Resuming object [{}] from bucket [{}] at byte [{}].", s3ObjectKey, s3BucketName, position);
+        } else {
+            LOG.info("Reading object [{}] from bucket [{}]", s3ObjectKey, s3BucketName);
+        }
 
-            // Wait for all messages to send before shutting down the transport.
-            LOG.debug("Waiting up to [{}ms] with [{}] retries while waiting for transport shutdown to occur.",
-                    config.getShutdownFlushTimeoutMs(), config.getShutdownFlushReties());
-            gelfTransport.flushAndStopSynchronously(config.getShutdownFlushTimeoutMs(), TimeUnit.MILLISECONDS,
-                    config.getShutdownFlushReties());
-            LOG.debug("Transport shutdown complete.");
+        try (S3ObjectContent objectContent = position > 0
+                ? objectFetcher.getObjectContent(s3BucketName, s3Entity.getObject(), position)
+                : objectFetcher.getObjectContent(s3BucketName, s3Entity.getObject())) {
+            processObjectLines(result, objectContent, position, deadlineReached);
         } catch (Exception e) {
             LOG.error("An uncaught exception was thrown while processing file [{}]. Skipping file.", s3ObjectKey, e);
         }
+        return result;
+    }
 
+    private List<RecordResult> awaitRecords(List<Future<RecordResult>> futures) {
+        final List<RecordResult> results = new ArrayList<>(futures.size());
+        for (Future<RecordResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                LOG.error("An uncaught error was thrown while processing a record. Skipping record.", e.getCause());
+            } catch (InterruptedException e) {
+                LOG.error("Interrupted while waiting for records to be processed.");
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return results;
     }
 
     /**
      * Streams the S3 object contents line by line. Each line is decoded to a message and sent to Graylog over TCP.
      *
-     * @param s3Object The S3 file object.
+     * @param result        The record of the S3 object, which is updated if processing stops at the deadline.
+     * @param objectContent The S3 object content.
+     * @param position      The position in the object content to resume at.
      */
-    private void processObjectLines(S3Object s3Object) {
-        try (Scanner scanner = scannerFactory.getScanner(s3Object)) {
-            int lineNumber = 0;
-            while (scanner.hasNextLine()) {
-                String messageLine = scanner.nextLine();
-
-                if (Strings.isNullOrEmpty(messageLine)) {
-                    LOG.warn("Line is empty. Skipping.");
-                    continue;
-                }
+    private void processObjectLines(RecordResult result, S3ObjectContent objectContent, long position,
+                                    BooleanSupplier deadlineReached) {
+        final String objectKey = result.objectKey;
+        try (LineReader lineReader = scannerFactory.getLineReader(objectContent, objectKey,
+                                                                  objectContent.getContentEncoding())) {
+            // Compressed content is inflated from the start, but the lines before the position are not sent again.
+            lineReader.skip(position - objectContent.getStartOffset());
+            final long startPosition = lineReader.getPosition();
+            final DecodePipeline.Result pipelineResult = decodePipeline.process(lineReader, objectKey, deadlineReached);
+            metrics.add(Metric.BYTES_INFLATED, pipelineResult.getPosition() - startPosition);
+            LOG.info("Sent [{}] messages.", pipelineResult.getSentMessages());
+            if (pipelineResult.isStopped()) {
+                result.stoppedAt(objectContent.getStartOffset() + pipelineResult.getPosition());
+                LOG.info("Stopped processing file [{}] at byte [{}] before the timeout.", objectKey, result.position);
+            } else {
+                result.completed = !pipelineResult.isAborted();
+            }
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted while processing file [{}]. Skipping file.", objectKey);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.error("An uncaught exception was thrown while processing file [{}]. Skipping file.", objectKey, e);
+        }
+    }
 
-                try {
-                    final GelfMessage message = s3Codec.decode(messageLine);
-                    gelfTransport.send(message);
-                } catch (InterruptedException e) {
-                    LOG.error("Failed to send message [{}]", messageLine, e);
-                    return;
-                } catch (IOException e) {
-                    LOG.error("Failed to decode message [{}]", messageLine, e);
-                    return;
-                }
+    private Checkpoint loadCheckpoint(RecordResult result) {
+        if (!isCheckpointingEnabled()) {
+            return null;
+        }
+        try {
+            final Checkpoint checkpoint = checkpointStore.load(result.bucketName, result.objectKey);
+            if (checkpoint != null && !Objects.equals(checkpoint.getETag(), result.eTag)) {
+                LOG.warn("Ignoring checkpoint [{}] of file [{}], which was saved for another version of the file.",
+                         checkpoint, result.objectKey);
+                return null;
+            }
+            result.checkpointed = checkpoint != null;
+            return checkpoint;
+        } catch (IOException e) {
+            LOG.warn("Failed to load the checkpoint of file [{}]. Reading the whole file.", result.objectKey, e);
+            return null;
+        }
+    }
 
-                lineNumber++;
-                if (LOG.isDebugEnabled() && lineNumber % 100 == 0) { // Only log once per 100 messages.
-                    LOG.debug("Sent [{}] messages.", lineNumber);
+    /**
+     * Saves the checkpoints of all records if any record was stopped, so that the retried invocation only resumes
+     * the stopped ones and processes the failed ones again. Otherwise removes the checkpoints which are no longer
+     * needed.
+     *
+     * @return true if all records were processed completely.
+     */
+    private boolean updateCheckpoints(List<RecordResult> results) {
+        final boolean stopped = results.stream().anyMatch(result -> result.stopped);
+        if (!isCheckpointingEnabled()) {
+            return !stopped;
+        }
+        for (RecordResult result : results) {
+            try {
+                if (result.stopped) {
+                    checkpointStore.save(result.bucketName, result.objectKey,
+                                         Checkpoint.at(result.eTag, result.position));
+                } else if (stopped && result.completed && !result.checkpointed) {
+                    checkpointStore.save(result.bucketName, result.objectKey, Checkpoint.complete(result.eTag));
+                } else if (!stopped && result.checkpointed) {
+                    checkpointStore.delete(result.bucketName, result.objectKey);
                 }
+            } catch (IOException e) {
+                LOG.error("Failed to update the checkpoint of file [{}].", result.objectKey, e);
             }
-            LOG.info("Sent [{}] messages.", lineNumber);
-        } catch (Exception e) {
-            LOG.error("An uncaught exception was thrown while processing file [{}]. Skipping file.", s3Object.getKey(), e);
+        }
+        return !stopped;
+    }
+
+    private boolean isCheckpointingEnabled() {
+        return checkpointStore != null && config.getCheckpointBucket() != null;
+    }
+
+    /**
+     * How far a single record was processed.
+     */
+    private static class RecordResult {
+        private final String bucketName;
+        private final String objectKey;
+        private final String eTag;
+        private final String objectId;
+        private volatile boolean checkpointed;
+        // All lines of the object have been handed to the transport.
+        private volatile boolean completed;
+        private volatile boolean stopped;
+        private volatile long position;
+
+        private RecordResult(String bucketName, String objectKey, String eTag, String objectId) {
+            this.bucketName = bucketName;
+            this.objectKey = objectKey;
+            this.eTag = eTag;
+            this.objectId = objectId;
+        }
+
+        private void stoppedAt(long position) {
+            this.position = position;
+            this.stopped = true;
         }
     }
 }
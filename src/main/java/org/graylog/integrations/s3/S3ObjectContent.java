@@ -0,0 +1,40 @@
+package org.graylog.integrations.s3;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * The content stream of an S3 object, with the metadata needed to decompress it.
+ */
+public class S3ObjectContent extends FilterInputStream {
+
+    private final String contentEncoding;
+    private final long startOffset;
+
+    public S3ObjectContent(InputStream content, String contentEncoding) {
+        this(content, contentEncoding, 0);
+    }
+
+    /**
+     * @param startOffset The position in the object at which the content starts.
+     */
+    public S3ObjectContent(InputStream content, String contentEncoding, long startOffset) {
+        super(content);
+        this.contentEncoding = contentEncoding;
+        this.startOffset = startOffset;
+    }
+
+    /**
+     * @return The Content-Encoding of the object, or null if it is not known.
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return The position in the object at which the content starts. 0 unless only the end of the object was read.
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+}
@@ -0,0 +1,161 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.metrics.CountingInputStream;
+import org.graylog.integrations.s3.metrics.Metric;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opens the content stream of an S3 object.
+ *
+ * Large uncompressed objects are read with concurrent byte-range GET requests (see {@link RangedS3InputStream}), since
+ * a single connection limits the read bandwidth. All other objects are read with a single GET request. Compressed
+ * objects are always read with a single request, because they are decompressed serially anyway. With
+ * {@link CompressionType#AUTO}, a small range request for the first bytes of a large object decides whether it is
+ * compressed.
+ */
+public class S3ObjectFetcher {
+    private static final Logger LOG = LogManager.getLogger(S3ObjectFetcher.class);
+
+    private final Configuration config;
+    private final AmazonS3 s3Client;
+    private final ExecutorService rangeExecutor;
+    private final StageMetrics metrics;
+
+    public S3ObjectFetcher(Configuration config, AmazonS3 s3Client, StageMetrics metrics) {
+        this.config = config;
+        this.s3Client = s3Client;
+        this.metrics = metrics;
+        this.rangeExecutor = Executors.newFixedThreadPool(Math.max(1, config.getRangedGetParallelism()),
+                                                          new ThreadFactoryBuilder().setNameFormat("s3-range-%d")
+                                                                                    .setDaemon(true)
+                                                                                    .build());
+    }
+
+    /**
+     * @param bucketName The bucket containing the object.
+     * @param s3Object   The object from the S3 event notification.
+     * @return The object content. The caller must close the stream.
+     */
+    public S3ObjectContent getObjectContent(String bucketName, S3EventNotification.S3ObjectEntity s3Object)
+            throws IOException {
+        final Long objectSize = s3Object.getSizeAsLong();
+        if (useRangedGets(objectSize) && isUncompressed(bucketName, s3Object)) {
+            LOG.debug("Reading object [{}] of [{}] bytes with up to [{}] concurrent range requests.",
+                      s3Object.getKey(), objectSize, config.getRangedGetParallelism());
+            return newContent(new RangedS3InputStream(s3Client, bucketName, s3Object.getKey(), s3Object.geteTag(),
+                                                      objectSize, config.getRangedGetChunkSize(),
+                                                      config.getRangedGetParallelism(), rangeExecutor),
+                              null, 0);
+        }
+        return getWholeObjectContent(bucketName, s3Object);
+    }
+
+    /**
+     * Opens the content of an object for resuming at a position of its (decompressed) content.
+     *
+     * Uncompressed objects are read from that position. Compressed objects are read from the start, because the
+     * position cannot be mapped to the compressed bytes; see {@link S3ObjectContent#getStartOffset()}.
+     *
+     * @param position The position in the decompressed content.
+     * @return The object content. The caller must close the stream.
+     */
+    public S3ObjectContent getObjectContent(String bucketName, S3EventNotification.S3ObjectEntity s3Object,
+                                            long position) throws IOException {
+        if (position == 0) {
+            return getObjectContent(bucketName, s3Object);
+        }
+        if (!isUncompressed(bucketName, s3Object)) {
+            return getWholeObjectContent(bucketName, s3Object);
+        }
+
+        final Long objectSize = s3Object.getSizeAsLong();
+        if (useRangedGets(objectSize)) {
+            return newContent(new RangedS3InputStream(s3Client, bucketName, s3Object.getKey(), s3Object.geteTag(),
+                                                      position, objectSize, config.getRangedGetChunkSize(),
+                                                      config.getRangedGetParallelism(), rangeExecutor),
+                              null, position);
+        }
+
+        final GetObjectRequest request = new GetObjectRequest(bucketName, s3Object.getKey()).withRange(position);
+        if (s3Object.geteTag() != null) {
+            request.withMatchingETagConstraint(s3Object.geteTag());
+        }
+        // The S3 client returns null when the ETag constraint is not met.
+        final S3Object object = s3Client.getObject(request);
+        if (object == null) {
+            throw new IllegalStateException("Object [" + s3Object.getKey() + "] has changed since the checkpoint.");
+        }
+        return newContent(object.getObjectContent(), object.getObjectMetadata().getContentEncoding(), position);
+    }
+
+    private S3ObjectContent getWholeObjectContent(String bucketName, S3EventNotification.S3ObjectEntity s3Object) {
+        final S3Object object = s3Client.getObject(bucketName, s3Object.getKey());
+        return newContent(object.getObjectContent(), object.getObjectMetadata().getContentEncoding(), 0);
+    }
+
+    /**
+     * @return true if the object is not compressed. With {@link CompressionType#AUTO}, the first bytes of the object
+     * are requested to find out.
+     */
+    private boolean isUncompressed(String bucketName, S3EventNotification.S3ObjectEntity s3Object) throws IOException {
+        switch (config.getCompressionType()) {
+            case NONE:
+                return true;
+            case AUTO:
+                return detectCompression(bucketName, s3Object) == CompressionType.NONE;
+            default:
+                return false;
+        }
+    }
+
+    private CompressionType detectCompression(String bucketName, S3EventNotification.S3ObjectEntity s3Object)
+            throws IOException {
+        final GetObjectRequest request = new GetObjectRequest(bucketName, s3Object.getKey())
+                .withRange(0, CompressionDetector.MAGIC_LENGTH - 1);
+        if (s3Object.geteTag() != null) {
+            request.withMatchingETagConstraint(s3Object.geteTag());
+        }
+        // The S3 client returns null when the ETag constraint is not met.
+        final S3Object object = s3Client.getObject(request);
+        if (object == null) {
+            throw new IOException("Object [" + s3Object.getKey() + "] changed while it was being read.");
+        }
+
+        try (S3Object closeable = object) {
+            final byte[] header = IOUtils.toByteArray(closeable.getObjectContent());
+            final CompressionType detected = CompressionDetector.detectFromMagicBytes(header, header.length);
+            LOG.debug("Detected compression [{}] for object [{}] from its first bytes.", detected.getType(),
+                      s3Object.getKey());
+            return detected;
+        }
+    }
+
+    /**
+     * @return The content, which counts the bytes downloaded from S3.
+     */
+    private S3ObjectContent newContent(InputStream content, String contentEncoding, long startOffset) {
+        return new S3ObjectContent(new CountingInputStream(content, metrics, Metric.BYTES_DOWNLOADED), contentEncoding,
+                                   startOffset);
+    }
+
+    private boolean useRangedGets(Long objectSize) {
+        return objectSize != null
+               && (config.getCompressionType() == CompressionType.NONE
+                   || config.getCompressionType() == CompressionType.AUTO)
+               && config.getRangedGetParallelism() > 1
+               && objectSize >= config.getRangedGetThreshold();
+    }
+}
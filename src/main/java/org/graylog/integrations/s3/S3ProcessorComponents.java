@@ -0,0 +1,150 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.regions.DefaultAwsRegionProviderChain;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.joschi.jadconfig.JadConfig;
+import com.github.joschi.jadconfig.Repository;
+import com.github.joschi.jadconfig.RepositoryException;
+import com.github.joschi.jadconfig.ValidationException;
+import com.github.joschi.jadconfig.repositories.EnvironmentRepository;
+import com.google.common.base.Suppliers;
+import org.crac.Core;
+import org.graylog.integrations.s3.checkpoint.CheckpointStore;
+import org.graylog.integrations.s3.checkpoint.S3CheckpointStore;
+import org.graylog.integrations.s3.codec.S3Codec;
+import org.graylog.integrations.s3.codec.S3CodecFactory;
+import org.graylog.integrations.s3.deadletter.DeadLetterSinkFactory;
+import org.graylog.integrations.s3.idempotency.IdempotencyCache;
+import org.graylog.integrations.s3.idempotency.ProcessedObjectStoreFactory;
+import org.graylog.integrations.s3.metrics.EmfMetricsWriter;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog.integrations.s3.transport.GelfFrameTransport;
+import org.graylog.integrations.s3.transport.GelfTransportFactory;
+import org.graylog.integrations.s3.transport.ManagedGelfTransport;
+
+import javax.inject.Provider;
+
+/**
+ * Builds the components of the function with plain constructor calls, so that a cold start does not pay for the
+ * reflection and class loading of a dependency injector.
+ *
+ * Components the configuration does not use are not built: the Jackson {@link ObjectMapper} (which only the JSON
+ * codecs and some optional features need), the checkpoint store without a checkpoint bucket, and the metrics writer
+ * while metrics are disabled. The S3 client is always needed, and is built right away while Lambda still runs the
+ * initialization with full CPU.
+ *
+ * With SnapStart, {@link SnapStartResource} closes the connections before the snapshot and primes the decode path.
+ */
+public class S3ProcessorComponents {
+
+    private final Configuration config;
+    private final StageMetrics metrics = new StageMetrics();
+    private final GelfFrameTransport gelfTransport;
+    private final S3EventProcessor eventProcessor;
+    private final EmfMetricsWriter metricsWriter;
+    // The CRaC context only keeps a weak reference to its resources.
+    private final SnapStartResource snapStartResource;
+
+    /**
+     * @return The components of a Lambda container, configured by environment variables.
+     */
+    public static S3ProcessorComponents fromEnvironment() {
+        final Configuration config = readConfiguration(new EnvironmentRepository());
+        final S3ProcessorComponents components = new S3ProcessorComponents(config, () -> buildS3Client(config));
+        Core.getGlobalContext().register(components.snapStartResource);
+        // All messages have been flushed at the end of each invocation, so the connection can just be closed.
+        Runtime.getRuntime().addShutdownHook(new Thread(components.gelfTransport::stop, "gelf-transport-shutdown"));
+        return components;
+    }
+
+    /**
+     * Allows tests and benchmarks to build the components with another configuration and S3 client. The caller stops
+     * the GELF transport when it is done with the components.
+     *
+     * @param s3ClientProvider Builds the S3 client, again after each SnapStart restore.
+     */
+    S3ProcessorComponents(Configuration config, Provider<AmazonS3> s3ClientProvider) {
+        this.config = config;
+        final ManagedAmazonS3 s3Client = new ManagedAmazonS3(s3ClientProvider);
+        s3Client.open();
+        // Not ObjectMapper::new, which initializes the ObjectMapper class as soon as the provider is created.
+        final Provider<ObjectMapper> objectMapper = Suppliers.memoize(() -> new ObjectMapper())::get;
+
+        // The transport stays open across objects and invocations.
+        final ManagedGelfTransport transport = new ManagedGelfTransport(new GelfTransportFactory(config, metrics));
+        this.gelfTransport = transport;
+
+        final CheckpointStore checkpointStore = config.getCheckpointBucket() != null
+                ? new S3CheckpointStore(config, s3Client, objectMapper.get()) : null;
+        final IdempotencyCache idempotencyCache = new IdempotencyCache(
+                config, new ProcessedObjectStoreFactory(config, () -> s3Client).get());
+        final S3Codec s3Codec = new S3CodecFactory(config, objectMapper).get();
+        final S3ScannerFactory scannerFactory = new S3ScannerFactory(config);
+        this.eventProcessor = new S3EventProcessor(config, gelfTransport,
+                                                   new S3ObjectFetcher(config, s3Client, metrics),
+                                                   s3Codec, scannerFactory, checkpointStore, idempotencyCache,
+                                                   new DeadLetterSinkFactory(config, () -> s3Client, objectMapper).get(),
+                                                   metrics);
+        this.metricsWriter = config.getMetricsEnabled() ? new EmfMetricsWriter(config, objectMapper.get()) : null;
+        this.snapStartResource = new SnapStartResource(config,
+                                                       new Primer(config, s3Codec, scannerFactory, metricsWriter),
+                                                       transport, s3Client);
+    }
+
+    private static AmazonS3 buildS3Client(Configuration config) {
+        final AmazonS3ClientBuilder builder = AmazonS3Client.builder();
+        if (config.getS3Endpoint() != null) {
+            // S3 compatible services rarely support virtual-hosted-style bucket names.
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(
+                           config.getS3Endpoint(), new DefaultAwsRegionProviderChain().getRegion()))
+                   .withPathStyleAccessEnabled(true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads and validates the configuration.
+     *
+     * @param repository The source of the settings, keyed by environment variable name (e.g. GRAYLOG_HOST).
+     */
+    static Configuration readConfiguration(Repository repository) {
+        final Configuration configuration = new Configuration();
+        try {
+            new JadConfig(repository, configuration).process();
+        } catch (RepositoryException | ValidationException e) {
+            throw new RuntimeException("Failed to build Configuration", e);
+        }
+        return configuration;
+    }
+
+    public Configuration getConfiguration() {
+        return config;
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    public GelfFrameTransport getGelfTransport() {
+        return gelfTransport;
+    }
+
+    public S3EventProcessor getEventProcessor() {
+        return eventProcessor;
+    }
+
+    /**
+     * @return null if metrics are disabled.
+     */
+    public EmfMetricsWriter getMetricsWriter() {
+        return metricsWriter;
+    }
+
+    SnapStartResource getSnapStartResource() {
+        return snapStartResource;
+    }
+}
@@ -1,39 +1,107 @@
 package org.graylog.integrations.s3;
 
-import com.amazonaws.services.s3.model.S3Object;
+import com.github.luben.zstd.RecyclingBufferPool;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import com.github.luben.zstd.util.Native;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.snappy.FramedSnappyCompressorInputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javax.inject.Inject;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.util.Scanner;
-import java.util.zip.GZIPInputStream;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class S3ScannerFactory {
     private static final Logger LOG = LogManager.getLogger(S3ScannerFactory.class);
 
     private final Configuration config;
+    // Inflates multi-member gzip objects. Null if they are inflated serially.
+    private final ExecutorService inflateExecutor;
 
-    @Inject
     public S3ScannerFactory(Configuration config) {
         this.config = config;
+        this.inflateExecutor = config.getGzipInflateThreads() > 1
+                               ? Executors.newFixedThreadPool(config.getGzipInflateThreads(),
+                                                              new ThreadFactoryBuilder().setNameFormat("gzip-inflate-%d")
+                                                                                        .setDaemon(true)
+                                                                                        .build())
+                               : null;
     }
 
-    public Scanner getScanner(S3Object s3Object) throws IOException {
-        final Scanner scanner;
-        if (config.getCompressionType() == CompressionType.GZIP) {
+    /**
+     * @param objectContent   The object content.
+     * @param objectKey       The S3 object key.
+     * @param contentEncoding The Content-Encoding of the object, or null if it is not known. Only used to detect the
+     *                        compression with {@link CompressionType#AUTO}.
+     */
+    public LineReader getLineReader(InputStream objectContent, String objectKey, String contentEncoding)
+            throws IOException {
+        CompressionType compressionType = config.getCompressionType();
+        InputStream content = objectContent;
+        if (compressionType == CompressionType.AUTO) {
+            final PushbackInputStream pushbackContent =
+                    new PushbackInputStream(objectContent, CompressionDetector.MAGIC_LENGTH);
+            compressionType = CompressionDetector.detect(pushbackContent, objectKey, contentEncoding);
+            content = pushbackContent;
+            LOG.debug("Detected compression [{}] for file [{}]", compressionType.getType(), objectKey);
+        }
+
+        try {
+            return new LineReader(decompress(content, compressionType), config.getMaxLineLength());
+        } catch (IOException e) {
+            LOG.error("Failed to decompress stream for file [{}]", objectKey);
+            throw e;
+        }
+    }
+
+    private InputStream decompress(InputStream content, CompressionType compressionType) throws IOException {
+        switch (compressionType) {
+            case NONE:
+                return content;
+            case GZIP:
+                // Inflater is backed by the native zlib of the JVM.
+                if (inflateExecutor != null) {
+                    return new ParallelGzipInputStream(content, inflateExecutor, config.getGzipInflateChunkSize(),
+                                                       config.getGzipInflateThreads(), LineReader.DEFAULT_BUFFER_SIZE);
+                }
+                return new MultiMemberGzipInputStream(content, LineReader.DEFAULT_BUFFER_SIZE);
+            case ZSTD:
+                if (!ZstdSupport.AVAILABLE) {
+                    throw new IOException("zstd decompression is not available on this platform.");
+                }
+                return new ZstdInputStreamNoFinalizer(content, RecyclingBufferPool.INSTANCE);
+            case BZIP2:
+                // The decompressor reads single bytes, so the content must be buffered.
+                return new BZip2CompressorInputStream(new BufferedInputStream(content, LineReader.DEFAULT_BUFFER_SIZE),
+                                                      true);
+            case SNAPPY:
+                return new FramedSnappyCompressorInputStream(new BufferedInputStream(content,
+                                                                                     LineReader.DEFAULT_BUFFER_SIZE));
+            default:
+                throw new IllegalArgumentException("The CompressionType [" + compressionType + "] has not been implemented. This is a bug.");
+        }
+    }
+
+    /**
+     * Loads the native zstd library with the first zstd object, so that it does not slow down the cold start of
+     * functions which never see one.
+     */
+    private static class ZstdSupport {
+        static final boolean AVAILABLE = load();
+
+        private static boolean load() {
             try {
-                scanner = new Scanner(new GZIPInputStream(s3Object.getObjectContent()));
-            } catch (IOException e) {
-                LOG.error("Failed to decompress stream for file [{}]", s3Object.getKey());
-                throw e;
+                Native.load();
+                return true;
+            } catch (UnsatisfiedLinkError | RuntimeException e) {
+                LOG.error("Failed to load the native zstd library.", e);
+                return false;
             }
-        } else if (config.getCompressionType() == CompressionType.NONE) {
-            scanner = new Scanner(s3Object.getObjectContent());
-        } else {
-            throw new IllegalArgumentException("The CompressionType [" + config.getCompressionType() + "] has not been implemented. This is a bug.");
         }
-
-        return scanner;
     }
 }
@@ -0,0 +1,63 @@
+package org.graylog.integrations.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.crac.Context;
+import org.crac.Resource;
+import org.graylog.integrations.s3.transport.ManagedGelfTransport;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepares the function for a SnapStart snapshot, and reconnects it after a restore.
+ *
+ * Open connections do not survive a snapshot: it may be restored on another host, long after it was taken, when
+ * GRAYLOG_HOST and the S3 endpoint may resolve to other addresses and the credentials have changed. So the GELF
+ * transport and the S3 client are closed before the snapshot. After a restore, the S3 client is built again with the
+ * current credentials, and the transport connects with the first message, resolving GRAYLOG_HOST at that point.
+ *
+ * Before the connections are closed, the {@link Primer} runs, so that the snapshot holds compiled code.
+ *
+ * Without SnapStart (or another CRaC runtime) the hooks are never called.
+ */
+class SnapStartResource implements Resource {
+    private static final Logger LOG = LogManager.getLogger(SnapStartResource.class);
+
+    private final Configuration config;
+    private final Primer primer;
+    private final ManagedGelfTransport gelfTransport;
+    private final ManagedAmazonS3 s3Client;
+
+    SnapStartResource(Configuration config, Primer primer, ManagedGelfTransport gelfTransport,
+                      ManagedAmazonS3 s3Client) {
+        this.config = config;
+        this.primer = primer;
+        this.gelfTransport = gelfTransport;
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        try {
+            primer.prime();
+        } catch (IOException | RuntimeException e) {
+            // The snapshot still works, the first invocations after a restore are just slower.
+            LOG.warn("Failed to prime the function before the snapshot.", e);
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while priming the function before the snapshot.");
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.debug("Closing connections before the snapshot.");
+        gelfTransport.flushAndStopSynchronously(config.getShutdownFlushTimeoutMs(), TimeUnit.MILLISECONDS,
+                                                config.getShutdownFlushReties());
+        s3Client.shutdown();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        LOG.debug("Reopening connections after the restore.");
+        s3Client.open();
+    }
+}
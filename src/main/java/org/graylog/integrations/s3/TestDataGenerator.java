@@ -76,7 +76,31 @@ public class TestDataGenerator {
         return compressedOutput.toByteArray();
     }
 
-    private static String buildMessage() {
+    /**
+     * Builds a random message with additional fields appended, for benchmarks which need wider or larger messages.
+     *
+     * @param extraFields      The number of string fields to add to the 60 fields of {@link #buildMessage()}.
+     * @param extraValueLength The length of each additional field value.
+     */
+    public static String buildMessage(int extraFields, int extraValueLength) {
+        final String message = buildMessage();
+        if (extraFields <= 0) {
+            return message;
+        }
+
+        // Re-open the JSON object and append the fields before the closing brace.
+        final StringBuilder builder = new StringBuilder(message.length() + extraFields * (extraValueLength + 32));
+        builder.append(message, 0, message.lastIndexOf('}'));
+        for (int i = 0; i < extraFields; i++) {
+            builder.append(",  \"CustomField").append(i).append("\": \"").append(randomText(extraValueLength)).append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Builds a random message in the Cloudflare Logpush format with 60 fields.
+     */
+    public static String buildMessage() {
 
         // 200s should be really common, so many are listed.
         int responseStatus = pickRandom(200, 200, 200, 200, 200, 200, 200, 200, 200, 200, 200, 200, 200, 200, 200, 200,
@@ -182,6 +206,15 @@ public class TestDataGenerator {
         return random.nextInt((max - min) + 1) + min;
     }
 
+    private static String randomText(int length) {
+        final Random random = new Random();
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
     private static String randomIp() {
         return randomInRange(10, 254) + "." + randomInRange(10, 254) + "." + randomInRange(10, 254) + "." + randomInRange(10, 254);
     }
@@ -0,0 +1,61 @@
+package org.graylog.integrations.s3.checkpoint;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * How far an S3 object has been processed by an invocation which stopped before its timeout.
+ */
+public class Checkpoint {
+
+    private final String eTag;
+    private final long position;
+    private final boolean complete;
+
+    /**
+     * @param eTag     The ETag of the object version which was processed. May be null.
+     * @param position The number of bytes of the (decompressed) object content which have been sent, up to a line
+     *                 boundary.
+     * @param complete True if the whole object has been sent.
+     */
+    @JsonCreator
+    public Checkpoint(@JsonProperty("etag") String eTag,
+                      @JsonProperty("position") long position,
+                      @JsonProperty("complete") boolean complete) {
+        this.eTag = eTag;
+        this.position = position;
+        this.complete = complete;
+    }
+
+    public static Checkpoint at(String eTag, long position) {
+        return new Checkpoint(eTag, position, false);
+    }
+
+    public static Checkpoint complete(String eTag) {
+        return new Checkpoint(eTag, 0, true);
+    }
+
+    @JsonProperty("etag")
+    public String getETag() {
+        return eTag;
+    }
+
+    @JsonProperty("position")
+    public long getPosition() {
+        return position;
+    }
+
+    @JsonProperty("complete")
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" +
+               "eTag='" + eTag + '\'' +
+               ", position=" + position +
+               ", complete=" + complete +
+               '}';
+    }
+}
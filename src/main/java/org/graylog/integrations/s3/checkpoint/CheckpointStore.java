@@ -0,0 +1,22 @@
+package org.graylog.integrations.s3.checkpoint;
+
+import java.io.IOException;
+
+/**
+ * Keeps the {@link Checkpoint} of each S3 object between invocations, so that a retried invocation resumes where the
+ * previous one stopped.
+ */
+public interface CheckpointStore {
+
+    /**
+     * @return The checkpoint of the object, or null if there is none.
+     */
+    Checkpoint load(String bucketName, String objectKey) throws IOException;
+
+    void save(String bucketName, String objectKey, Checkpoint checkpoint) throws IOException;
+
+    /**
+     * Removes the checkpoint of the object, if there is one.
+     */
+    void delete(String bucketName, String objectKey) throws IOException;
+}
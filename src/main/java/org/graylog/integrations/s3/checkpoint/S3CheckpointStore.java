@@ -0,0 +1,68 @@
+package org.graylog.integrations.s3.checkpoint;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.S3Object;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.integrations.s3.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Stores each checkpoint as a small JSON object in the checkpoint bucket, named after the bucket and key of the
+ * processed object.
+ *
+ * The checkpoint bucket (or prefix) must not trigger the function itself.
+ */
+public class S3CheckpointStore implements CheckpointStore {
+
+    private final AmazonS3 s3Client;
+    private final ObjectMapper objectMapper;
+    private final String checkpointBucket;
+    private final String checkpointPrefix;
+
+    public S3CheckpointStore(Configuration config, AmazonS3 s3Client, ObjectMapper objectMapper) {
+        this.s3Client = s3Client;
+        this.objectMapper = objectMapper;
+        this.checkpointBucket = config.getCheckpointBucket();
+        this.checkpointPrefix = config.getCheckpointPrefix();
+    }
+
+    @Override
+    public Checkpoint load(String bucketName, String objectKey) throws IOException {
+        try (S3Object object = s3Client.getObject(checkpointBucket, getCheckpointKey(bucketName, objectKey))) {
+            return objectMapper.readValue(object.getObjectContent(), Checkpoint.class);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Failed to load the checkpoint of object [" + objectKey + "].", e);
+        } catch (AmazonClientException e) {
+            throw new IOException("Failed to load the checkpoint of object [" + objectKey + "].", e);
+        }
+    }
+
+    @Override
+    public void save(String bucketName, String objectKey, Checkpoint checkpoint) throws IOException {
+        try {
+            s3Client.putObject(checkpointBucket, getCheckpointKey(bucketName, objectKey),
+                               objectMapper.writeValueAsString(checkpoint));
+        } catch (AmazonClientException e) {
+            throw new IOException("Failed to save the checkpoint of object [" + objectKey + "].", e);
+        }
+    }
+
+    @Override
+    public void delete(String bucketName, String objectKey) throws IOException {
+        try {
+            s3Client.deleteObject(checkpointBucket, getCheckpointKey(bucketName, objectKey));
+        } catch (AmazonClientException e) {
+            throw new IOException("Failed to delete the checkpoint of object [" + objectKey + "].", e);
+        }
+    }
+
+    private String getCheckpointKey(String bucketName, String objectKey) {
+        return checkpointPrefix + bucketName + "/" + objectKey + ".json";
+    }
+}
@@ -1,29 +1,30 @@
 package org.graylog.integrations.s3.codec;
 
-import com.github.wnameless.json.flattener.JsonFlattener;
-import org.graylog2.gelfclient.GelfMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfWriter;
 
-import java.util.Map;
+import java.io.IOException;
 
-public class ApplicationJsonCodec implements S3Codec {
+public class ApplicationJsonCodec extends AbstractS3Codec implements S3Codec {
+
+    private final JsonFlattener jsonFlattener;
+
+    ApplicationJsonCodec(Configuration config, ObjectMapper objectMapper) {
+        super(config);
+        this.jsonFlattener = new JsonFlattener(config, objectMapper);
+    }
 
     /**
      * Flatten the JSON with an underscore separator and array [x] notation.
      * An alternative is to use the text/plain content_type configuration entry and parse the JSON within
      * Graylog directly.
      *
-     * @param message The full string message to decode.
+     * The whole line is the short message.
      */
-    public GelfMessage decode(String message) {
-
-        final Map<String, Object> stringObjectMap = new JsonFlattener(message).withSeparator("_".charAt(0))
-                                                                              .flattenAsMap();
-        final GelfMessage gelfMessage = new GelfMessage(message);
-
-        for (String key : stringObjectMap.keySet()) {
-            gelfMessage.addAdditionalField(key, stringObjectMap.get(key));
-        }
-
-        return gelfMessage;
+    public void decode(byte[] line, int offset, int length, DecodeContext context, GelfWriter writer)
+            throws IOException {
+        jsonFlattener.flatten(line, offset, length, writer, context);
+        writer.finish(line, offset, length, GelfWriter.DEFAULT_HOST, System.currentTimeMillis() / 1000D);
     }
 }
@@ -0,0 +1,137 @@
+package org.graylog.integrations.s3.codec;
+
+import org.graylog.integrations.s3.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes how {@link CloudflareLogCodec} handles each message field. The plan is built once from the
+ * {@link Configuration}, so the cost of handling a field does not depend on the number of configured fields.
+ */
+class CloudflareFieldPlan {
+
+    private static final List<String> TIMESTAMP_FIELDS = Arrays.asList("EdgeEndTimestamp", "EdgeStartTimestamp");
+    private static final List<String> HTTP_CODE_FIELDS = Arrays.asList("CacheResponseStatus", "EdgeResponseStatus", "OriginResponseStatus");
+    private static final String MESSAGE_TIMESTAMP_FIELD = "EdgeStartTimestamp";
+    private static final String RESPONSE_TIME_FIELD = "OriginResponseTime";
+
+    private final Map<String, Field> fields = new HashMap<>();
+    private final Field otherField;
+    private final String[] summaryFieldNames;
+
+    CloudflareFieldPlan(Configuration config) {
+        // Include all fields if none are specified in the configuration.
+        final boolean includeAll = config.getMessageFields().isEmpty();
+        otherField = new Field(includeAll);
+
+        for (String name : config.getMessageFields()) {
+            fields.put(name, new Field(true));
+        }
+        for (String name : TIMESTAMP_FIELDS) {
+            getOrCreate(name, includeAll).timestamp = true;
+        }
+        getOrCreate(MESSAGE_TIMESTAMP_FIELD, includeAll).messageTimestamp = true;
+        for (String name : HTTP_CODE_FIELDS) {
+            getOrCreate(name, includeAll).statusClassFieldName = name + "Class";
+        }
+        getOrCreate(RESPONSE_TIME_FIELD, includeAll).responseTimeMillisFieldName = RESPONSE_TIME_FIELD + "Millis";
+
+        // Summary fields are listed in the order of the configuration. Duplicates are listed once.
+        final List<String> summaryFields = new ArrayList<>();
+        for (String name : config.getMessageSummaryFields()) {
+            final String trimmed = name.trim();
+            if (!trimmed.isEmpty() && !summaryFields.contains(trimmed)) {
+                getOrCreate(trimmed, includeAll).summarySlot = summaryFields.size();
+                summaryFields.add(trimmed);
+            }
+        }
+        summaryFieldNames = summaryFields.toArray(new String[0]);
+    }
+
+    /**
+     * @return How to handle the field with the given name.
+     */
+    Field get(String name) {
+        final Field field = fields.get(name);
+        return field != null ? field : otherField;
+    }
+
+    /**
+     * @return The number of fields in the message summary.
+     */
+    int getSummarySize() {
+        return summaryFieldNames.length;
+    }
+
+    String getSummaryFieldName(int summarySlot) {
+        return summaryFieldNames[summarySlot];
+    }
+
+    private Field getOrCreate(String name, boolean include) {
+        return fields.computeIfAbsent(name, n -> new Field(include));
+    }
+
+    /**
+     * How to handle a single field.
+     */
+    static class Field {
+        private final boolean include;
+        private boolean timestamp;
+        private boolean messageTimestamp;
+        private String statusClassFieldName;
+        private String responseTimeMillisFieldName;
+        private int summarySlot = -1;
+
+        private Field(boolean include) {
+            this.include = include;
+        }
+
+        /**
+         * @return true if the field is added to the message.
+         */
+        boolean isIncluded() {
+            return include;
+        }
+
+        /**
+         * @return true if the field value is a timestamp.
+         */
+        boolean isTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return true if the field value is the message timestamp. This applies even if the field is not included.
+         */
+        boolean isMessageTimestamp() {
+            return messageTimestamp;
+        }
+
+        /**
+         * @return The name of the field for the HTTP status class (eg. "4xx" for 400), or null if the field is not an
+         * HTTP status code.
+         */
+        String getStatusClassFieldName() {
+            return statusClassFieldName;
+        }
+
+        /**
+         * @return The name of the field for the value in milliseconds, or null if the field is not a response time in
+         * nanoseconds.
+         */
+        String getResponseTimeMillisFieldName() {
+            return responseTimeMillisFieldName;
+        }
+
+        /**
+         * @return The position of the field in the message summary, or -1 if the field is not part of the summary.
+         */
+        int getSummarySlot() {
+            return summarySlot;
+        }
+    }
+}
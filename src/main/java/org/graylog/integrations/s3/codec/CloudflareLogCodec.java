@@ -1,191 +1,218 @@
 package org.graylog.integrations.s3.codec;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.Maps;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.graylog.integrations.s3.Configuration;
-import org.graylog2.gelfclient.GelfMessage;
+import org.graylog.integrations.s3.gelf.GelfWriter;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
+/**
+ * Decodes Cloudflare Logpush messages (one JSON object per line).
+ *
+ * The message is read in a single pass over the JSON tokens. Only the top-level fields are considered. Each included
+ * field is passed to the {@link GelfWriter} as soon as it has been read. The message summary and the timestamp may
+ * depend on fields at the end of the line, so they are only written once the whole line has been read.
+ *
+ * The line is parsed from its UTF-8 bytes, and the work buffers are taken from the {@link DecodeContext}, so no String
+ * of the whole line is built.
+ */
 public class CloudflareLogCodec extends AbstractS3Codec implements S3Codec {
     private static final Logger LOG = LogManager.getLogger(CloudflareLogCodec.class);
-    
-    private static final List<String> TIMESTAMP_FIELDS = Arrays.asList("EdgeEndTimestamp", "EdgeStartTimestamp");
-    private static final List<String> HTTP_CODE_FIELDS = Arrays.asList("CacheResponseStatus", "EdgeResponseStatus", "OriginResponseStatus");
 
     private final ObjectMapper objectMapper;
+    private final CloudflareFieldPlan fieldPlan;
 
     CloudflareLogCodec(Configuration config, ObjectMapper objectMapper) {
         super(config);
         this.objectMapper = objectMapper;
+        this.fieldPlan = new CloudflareFieldPlan(config);
     }
 
-    public GelfMessage decode(String message) throws IOException {
-        // The valueMap makes it easier to get access to each field.
-        final JsonNode rootNode = objectMapper.readTree(message);
+    public void decode(byte[] line, int offset, int length, DecodeContext context, GelfWriter writer)
+            throws IOException {
+        // The text values of the summary fields. Null if the field is not present.
+        final String[] summaryValues = context.getStringArray(fieldPlan.getSummarySize());
+        Double messageTimestamp = null;
 
-        final List<String> messageFieldNames = Stream.generate(rootNode.fieldNames()::next)
-                                                     .limit(rootNode.size())
-                                                     .collect(Collectors.toList());
-
-        final Map<String, Object> messageMap = Maps.newLinkedHashMap();
-
-        // Prepare message summary. Use fields indicated in the configuration.
-        config.getMessageSummaryFields().stream()
-              .map(String::trim)
-              .filter(s -> !s.isEmpty())
-              .filter(messageFieldNames::contains)
-              .forEach(s -> messageMap.put(s, getNodeTextValue(s, rootNode)));
-
-        // The resulting message looks like:
-        // ClientRequestHost: domain.com:8080 | ClientRequestPath: /api/cluster/metrics/multiple | OriginIP: 127.0.68.0 | ClientSrcPort: 54728 | EdgeServerIP: 127.0.68.0 | EdgeResponseBytes: 911
-        final String messageSummary = messageMap.keySet().stream().map(key -> key + ": " + getNodeTextValue(key, rootNode)).collect(Collectors.joining(" | "));
+        try (JsonParser parser = objectMapper.getFactory().createParser(line, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected the message to be a JSON object.");
+            }
 
-        final GelfMessage gelfMessage = new GelfMessage(messageSummary, config.getGraylogHost());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                final CloudflareFieldPlan.Field field = fieldPlan.get(key);
 
-        // Set message timestamp.
-        final JsonNode edgeStartTimestamp = rootNode.findValue("EdgeStartTimestamp");
-        if (edgeStartTimestamp != null) {
-            final double timestamp = parseTimestamp(edgeStartTimestamp);
-            LOG.trace("Setting EdgeStartTimestamp timestamp [{}].", timestamp);
-            gelfMessage.setTimestamp(timestamp);
-        } else {
-            // Default to now.
-            LOG.trace("Setting Now timestamp.");
-            gelfMessage.setTimestamp(Instant.now().getEpochSecond());
-        }
+                if (field.getSummarySlot() >= 0) {
+                    summaryValues[field.getSummarySlot()] = getText(parser, token);
+                }
 
-        // Get a list of parsed fields to include in the message.
-        List<String> fieldNamesToInclude = removeMessageFieldsNotInConfig(messageFieldNames);
+                // The message timestamp is set whether the field is included or not.
+                Double timestamp = null;
+                if (field.isMessageTimestamp()) {
+                    timestamp = parseTimestamp(parser, token);
+                    if (messageTimestamp == null) {
+                        messageTimestamp = timestamp;
+                    }
+                }
 
-        Iterator<Map.Entry<String, JsonNode>> fieldIterator = rootNode.fields();
-        while (fieldIterator.hasNext()) {
-            Map.Entry<String, JsonNode> fieldPair = fieldIterator.next();
-            final String key = fieldPair.getKey();
-            final JsonNode valueNode = fieldPair.getValue();
+                // Skip fields not indicated to be included in the Config.messageFields field.
+                // An empty value means all fields should be included.
+                if (!field.isIncluded()) {
+                    parser.skipChildren();
+                    continue;
+                }
 
-            // Skip fields not indicated to be included in the Config.messageFields field.
-            // An empty value means all fields should be included.
-            if (fieldNamesToInclude != null && !fieldNamesToInclude.contains(key)) {
-                continue;
-            }
+                if (token == JsonToken.START_ARRAY) {
+                    // The Initial version will be shipped without support for lists.
+                    // See https://github.com/Graylog2/graylog-s3-lambda/issues/5
 
-            if (!valueNode.isArray()) {
+                    // "FirewallMatchesActions": [
+                    //    "allow"
+                    // ],
+                    parser.skipChildren();
+                    continue;
+                }
 
                 // Pick off and parse timestamp fields first.
-                if (TIMESTAMP_FIELDS.contains(key)) {
-                    gelfMessage.addAdditionalField(key, parseTimestamp(valueNode));
+                if (field.isTimestamp()) {
+                    writer.addField(key, timestamp != null ? timestamp : parseTimestamp(parser, token));
                     continue;
                 }
 
+                checkValueType(token);
+
                 // Set status class for all status fields (eg. "4xx" for 400 and 412)
-                if (HTTP_CODE_FIELDS.contains(key)) {
-                    final Object nodeValue = getNodeValue(valueNode);
-                    if (nodeValue != null) {
-                        final int statusValue = (int) nodeValue;
-                        if (statusValue >= 100 && statusValue < 200) {
-                            gelfMessage.addAdditionalField(key + "Class", "1xx");
-                        } else if (statusValue >= 200 && statusValue < 300) {
-                            gelfMessage.addAdditionalField(key + "Class", "2xx");
-                        } else if (statusValue >= 300 && statusValue < 400) {
-                            gelfMessage.addAdditionalField(key + "Class", "3xx");
-                        } else if (statusValue >= 400 && statusValue < 500) {
-                            gelfMessage.addAdditionalField(key + "Class", "4xx");
-                        } else if (statusValue >= 500 && statusValue < 600) {
-                            gelfMessage.addAdditionalField(key + "Class", "5xx");
-                        }
+                if (field.getStatusClassFieldName() != null) {
+                    final String statusClass = getStatusClass((int) getValue(parser, token));
+                    if (statusClass != null) {
+                        writer.addField(field.getStatusClassFieldName(), statusClass);
                     }
                 }
 
                 // Set response time millis.
-                if ("OriginResponseTime".equals(key)) {
-                    final Object nodeValue = getNodeValue(valueNode);
-                    if (nodeValue != null) {
-                        gelfMessage.addAdditionalField("OriginResponseTimeMillis", ((Number) nodeValue).doubleValue() / 1_000_000);
-                    }
+                if (field.getResponseTimeMillisFieldName() != null) {
+                    writer.addField(field.getResponseTimeMillisFieldName(),
+                                    ((Number) getValue(parser, token)).doubleValue() / 1_000_000);
                 }
 
-                // Scalar values can be written directly to the GelfMessage.
-                gelfMessage.addAdditionalField(key, getNodeValue(valueNode));
-            } else {
-                // The Initial version will be shipped without support for lists.
-                // See https://github.com/Graylog2/graylog-s3-lambda/issues/5
-
-                // "FirewallMatchesActions": [
-                //    "allow"
-                // ],
-                //"FirewallMatchesSources": [
-                //    "firewallRules"
-                // ],
-                //"FirewallMatchesRuleIDs": [
-                //    "test"
-                // ],
-                // message.addAdditionalField(key, valueNode.toString());
+                // Scalar values are copied to the message as they are.
+                writer.addField(key, parser, token);
             }
         }
 
-        return gelfMessage;
+        final double timestamp;
+        if (messageTimestamp != null) {
+            LOG.trace("Setting EdgeStartTimestamp timestamp [{}].", messageTimestamp);
+            timestamp = messageTimestamp;
+        } else {
+            // Default to now.
+            LOG.trace("Setting Now timestamp.");
+            timestamp = Instant.now().getEpochSecond();
+        }
+
+        writer.finish(buildSummary(summaryValues, context.getStringBuilder()), config.getGraylogHost(), timestamp);
     }
 
     /**
-     * @return A node value from the node as text.
+     * The resulting message looks like:
+     * ClientRequestHost: domain.com:8080 | ClientRequestPath: /api/cluster/metrics/multiple | OriginIP: 127.0.68.0 | ClientSrcPort: 54728 | EdgeServerIP: 127.0.68.0 | EdgeResponseBytes: 911
      *
-     * Lists are not supported.
+     * Fields are listed in the order of the configuration. Fields that are not present in the message are left out.
+     *
+     * @param summary An empty builder to build the summary in.
      */
-    private String getNodeTextValue(String key, JsonNode entireJsonNode) {
-        final List<String> textValues = entireJsonNode.findValuesAsText(key);
-
-        // Only one value must be present for field.
-        if (textValues.size() != 1) {
-            throw new IllegalArgumentException("Expected 1 value for JSON key [" + key + "] but found ["
-                                               + textValues.size() + "].");
+    private String buildSummary(String[] summaryValues, StringBuilder summary) {
+        for (int i = 0; i < fieldPlan.getSummarySize(); i++) {
+            if (summaryValues[i] == null) {
+                continue;
+            }
+            if (summary.length() > 0) {
+                summary.append(" | ");
+            }
+            summary.append(fieldPlan.getSummaryFieldName(i)).append(": ").append(summaryValues[i]);
         }
+        return summary.toString();
+    }
 
-        return textValues.get(0);
+    private static String getStatusClass(int statusValue) {
+        if (statusValue >= 100 && statusValue < 200) {
+            return "1xx";
+        } else if (statusValue >= 200 && statusValue < 300) {
+            return "2xx";
+        } else if (statusValue >= 300 && statusValue < 400) {
+            return "3xx";
+        } else if (statusValue >= 400 && statusValue < 500) {
+            return "4xx";
+        } else if (statusValue >= 500 && statusValue < 600) {
+            return "5xx";
+        }
+        return null;
     }
 
     /**
-     * @param messageFields Fields that were present in the message.
-     * @return the union of the fields included in the message and those included in the configuration.
-     * All fields are returned if none are specified in the configuration.
+     * @return The current value as text. Lists and objects are not supported and result in an empty string.
      */
-    private List<String> removeMessageFieldsNotInConfig(List<String> messageFields) {
-
-        // Include all fields if none are specified in the configuration.
-        if (config.getMessageFields().isEmpty()) {
-            return messageFields;
+    private static String getText(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return String.valueOf(parser.getIntValue());
+                    case LONG:
+                        return String.valueOf(parser.getLongValue());
+                    default:
+                        return parser.getBigIntegerValue().toString();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return Double.toString(parser.getDoubleValue());
+            case VALUE_STRING:
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+            case VALUE_NULL:
+                return parser.getText();
+            default:
+                return "";
         }
-
-        return config.getMessageFields()
-                     .stream()
-                     .filter(field -> messageFields.contains(field))
-                     .collect(Collectors.toList());
     }
 
     /**
-     * Selects the node value based on its datatype.
+     * Only scalar values can be added to the message.
      */
-    private static Object getNodeValue(JsonNode node) {
-        if (node.isNumber()) {
-            return node.numberValue();
-        } else if (node.isBoolean()) {
-            return node.booleanValue();
-        } else if (node.isTextual()) {
-            return node.textValue();
+    private static void checkValueType(JsonToken token) {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+            case VALUE_STRING:
+                return;
+            default:
+                throw new IllegalArgumentException("Invalid node type [" + getTypeName(token) + "].");
         }
+    }
 
-        throw new IllegalArgumentException("Invalid node type [" + node.getNodeType() + "].");
+    /**
+     * Selects the current value based on its datatype. The token must have passed {@link #checkValueType(JsonToken)}.
+     */
+    private static Object getValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getBooleanValue();
+            default:
+                return parser.getText();
+        }
     }
 
     /**
@@ -196,26 +223,49 @@ public class CloudflareLogCodec extends AbstractS3Codec implements S3Codec {
      * - Unix (1570464000)
      * - UnixNano (1570465372184306580) Note that only millisecond precision will be stored in graylog. See http://graylog2.org/gelf#specs.
      *
-     * @param node The JSONNode containing the timestamp.
-     * @return a
+     * @param parser The parser positioned at the timestamp value.
+     * @return The timestamp in seconds.
      */
-    private static double parseTimestamp(JsonNode node) {
-        if (node.isTextual()) {
+    private static double parseTimestamp(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
             // RFC3339 format
-            return Instant.parse(node.textValue()).getEpochSecond();
-        } else if (node.isInt()) {
-            // Unix timestamp
-            return node.intValue();
-        } else if (node.isLong()) {
-            // Unix nano timestamp
-            return (double) node.longValue() / 1_000_000_000;
+            return Instant.parse(parser.getText()).getEpochSecond();
+        } else if (token == JsonToken.VALUE_NUMBER_INT) {
+            final JsonParser.NumberType numberType = parser.getNumberType();
+            if (numberType == JsonParser.NumberType.INT) {
+                // Unix timestamp
+                return parser.getIntValue();
+            } else if (numberType == JsonParser.NumberType.LONG) {
+                // Unix nano timestamp
+                return (double) parser.getLongValue() / 1_000_000_000;
+            }
         }
 
-        throw new IllegalArgumentException("Invalid Timestamp type [" + node.getNodeType() + "]. " +
+        throw new IllegalArgumentException("Invalid Timestamp type [" + getTypeName(token) + "]. " +
                                            "Expected a string, an integer, or a long value.");
     }
 
-    public static <T> Stream<T> stream(Iterable<T> it) {
-        return StreamSupport.stream(it.spliterator(), false);
+    /**
+     * @return The name of the JSON type of a value, for error messages.
+     */
+    private static String getTypeName(JsonToken token) {
+        switch (token) {
+            case START_OBJECT:
+                return "OBJECT";
+            case START_ARRAY:
+                return "ARRAY";
+            case VALUE_STRING:
+                return "STRING";
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return "NUMBER";
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return "BOOLEAN";
+            case VALUE_NULL:
+                return "NULL";
+            default:
+                return token.name();
+        }
     }
 }
@@ -0,0 +1,71 @@
+package org.graylog.integrations.s3.codec;
+
+import org.graylog.integrations.s3.gelf.GelfFrameWriter;
+import org.graylog.integrations.s3.gelf.GelfMessageWriter;
+
+import java.util.Arrays;
+
+/**
+ * Scratch space which a {@link S3Codec} reuses across the lines it decodes, so that the per-line work buffers do not
+ * have to be allocated again for every line.
+ *
+ * A context must only be used by one thread, and only for one line at a time. Use {@link #forCurrentThread()} to get
+ * the context of the current thread.
+ */
+public final class DecodeContext {
+
+    // Buffers which have grown larger than this are not kept, so a single huge line does not pin memory.
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<DecodeContext> CONTEXTS = ThreadLocal.withInitial(DecodeContext::new);
+
+    private final GelfFrameWriter frameWriter = new GelfFrameWriter();
+    private final GelfMessageWriter messageWriter = new GelfMessageWriter();
+    private StringBuilder stringBuilder = new StringBuilder(256);
+    private String[] strings = new String[16];
+
+    /**
+     * @return The context of the current thread.
+     */
+    public static DecodeContext forCurrentThread() {
+        return CONTEXTS.get();
+    }
+
+    /**
+     * @return The writer which encodes messages into GELF frames.
+     */
+    public GelfFrameWriter getFrameWriter() {
+        return frameWriter;
+    }
+
+    /**
+     * @return The writer which builds {@link org.graylog2.gelfclient.GelfMessage}s.
+     */
+    GelfMessageWriter getMessageWriter() {
+        return messageWriter;
+    }
+
+    /**
+     * @return An empty string builder.
+     */
+    StringBuilder getStringBuilder() {
+        if (stringBuilder.capacity() > MAX_RETAINED_CAPACITY) {
+            stringBuilder = new StringBuilder(256);
+        } else {
+            stringBuilder.setLength(0);
+        }
+        return stringBuilder;
+    }
+
+    /**
+     * @return An array with at least the given size, in which the first size elements are null.
+     */
+    String[] getStringArray(int size) {
+        if (strings.length < size) {
+            strings = new String[size];
+        } else {
+            Arrays.fill(strings, 0, size, null);
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,195 @@
+package org.graylog.integrations.s3.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfWriter;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Flattens a JSON document into the additional fields of a GELF message while it is parsed.
+ *
+ * Keys of nested objects are joined with an underscore, and array elements get the index in brackets:
+ * {"Records": [{"eventName": "x"}]} becomes the field Records[0]_eventName. A scalar document is added as the field
+ * "root". Null values and empty objects or arrays are not added.
+ *
+ * The work done per document is limited by the configuration:
+ * - Objects and arrays nested deeper than the maximum depth are skipped.
+ * - Parsing stops once the maximum number of fields has been added.
+ * - Excluded paths, and paths outside the include paths, are skipped without being flattened.
+ */
+class JsonFlattener {
+    private static final Logger LOG = LogManager.getLogger(JsonFlattener.class);
+
+    private static final String ROOT_FIELD = "root";
+
+    private final ObjectMapper objectMapper;
+    private final int maxDepth;
+    private final int maxFields;
+    private final Set<String> includePaths;
+    // All paths above an include path. Their children need to be checked against the include paths.
+    private final Set<String> includePathParents;
+    private final Set<String> excludePaths;
+
+    JsonFlattener(Configuration config, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.maxDepth = config.getJsonMaxDepth();
+        this.maxFields = config.getJsonMaxFields();
+        this.includePaths = new HashSet<>(config.getJsonIncludePaths());
+        this.includePathParents = buildParentPaths(config.getJsonIncludePaths());
+        this.excludePaths = new HashSet<>(config.getJsonExcludePaths());
+    }
+
+    /**
+     * Writes the fields of the UTF-8 encoded JSON document to the message.
+     *
+     * @return The number of fields that were added.
+     */
+    int flatten(byte[] json, int offset, int length, GelfWriter writer, DecodeContext context) throws IOException {
+        final Flattening flattening = new Flattening(writer, context.getStringBuilder());
+        try (JsonParser parser = objectMapper.getFactory().createParser(json, offset, length)) {
+            final JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                flattenObject(parser, flattening, 1, includePaths.isEmpty());
+            } else if (token == JsonToken.START_ARRAY) {
+                flattenArray(parser, flattening, 1, includePaths.isEmpty());
+            } else if (token != null) {
+                flattening.path.append(ROOT_FIELD);
+                flattenValue(parser, token, flattening, 1, includePaths.isEmpty());
+            }
+        }
+        return flattening.fieldCount;
+    }
+
+    /**
+     * @return false if the maximum number of fields has been reached.
+     */
+    private boolean flattenObject(JsonParser parser, Flattening flattening, int depth, boolean included) throws IOException {
+        final StringBuilder path = flattening.path;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final int parentLength = path.length();
+            if (parentLength > 0) {
+                path.append('_');
+            }
+            path.append(parser.getCurrentName());
+
+            final boolean more = flattenValue(parser, parser.nextToken(), flattening, depth, included);
+            path.setLength(parentLength);
+            if (!more) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the maximum number of fields has been reached.
+     */
+    private boolean flattenArray(JsonParser parser, Flattening flattening, int depth, boolean included) throws IOException {
+        final StringBuilder path = flattening.path;
+        JsonToken token;
+        for (int index = 0; (token = parser.nextToken()) != JsonToken.END_ARRAY && token != null; index++) {
+            final int parentLength = path.length();
+            path.append('[').append(index).append(']');
+
+            final boolean more = flattenValue(parser, token, flattening, depth, included);
+            path.setLength(parentLength);
+            if (!more) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flattens the value at the current path.
+     *
+     * @param depth    The depth of the object or array containing the value.
+     * @param included true if the containing object or array is within an include path.
+     * @return false if the maximum number of fields has been reached.
+     */
+    private boolean flattenValue(JsonParser parser, JsonToken token, Flattening flattening, int depth,
+                                 boolean included) throws IOException {
+        String path = null;
+        if (!excludePaths.isEmpty()) {
+            path = flattening.path.toString();
+            if (excludePaths.contains(path)) {
+                parser.skipChildren();
+                return true;
+            }
+        }
+        if (!included) {
+            if (path == null) {
+                path = flattening.path.toString();
+            }
+            if (includePaths.contains(path)) {
+                included = true;
+            } else if (!includePathParents.contains(path)) {
+                parser.skipChildren();
+                return true;
+            }
+        }
+
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            if (depth >= maxDepth) {
+                LOG.trace("Skipping [{}], which is nested deeper than [{}] levels.", flattening.path, maxDepth);
+                parser.skipChildren();
+                return true;
+            }
+            return token == JsonToken.START_OBJECT
+                   ? flattenObject(parser, flattening, depth + 1, included)
+                   : flattenArray(parser, flattening, depth + 1, included);
+        }
+
+        // A scalar value which is only the parent of an include path.
+        if (!included || token == JsonToken.VALUE_NULL) {
+            return true;
+        }
+
+        if (flattening.fieldCount >= maxFields) {
+            LOG.debug("The message has more than [{}] fields. Dropping the remaining fields.", maxFields);
+            return false;
+        }
+        flattening.writer.addField(path != null ? path : flattening.path.toString(), parser, token);
+        flattening.fieldCount++;
+        return true;
+    }
+
+    /**
+     * @return Every path which ends before an object key or array index of one of the given paths.
+     * E.g. "a" and "a_b" for "a_b[0]". Keys which contain an underscore result in extra paths, which is harmless.
+     */
+    private static Set<String> buildParentPaths(List<String> paths) {
+        final Set<String> parentPaths = new HashSet<>();
+        for (String path : paths) {
+            for (int i = 1; i < path.length(); i++) {
+                final char c = path.charAt(i);
+                if (c == '_' || c == '[') {
+                    parentPaths.add(path.substring(0, i));
+                }
+            }
+        }
+        return parentPaths;
+    }
+
+    /**
+     * The state of a single document that is being flattened.
+     */
+    private static class Flattening {
+        private final GelfWriter writer;
+        private final StringBuilder path;
+        private int fieldCount;
+
+        private Flattening(GelfWriter writer, StringBuilder path) {
+            this.writer = writer;
+            this.path = path;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package org.graylog.integrations.s3.codec;
 
-import org.graylog2.gelfclient.GelfMessage;
+import org.graylog.integrations.s3.gelf.GelfWriter;
+
+import java.io.IOException;
 
 public class PlainTextCodec implements S3Codec {
 
-    public GelfMessage decode(String message) {
+    public void decode(byte[] line, int offset, int length, DecodeContext context, GelfWriter writer)
+            throws IOException {
 
         // Nothing to do here, just pass the message along.
-        return new GelfMessage(message);
+        writer.finish(line, offset, length, GelfWriter.DEFAULT_HOST, System.currentTimeMillis() / 1000D);
     }
 }
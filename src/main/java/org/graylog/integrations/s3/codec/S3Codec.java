@@ -1,10 +1,43 @@
 package org.graylog.integrations.s3.codec;
 
+import org.graylog.integrations.s3.gelf.GelfMessageWriter;
+import org.graylog.integrations.s3.gelf.GelfWriter;
 import org.graylog2.gelfclient.GelfMessage;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public interface S3Codec {
 
-    GelfMessage decode(String message) throws IOException;
+    /**
+     * Decodes a single line, given as UTF-8 bytes, and writes the message to the writer.
+     *
+     * The bytes are only valid during the call: the caller reuses the buffer for the following lines.
+     *
+     * @param line    The buffer containing the line.
+     * @param offset  The position of the first byte of the line in the buffer.
+     * @param length  The number of bytes of the line.
+     * @param context The scratch space of the calling thread.
+     * @param writer  Receives the message. One of its finish methods is called once the line has been decoded.
+     */
+    void decode(byte[] line, int offset, int length, DecodeContext context, GelfWriter writer) throws IOException;
+
+    /**
+     * Decodes a single line, given as UTF-8 bytes, to a {@link GelfMessage}.
+     */
+    default GelfMessage decode(byte[] line, int offset, int length, DecodeContext context) throws IOException {
+        final GelfMessageWriter writer = context.getMessageWriter();
+        writer.start();
+        decode(line, offset, length, context, writer);
+        return writer.getMessage();
+    }
+
+    /**
+     * Decodes a single line to a {@link GelfMessage}. Prefer the methods that take the line as bytes, which do not
+     * need the line as a String.
+     */
+    default GelfMessage decode(String message) throws IOException {
+        final byte[] line = message.getBytes(StandardCharsets.UTF_8);
+        return decode(line, 0, line.length, DecodeContext.forCurrentThread());
+    }
 }
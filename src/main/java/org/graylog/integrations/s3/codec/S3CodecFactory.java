@@ -3,16 +3,16 @@ package org.graylog.integrations.s3.codec;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.graylog.integrations.s3.Configuration;
 
-import javax.inject.Inject;
 import javax.inject.Provider;
 
-
 public class S3CodecFactory implements Provider<S3Codec> {
     private final Configuration config;
-    private final ObjectMapper objectMapper;
+    private final Provider<ObjectMapper> objectMapper;
 
-    @Inject
-    public S3CodecFactory(Configuration config, ObjectMapper objectMapper) {
+    /**
+     * @param objectMapper Only called for the content types which need it.
+     */
+    public S3CodecFactory(Configuration config, Provider<ObjectMapper> objectMapper) {
         this.config = config;
         this.objectMapper = objectMapper;
     }
@@ -21,9 +21,9 @@ public class S3CodecFactory implements Provider<S3Codec> {
     public S3Codec get() {
         switch (config.getContentType()) {
             case APPLICATION_JSON:
-                return new ApplicationJsonCodec();
+                return new ApplicationJsonCodec(config, objectMapper.get());
             case CLOUD_FLARE_LOG:
-                return new CloudflareLogCodec(config, objectMapper);
+                return new CloudflareLogCodec(config, objectMapper.get());
             case TEXT_PLAIN:
                 return new PlainTextCodec();
             default:
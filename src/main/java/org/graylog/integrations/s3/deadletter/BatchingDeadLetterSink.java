@@ -0,0 +1,106 @@
+package org.graylog.integrations.s3.deadletter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Collects dead letters as newline-delimited JSON and writes them in batches, so that a burst of broken lines costs
+ * a few writes rather than one per line.
+ *
+ * Each dead letter is a JSON object with the fields "object", "error" and "line".
+ */
+abstract class BatchingDeadLetterSink implements DeadLetterSink {
+    private static final Logger LOG = LogManager.getLogger(BatchingDeadLetterSink.class);
+
+    private final ObjectMapper objectMapper;
+    private final int maxBatchSize;
+    private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private int batchSize;
+
+    /**
+     * @param maxBatchSize The number of dead letters after which a batch is written without waiting for
+     *                     {@link #flush()}.
+     */
+    BatchingDeadLetterSink(ObjectMapper objectMapper, int maxBatchSize) {
+        this.objectMapper = objectMapper;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Writes a batch of newline-delimited JSON dead letters. Several batches may be written at once by different
+     * threads.
+     *
+     * @param deadLetters The dead letters.
+     * @param count       The number of dead letters.
+     */
+    abstract void write(byte[] deadLetters, int count) throws IOException;
+
+    @Override
+    public void add(String objectKey, String line, Throwable cause) {
+        final ObjectNode deadLetter = objectMapper.createObjectNode();
+        deadLetter.put("object", objectKey);
+        deadLetter.put("error", String.valueOf(cause));
+        deadLetter.put("line", line);
+        final byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(deadLetter);
+        } catch (IOException e) {
+            LOG.error("Failed to write dead letter for message [{}] in file [{}]", line, objectKey, e);
+            return;
+        }
+
+        final Batch fullBatch;
+        synchronized (this) {
+            batch.write(json, 0, json.length);
+            batch.write('\n');
+            if (++batchSize < maxBatchSize) {
+                return;
+            }
+            fullBatch = takeBatch();
+        }
+        // Written outside of the lock, so that the decode threads adding dead letters do not wait for the write.
+        try {
+            write(fullBatch.deadLetters, fullBatch.count);
+        } catch (IOException e) {
+            LOG.error("Failed to write a batch of [{}] dead letters. The batch is dropped.", fullBatch.count, e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        final Batch fullBatch;
+        synchronized (this) {
+            if (batchSize == 0) {
+                return;
+            }
+            fullBatch = takeBatch();
+        }
+        write(fullBatch.deadLetters, fullBatch.count);
+    }
+
+    /**
+     * Hands the current batch over and starts a new one. A batch which fails to be written is dropped, rather than
+     * letting it grow without bound.
+     */
+    private Batch takeBatch() {
+        final Batch fullBatch = new Batch(batch.toByteArray(), batchSize);
+        batch = new ByteArrayOutputStream();
+        batchSize = 0;
+        return fullBatch;
+    }
+
+    private static class Batch {
+        private final byte[] deadLetters;
+        private final int count;
+
+        private Batch(byte[] deadLetters, int count) {
+            this.deadLetters = deadLetters;
+            this.count = count;
+        }
+    }
+}
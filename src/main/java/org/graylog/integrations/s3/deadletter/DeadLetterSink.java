@@ -0,0 +1,24 @@
+package org.graylog.integrations.s3.deadletter;
+
+import java.io.IOException;
+
+/**
+ * Keeps the lines which failed to decode, so that they can be inspected and replayed while the rest of their object is
+ * sent to Graylog.
+ *
+ * Lines may be added concurrently by several decode threads. They may be buffered until {@link #flush()}.
+ */
+public interface DeadLetterSink {
+
+    /**
+     * @param objectKey The key of the object which contains the line.
+     * @param line      The line which failed to decode.
+     * @param cause     Why the line failed to decode.
+     */
+    void add(String objectKey, String line, Throwable cause);
+
+    /**
+     * Writes all buffered lines.
+     */
+    void flush() throws IOException;
+}
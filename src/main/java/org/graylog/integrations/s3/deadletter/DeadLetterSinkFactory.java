@@ -0,0 +1,35 @@
+package org.graylog.integrations.s3.deadletter;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.integrations.s3.Configuration;
+
+import javax.inject.Provider;
+import java.nio.file.Paths;
+
+public class DeadLetterSinkFactory implements Provider<DeadLetterSink> {
+    private final Configuration config;
+    private final Provider<AmazonS3> s3Client;
+    private final Provider<ObjectMapper> objectMapper;
+
+    public DeadLetterSinkFactory(Configuration config, Provider<AmazonS3> s3Client,
+                                 Provider<ObjectMapper> objectMapper) {
+        this.config = config;
+        this.s3Client = s3Client;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public DeadLetterSink get() {
+        switch (config.getDeadLetterSinkType()) {
+            case FILE:
+                return new FileDeadLetterSink(Paths.get(config.getDeadLetterFile()), objectMapper.get(),
+                                              config.getDeadLetterBatchSize());
+            case S3:
+                return new S3DeadLetterSink(s3Client.get(), config.getDeadLetterBucket(), config.getDeadLetterPrefix(),
+                                            objectMapper.get(), config.getDeadLetterBatchSize());
+            default:
+                return new LoggingDeadLetterSink();
+        }
+    }
+}
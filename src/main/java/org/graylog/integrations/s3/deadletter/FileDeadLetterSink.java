@@ -0,0 +1,33 @@
+package org.graylog.integrations.s3.deadletter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the dead letters to a local file.
+ */
+public class FileDeadLetterSink extends BatchingDeadLetterSink {
+
+    private final Path file;
+    // Keeps batches which are written at the same time from interleaving in the file.
+    private final Object writeLock = new Object();
+
+    public FileDeadLetterSink(Path file, ObjectMapper objectMapper, int maxBatchSize) {
+        super(objectMapper, maxBatchSize);
+        this.file = file;
+    }
+
+    @Override
+    void write(byte[] deadLetters, int count) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        synchronized (writeLock) {
+            Files.write(file, deadLetters, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
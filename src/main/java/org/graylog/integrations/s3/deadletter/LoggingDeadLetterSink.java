@@ -0,0 +1,20 @@
+package org.graylog.integrations.s3.deadletter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Logs each line which failed to decode.
+ */
+public class LoggingDeadLetterSink implements DeadLetterSink {
+    private static final Logger LOG = LogManager.getLogger(LoggingDeadLetterSink.class);
+
+    @Override
+    public void add(String objectKey, String line, Throwable cause) {
+        LOG.error("Failed to decode message [{}] in file [{}]", line, objectKey, cause);
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,60 @@
+package org.graylog.integrations.s3.deadletter;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes each batch of dead letters as a gzip-compressed object to a bucket, named by the date and a random ID.
+ *
+ * The bucket (or prefix) must not trigger the function itself.
+ */
+public class S3DeadLetterSink extends BatchingDeadLetterSink {
+    private static final Logger LOG = LogManager.getLogger(S3DeadLetterSink.class);
+    private static final DateTimeFormatter DATE_PATH = DateTimeFormatter.ofPattern("yyyy/MM/dd/");
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final String prefix;
+
+    public S3DeadLetterSink(AmazonS3 s3Client, String bucketName, String prefix, ObjectMapper objectMapper,
+                            int maxBatchSize) {
+        super(objectMapper, maxBatchSize);
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    @Override
+    void write(byte[] deadLetters, int count) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(deadLetters.length / 4);
+        try (OutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(deadLetters);
+        }
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(compressed.size());
+        metadata.setContentType("application/x-ndjson");
+        metadata.setContentEncoding("gzip");
+        final String key = prefix + DATE_PATH.format(ZonedDateTime.now(ZoneOffset.UTC)) + UUID.randomUUID() + ".json.gz";
+        try {
+            s3Client.putObject(bucketName, key, new ByteArrayInputStream(compressed.toByteArray()), metadata);
+        } catch (AmazonClientException e) {
+            throw new IOException("Failed to write [" + count + "] dead letters to [" + key + "].", e);
+        }
+        LOG.info("Wrote [{}] dead letters to [{}] in bucket [{}].", count, key, bucketName);
+    }
+}
@@ -0,0 +1,118 @@
+package org.graylog.integrations.s3.filter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A condition on a top-level field of a JSON line, in one of the forms:
+ *
+ * - {@code field=value}: the value equals the given text. Numbers and booleans are compared as they are written in the
+ *   line, e.g. {@code EdgeResponseStatus=200}.
+ * - {@code field=value1|value2|value3}: the value equals one of the given texts.
+ * - {@code field=min..max}: the value is a number between min and max, inclusive. Either bound may be left out, e.g.
+ *   {@code EdgeResponseStatus=500..}.
+ *
+ * Lists, objects and null never match.
+ */
+public class FieldCondition {
+
+    private static final String RANGE_SEPARATOR = "..";
+
+    private final String fieldName;
+    // The texts which match. Null for a range.
+    private final Set<String> values;
+    private final double min;
+    private final double max;
+
+    private FieldCondition(String fieldName, Set<String> values, double min, double max) {
+        this.fieldName = fieldName;
+        this.values = values;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the condition is not in one of the supported forms.
+     */
+    public static FieldCondition parse(String condition) {
+        final int separator = condition.indexOf('=');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Expected a condition of the form field=value, but got [" + condition +
+                                               "].");
+        }
+        final String fieldName = condition.substring(0, separator).trim();
+        final String value = condition.substring(separator + 1).trim();
+
+        final int rangeSeparator = value.indexOf(RANGE_SEPARATOR);
+        if (rangeSeparator >= 0) {
+            final Double min = parseBound(value.substring(0, rangeSeparator), Double.NEGATIVE_INFINITY);
+            final Double max = parseBound(value.substring(rangeSeparator + RANGE_SEPARATOR.length()),
+                                          Double.POSITIVE_INFINITY);
+            // Otherwise the value is text which happens to contain "..".
+            if (min != null && max != null) {
+                if (min > max) {
+                    throw new IllegalArgumentException("The range of condition [" + condition + "] is empty.");
+                }
+                return new FieldCondition(fieldName, null, min, max);
+            }
+        }
+
+        final List<String> values = Splitter.on('|').splitToList(value);
+        return new FieldCondition(fieldName, ImmutableSet.copyOf(values), 0, 0);
+    }
+
+    /**
+     * @return The bound, the default if it is blank, or null if it is not a number.
+     */
+    private static Double parseBound(String bound, double defaultValue) {
+        if (bound.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(bound.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @param parser The parser, positioned at the value of the field.
+     * @param token  The current token of the parser.
+     */
+    boolean matches(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                if (values == null) {
+                    final double value = parser.getDoubleValue();
+                    return value >= min && value <= max;
+                }
+                return values.contains(parser.getText());
+            case VALUE_STRING:
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return values != null && values.contains(parser.getText());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (values == null) {
+            return fieldName + "=" + (min == Double.NEGATIVE_INFINITY ? "" : min) + RANGE_SEPARATOR +
+                   (max == Double.POSITIVE_INFINITY ? "" : max);
+        }
+        return fieldName + "=" + String.join("|", values);
+    }
+}
@@ -0,0 +1,110 @@
+package org.graylog.integrations.s3.filter;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule of the FILTER_RULES setting: the lines which match all conditions of the rule are kept at the sample rate of
+ * the rule, and the others are dropped. A rate of 0 drops all matching lines.
+ *
+ * Rules are written as {@code condition[,condition...] -> rate}, or {@code * -> rate} to match all lines, and are
+ * separated by semicolons. See {@link FieldCondition} for the conditions. For example:
+ * {@code CacheCacheStatus=hit,EdgeResponseStatus=200..299 -> 0.01; ClientRequestPath=/healthz -> 0}
+ */
+public class FilterRule {
+
+    /**
+     * The maximum number of conditions of all rules together.
+     */
+    public static final int MAX_CONDITIONS = 64;
+
+    private static final String RATE_SEPARATOR = "->";
+    private static final String MATCH_ALL = "*";
+
+    private final List<FieldCondition> conditions;
+    private final double sampleRate;
+
+    FilterRule(List<FieldCondition> conditions, double sampleRate) {
+        this.conditions = ImmutableList.copyOf(conditions);
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param rules The rules, separated by semicolons. May be null or blank.
+     * @throws IllegalArgumentException If a rule is invalid.
+     */
+    public static List<FilterRule> parseAll(String rules) {
+        if (rules == null) {
+            return ImmutableList.of();
+        }
+        final List<FilterRule> parsedRules = new ArrayList<>();
+        int conditionCount = 0;
+        for (String rule : Splitter.on(';').trimResults().omitEmptyStrings().split(rules)) {
+            final FilterRule parsedRule = parse(rule);
+            conditionCount += parsedRule.getConditions().size();
+            parsedRules.add(parsedRule);
+        }
+        if (conditionCount > MAX_CONDITIONS) {
+            throw new IllegalArgumentException("The rules have [" + conditionCount + "] conditions, but at most [" +
+                                               MAX_CONDITIONS + "] are supported.");
+        }
+        return ImmutableList.copyOf(parsedRules);
+    }
+
+    static FilterRule parse(String rule) {
+        final int separator = rule.lastIndexOf(RATE_SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected a rule of the form conditions -> rate, but got [" + rule +
+                                               "].");
+        }
+
+        final double sampleRate;
+        final String rate = rule.substring(separator + RATE_SEPARATOR.length()).trim();
+        try {
+            sampleRate = Double.parseDouble(rate);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The rate [" + rate + "] of rule [" + rule + "] is not a number.");
+        }
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("The rate of rule [" + rule + "] must be between 0 and 1.");
+        }
+
+        final String conditions = rule.substring(0, separator).trim();
+        final List<FieldCondition> parsedConditions = new ArrayList<>();
+        if (!MATCH_ALL.equals(conditions)) {
+            for (String condition : Splitter.on(',').trimResults().omitEmptyStrings().split(conditions)) {
+                parsedConditions.add(FieldCondition.parse(condition));
+            }
+            if (parsedConditions.isEmpty()) {
+                throw new IllegalArgumentException("Rule [" + rule + "] has no conditions. Use * to match all lines.");
+            }
+        }
+        return new FilterRule(parsedConditions, sampleRate);
+    }
+
+    /**
+     * @return The conditions, which must all match. Empty if the rule matches all lines.
+     */
+    public List<FieldCondition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * @return The share of the matching lines which is kept, between 0 and 1.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        final List<String> parts = new ArrayList<>();
+        for (FieldCondition condition : conditions) {
+            parts.add(condition.toString());
+        }
+        return (parts.isEmpty() ? MATCH_ALL : String.join(",", parts)) + " " + RATE_SEPARATOR + " " + sampleRate;
+    }
+}
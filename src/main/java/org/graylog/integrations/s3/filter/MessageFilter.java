@@ -0,0 +1,142 @@
+package org.graylog.integrations.s3.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.graylog.integrations.s3.Configuration;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which lines are sent, by the rules of the FILTER_RULES setting, before the lines are decoded. Dropped lines
+ * do not cost the decoding and encoding of a message, and are not sent to Graylog.
+ *
+ * The rules are compiled once: each condition gets a bit, and each rule the mask of its conditions. A line is read
+ * with a streaming parser only up to the last field any rule refers to, and the values of the other fields are
+ * skipped. The first rule whose conditions all match decides. Lines which match no rule are kept.
+ *
+ * Sampling is deterministic: whether a line is kept depends only on the hash of its bytes, so a retried invocation
+ * drops the same lines, and identical lines are either all kept or all dropped.
+ *
+ * A filter is thread-safe.
+ */
+public class MessageFilter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32_fixed();
+
+    private final List<FilterRule> rules;
+    private final FieldCondition[] conditions;
+    // The bits of all conditions of a rule, in the order of the rules.
+    private final long[] ruleMasks;
+    // The conditions on each field.
+    private final Map<String, int[]> fieldConditions = new HashMap<>();
+
+    public MessageFilter(Configuration config) {
+        this(config.getFilterRules());
+    }
+
+    public MessageFilter(List<FilterRule> rules) {
+        this.rules = rules;
+        this.ruleMasks = new long[rules.size()];
+        this.conditions = rules.stream().flatMap(rule -> rule.getConditions().stream()).toArray(FieldCondition[]::new);
+        if (conditions.length > FilterRule.MAX_CONDITIONS) {
+            throw new IllegalArgumentException("At most [" + FilterRule.MAX_CONDITIONS + "] conditions are supported.");
+        }
+
+        int conditionIndex = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            for (FieldCondition condition : rules.get(i).getConditions()) {
+                ruleMasks[i] |= 1L << conditionIndex;
+                fieldConditions.merge(condition.getFieldName(), new int[]{conditionIndex}, MessageFilter::concat);
+                conditionIndex++;
+            }
+        }
+    }
+
+    /**
+     * @return true if there are no rules, so that all lines are kept.
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @param line   The buffer containing the line, as UTF-8 bytes.
+     * @param offset The position of the first byte of the line in the buffer.
+     * @param length The number of bytes of the line.
+     * @return true if the line is sent. Lines which are not valid JSON up to the last field the rules refer to are
+     * kept, so that their decode failure is reported.
+     */
+    public boolean accept(byte[] line, int offset, int length) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+
+        final long matchedConditions;
+        try {
+            matchedConditions = fieldConditions.isEmpty() ? 0 : matchConditions(line, offset, length);
+        } catch (IOException e) {
+            return true;
+        }
+
+        for (int i = 0; i < ruleMasks.length; i++) {
+            if ((matchedConditions & ruleMasks[i]) == ruleMasks[i]) {
+                return sample(rules.get(i).getSampleRate(), line, offset, length);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The bits of the conditions which match the line.
+     */
+    private long matchConditions(byte[] line, int offset, int length) throws IOException {
+        long matchedConditions = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(line, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected the line to be a JSON object.");
+            }
+            // Duplicate fields are counted twice, which only ends the parsing early.
+            int remainingFields = fieldConditions.size();
+            while (remainingFields > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                final int[] conditionIndexes = fieldConditions.get(parser.getCurrentName());
+                final JsonToken token = parser.nextToken();
+                if (conditionIndexes != null) {
+                    remainingFields--;
+                    for (int conditionIndex : conditionIndexes) {
+                        if (conditions[conditionIndex].matches(parser, token)) {
+                            matchedConditions |= 1L << conditionIndex;
+                        }
+                    }
+                }
+                parser.skipChildren();
+            }
+        }
+        return matchedConditions;
+    }
+
+    private static boolean sample(double sampleRate, byte[] line, int offset, int length) {
+        if (sampleRate >= 1) {
+            return true;
+        }
+        if (sampleRate <= 0) {
+            return false;
+        }
+        // The hash as an unsigned number, compared to the same share of all hash values.
+        final long hash = HASH_FUNCTION.hashBytes(line, offset, length).asInt() & 0xFFFFFFFFL;
+        return hash < (long) (sampleRate * (1L << 32));
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        final int[] result = new int[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package org.graylog.integrations.s3.gelf;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A single GELF message encoded as JSON, without any transport framing.
+ *
+ * Frames are taken from a {@link GelfFramePool} and written to directly by {@link GelfFrameWriter}. Once the frame has
+ * been sent, {@link #release()} hands its buffer back to the pool for the next message.
+ *
+ * A frame must only be used by one thread at a time.
+ */
+public final class GelfFrame extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final GelfFramePool pool;
+    private byte[] buffer;
+    private int length;
+    private long queuedNanos;
+
+    /**
+     * Creates a frame which does not belong to a pool.
+     */
+    public GelfFrame() {
+        this(null);
+    }
+
+    GelfFrame(GelfFramePool pool) {
+        this.pool = pool;
+        this.buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(length + 1);
+        buffer[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    /**
+     * @return The buffer holding the encoded message, starting at position 0.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The number of bytes of the encoded message.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} when the frame was queued for sending.
+     */
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    public void setQueuedNanos(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+    }
+
+    /**
+     * Hands the frame back to its pool. The frame must not be used afterwards.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Discards the content, so that the buffer can be written again.
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.graylog.integrations.s3.gelf;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Recycles {@link GelfFrame} buffers, so that encoding a message does not allocate a new buffer.
+ *
+ * Frames are only created when the pool is empty, so the number of frames is bounded by the number of messages which
+ * are being encoded or waiting to be sent at the same time. Frames which have grown for an unusually large message are
+ * not kept.
+ */
+public class GelfFramePool {
+
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private final Queue<GelfFrame> frames = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @return An empty frame.
+     */
+    public GelfFrame acquire() {
+        final GelfFrame frame = frames.poll();
+        return frame != null ? frame : new GelfFrame(this);
+    }
+
+    void release(GelfFrame frame) {
+        if (frame.getCapacity() <= MAX_RETAINED_CAPACITY) {
+            frame.clear();
+            frames.offer(frame);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.graylog.integrations.s3.gelf;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.graylog2.gelfclient.GelfMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes GELF messages as JSON straight into a {@link GelfFrame}.
+ *
+ * Values are copied from the source parser to the output without building an intermediate {@link GelfMessage}: no
+ * field map, no boxed numbers, and usually no Strings. The output is the same JSON that gelfclient produces for the
+ * equivalent {@link GelfMessage}, except for the order of the fields.
+ *
+ * A writer is reused for many messages, but is not thread-safe.
+ */
+public class GelfFrameWriter implements GelfWriter {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+                                                               .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+                                                               .build();
+
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString HOST = new SerializedString("host");
+    private static final SerializedString SHORT_MESSAGE = new SerializedString("short_message");
+    private static final SerializedString FULL_MESSAGE = new SerializedString("full_message");
+    private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializedString LEVEL = new SerializedString("level");
+    private static final String GELF_VERSION = "1.1";
+    // gelfclient sends every message with this level.
+    private static final int DEFAULT_LEVEL = 1;
+
+    // The encoded names of additional fields, which mostly repeat from message to message.
+    private static final int MAX_CACHED_FIELD_NAMES = 4096;
+    private final Map<String, SerializableString> fieldNames = new HashMap<>();
+
+    private JsonGenerator generator;
+
+    /**
+     * Starts a new message, which is written to the given output.
+     */
+    public void start(OutputStream output) throws IOException {
+        generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeFieldName(VERSION);
+        generator.writeString(GELF_VERSION);
+    }
+
+    /**
+     * Drops the message that is being written. The output is left incomplete.
+     */
+    public void abort() {
+        if (generator != null) {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                // The output is discarded anyway.
+            }
+            generator = null;
+        }
+    }
+
+    /**
+     * Writes a complete message, with the same fields that gelfclient writes.
+     */
+    public void write(GelfMessage message, OutputStream output) throws IOException {
+        start(output);
+        for (Map.Entry<String, Object> field : message.getAdditionalFields().entrySet()) {
+            generator.writeFieldName(getFieldName(field.getKey()));
+            final Object value = field.getValue();
+            if (value instanceof Number) {
+                generator.writeObject(value);
+            } else if (value == null) {
+                generator.writeNull();
+            } else {
+                generator.writeString(value.toString());
+            }
+        }
+        if (message.getLevel() != null) {
+            generator.writeFieldName(LEVEL);
+            generator.writeNumber(message.getLevel().getNumericLevel());
+        }
+        if (message.getFullMessage() != null) {
+            generator.writeFieldName(FULL_MESSAGE);
+            generator.writeString(message.getFullMessage());
+        }
+        generator.writeFieldName(SHORT_MESSAGE);
+        generator.writeString(message.getMessage());
+        end(message.getHost(), message.getTimestamp());
+    }
+
+    @Override
+    public void addField(String name, String value) throws IOException {
+        generator.writeFieldName(getFieldName(name));
+        generator.writeString(value);
+    }
+
+    @Override
+    public void addField(String name, double value) throws IOException {
+        generator.writeFieldName(getFieldName(name));
+        generator.writeNumber(value);
+    }
+
+    @Override
+    public void addField(String name, JsonParser parser, JsonToken token) throws IOException {
+        generator.writeFieldName(getFieldName(name));
+        switch (token) {
+            case VALUE_STRING:
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                generator.copyCurrentEvent(parser);
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                generator.writeString(parser.getText());
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot write a [" + token + "] as a GELF field.");
+        }
+    }
+
+    @Override
+    public void finish(String shortMessage, String host, double timestamp) throws IOException {
+        writeLevel();
+        generator.writeFieldName(SHORT_MESSAGE);
+        generator.writeString(shortMessage);
+        end(host, timestamp);
+    }
+
+    @Override
+    public void finish(byte[] shortMessage, int offset, int length, String host, double timestamp) throws IOException {
+        writeLevel();
+        generator.writeFieldName(SHORT_MESSAGE);
+        generator.writeUTF8String(shortMessage, offset, length);
+        end(host, timestamp);
+    }
+
+    private void writeLevel() throws IOException {
+        generator.writeFieldName(LEVEL);
+        generator.writeNumber(DEFAULT_LEVEL);
+    }
+
+    private void end(String host, double timestamp) throws IOException {
+        generator.writeFieldName(HOST);
+        generator.writeString(host);
+        generator.writeFieldName(TIMESTAMP);
+        generator.writeNumber(timestamp);
+        generator.writeEndObject();
+        generator.close();
+        generator = null;
+    }
+
+    /**
+     * @return The name of the additional field as it is sent: prefixed with an underscore.
+     */
+    private SerializableString getFieldName(String name) {
+        SerializableString fieldName = fieldNames.get(name);
+        if (fieldName == null) {
+            fieldName = new SerializedString(name.startsWith("_") ? name : "_" + name);
+            if (fieldNames.size() < MAX_CACHED_FIELD_NAMES) {
+                fieldNames.put(name, fieldName);
+            }
+        }
+        return fieldName;
+    }
+}
@@ -0,0 +1,86 @@
+package org.graylog.integrations.s3.gelf;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.graylog2.gelfclient.GelfMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link GelfMessage} from the fields written by a codec.
+ *
+ * The writer is reused for many messages, but is not thread-safe.
+ */
+public class GelfMessageWriter implements GelfWriter {
+
+    // The additional fields as alternating keys and values, until the message is created.
+    private final List<Object> fields = new ArrayList<>(128);
+    private GelfMessage message;
+
+    /**
+     * Starts a new message.
+     */
+    public void start() {
+        fields.clear();
+        message = null;
+    }
+
+    /**
+     * @return The message, or null if it has not been finished.
+     */
+    public GelfMessage getMessage() {
+        return message;
+    }
+
+    @Override
+    public void addField(String name, String value) {
+        fields.add(name);
+        fields.add(value);
+    }
+
+    @Override
+    public void addField(String name, double value) {
+        fields.add(name);
+        fields.add(value);
+    }
+
+    @Override
+    public void addField(String name, JsonParser parser, JsonToken token) throws IOException {
+        final Object value;
+        switch (token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                value = parser.getNumberValue();
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                value = parser.getBooleanValue();
+                break;
+            case VALUE_STRING:
+                value = parser.getText();
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot write a [" + token + "] as a GELF field.");
+        }
+        fields.add(name);
+        fields.add(value);
+    }
+
+    @Override
+    public void finish(String shortMessage, String host, double timestamp) {
+        message = new GelfMessage(shortMessage, host);
+        message.setTimestamp(timestamp);
+        for (int i = 0; i < fields.size(); i += 2) {
+            message.addAdditionalField((String) fields.get(i), fields.get(i + 1));
+        }
+        fields.clear();
+    }
+
+    @Override
+    public void finish(byte[] shortMessage, int offset, int length, String host, double timestamp) {
+        finish(new String(shortMessage, offset, length, StandardCharsets.UTF_8), host, timestamp);
+    }
+}
@@ -0,0 +1,48 @@
+package org.graylog.integrations.s3.gelf;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Receives a single GELF message from a codec, field by field.
+ *
+ * The additional fields are written first, in any order. The message is completed with one of the finish methods,
+ * since the short message, host and timestamp are often only known once the whole line has been read.
+ *
+ * Additional field names get an underscore prefix if they do not already have one. Boolean values are written as
+ * strings, like gelfclient does.
+ */
+public interface GelfWriter {
+
+    /**
+     * The host of messages whose format has no host.
+     */
+    String DEFAULT_HOST = "localhost";
+
+    void addField(String name, String value) throws IOException;
+
+    void addField(String name, double value) throws IOException;
+
+    /**
+     * Adds the current value of the parser, which must be a string, number or boolean.
+     *
+     * @param token The current token of the parser.
+     */
+    void addField(String name, JsonParser parser, JsonToken token) throws IOException;
+
+    /**
+     * Completes the message.
+     *
+     * @param timestamp Seconds since the epoch.
+     */
+    void finish(String shortMessage, String host, double timestamp) throws IOException;
+
+    /**
+     * Completes the message with a short message given as UTF-8 bytes.
+     *
+     * @param timestamp Seconds since the epoch.
+     */
+    void finish(byte[] shortMessage, int offset, int length, String host, double timestamp) throws IOException;
+}
@@ -0,0 +1,49 @@
+package org.graylog.integrations.s3.idempotency;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the processed objects in a local file, one object per line. The file is read once and only appended to.
+ */
+public class FileProcessedObjectStore implements ProcessedObjectStore {
+
+    private final Path file;
+    private Set<String> objectIds;
+
+    public FileProcessedObjectStore(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized boolean contains(String objectId) throws IOException {
+        return getObjectIds().contains(objectId);
+    }
+
+    @Override
+    public synchronized void add(String objectId) throws IOException {
+        if (getObjectIds().add(objectId)) {
+            Files.write(file, Collections.singletonList(objectId), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private Set<String> getObjectIds() throws IOException {
+        if (objectIds == null) {
+            final Set<String> readObjectIds = new HashSet<>();
+            if (Files.exists(file)) {
+                readObjectIds.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+            } else if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            objectIds = readObjectIds;
+        }
+        return objectIds;
+    }
+}
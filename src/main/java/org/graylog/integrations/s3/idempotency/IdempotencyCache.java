@@ -0,0 +1,68 @@
+package org.graylog.integrations.s3.idempotency;
+
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Remembers the S3 objects which have been processed completely, so that redelivered S3 notifications and retried
+ * invocations do not send their messages to Graylog again.
+ *
+ * The most recently processed objects are kept in memory, which lasts as long as the Lambda container. Objects which
+ * are not found there are looked up in the configured {@link ProcessedObjectStore}.
+ */
+public class IdempotencyCache {
+    private static final Logger LOG = LogManager.getLogger(IdempotencyCache.class);
+
+    private final Cache<String, Boolean> recentObjects;
+    private final ProcessedObjectStore store;
+
+    public IdempotencyCache(Configuration config, ProcessedObjectStore store) {
+        this.recentObjects = CacheBuilder.newBuilder().maximumSize(config.getIdempotencyCacheSize()).build();
+        this.store = store;
+    }
+
+    /**
+     * @return The identity of an object version. A notification which S3 delivers again has the same identity, while
+     * writing the same key again creates a new identity (through its sequencer), even with the same content.
+     */
+    public static String getObjectId(String bucketName, S3EventNotification.S3ObjectEntity object) {
+        return bucketName + "/" + object.getKey() + "@" + object.geteTag() + "#" + object.getSequencer();
+    }
+
+    /**
+     * @return true if the object has been processed completely before. If the store cannot be reached, false, so that
+     * the object is rather processed twice than never.
+     */
+    public boolean isProcessed(String objectId) {
+        if (recentObjects.getIfPresent(objectId) != null) {
+            return true;
+        }
+        try {
+            if (store.contains(objectId)) {
+                recentObjects.put(objectId, Boolean.TRUE);
+                return true;
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to look up whether object [{}] has been processed.", objectId, e);
+        }
+        return false;
+    }
+
+    /**
+     * Remembers that all messages of the object have been sent.
+     */
+    public void markProcessed(String objectId) {
+        recentObjects.put(objectId, Boolean.TRUE);
+        try {
+            store.add(objectId);
+        } catch (IOException e) {
+            LOG.warn("Failed to remember that object [{}] has been processed.", objectId, e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.graylog.integrations.s3.idempotency;
+
+import java.io.IOException;
+
+/**
+ * Persistently remembers which S3 objects have been processed completely, so that redelivered notifications for them
+ * can be skipped by any Lambda container.
+ */
+public interface ProcessedObjectStore {
+
+    /**
+     * @param objectId The identity of the object version, see {@link IdempotencyCache#getObjectId}.
+     * @return true if the object has been added before.
+     */
+    boolean contains(String objectId) throws IOException;
+
+    void add(String objectId) throws IOException;
+}
@@ -0,0 +1,43 @@
+package org.graylog.integrations.s3.idempotency;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.graylog.integrations.s3.Configuration;
+
+import javax.inject.Provider;
+import java.nio.file.Paths;
+
+public class ProcessedObjectStoreFactory implements Provider<ProcessedObjectStore> {
+
+    // Remembers nothing, so only the in-container cache is used.
+    private static final ProcessedObjectStore NO_STORE = new ProcessedObjectStore() {
+        @Override
+        public boolean contains(String objectId) {
+            return false;
+        }
+
+        @Override
+        public void add(String objectId) {
+        }
+    };
+
+    private final Configuration config;
+    private final Provider<AmazonS3> s3Client;
+
+    public ProcessedObjectStoreFactory(Configuration config, Provider<AmazonS3> s3Client) {
+        this.config = config;
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public ProcessedObjectStore get() {
+        switch (config.getIdempotencyStoreType()) {
+            case FILE:
+                return new FileProcessedObjectStore(Paths.get(config.getIdempotencyFile()));
+            case S3:
+                return new S3ProcessedObjectStore(s3Client.get(), config.getIdempotencyBucket(),
+                                                  config.getIdempotencyPrefix());
+            default:
+                return NO_STORE;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.graylog.integrations.s3.idempotency;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.IOException;
+
+/**
+ * Marks each processed object with an empty object in a bucket, named after the processed object and its version.
+ *
+ * The bucket (or prefix) must not trigger the function itself. A lifecycle rule can expire old markers.
+ */
+public class S3ProcessedObjectStore implements ProcessedObjectStore {
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final String prefix;
+
+    public S3ProcessedObjectStore(AmazonS3 s3Client, String bucketName, String prefix) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public boolean contains(String objectId) throws IOException {
+        try {
+            return s3Client.doesObjectExist(bucketName, prefix + objectId);
+        } catch (AmazonClientException e) {
+            throw new IOException("Failed to look up processed object [" + objectId + "].", e);
+        }
+    }
+
+    @Override
+    public void add(String objectId) throws IOException {
+        try {
+            s3Client.putObject(bucketName, prefix + objectId, "");
+        } catch (AmazonClientException e) {
+            throw new IOException("Failed to mark object [" + objectId + "] as processed.", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.graylog.integrations.s3.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adds the number of bytes read from a stream to a metric.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private final StageMetrics metrics;
+    private final Metric metric;
+
+    public CountingInputStream(InputStream in, StageMetrics metrics, Metric metric) {
+        super(in);
+        this.metrics = metrics;
+        this.metric = metric;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            metrics.increment(metric);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if (read > 0) {
+            metrics.add(metric, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long skipped = super.skip(n);
+        if (skipped > 0) {
+            metrics.add(metric, skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Bytes read again after a reset would be counted twice.
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package org.graylog.integrations.s3.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.graylog.integrations.s3.Configuration;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Writes metrics as a CloudWatch embedded metric format (EMF) log line. Lambda forwards stdout to CloudWatch Logs,
+ * which extracts the metrics from the line, so no API calls are made by the function.
+ *
+ * See https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html
+ */
+public class EmfMetricsWriter {
+    private static final String FUNCTION_NAME_DIMENSION = "FunctionName";
+
+    private final ObjectMapper objectMapper;
+    private final String namespace;
+
+    public EmfMetricsWriter(Configuration config, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.namespace = config.getMetricsNamespace();
+    }
+
+    /**
+     * @param functionName The name of the Lambda function, used as dimension. May be null.
+     */
+    public void write(Map<Metric, Long> metrics, String functionName, PrintStream output)
+            throws JsonProcessingException {
+        output.println(objectMapper.writeValueAsString(toEmf(metrics, functionName, System.currentTimeMillis())));
+    }
+
+    ObjectNode toEmf(Map<Metric, Long> metrics, String functionName, long timestamp) {
+        final ObjectNode root = objectMapper.createObjectNode();
+        final ObjectNode aws = root.putObject("_aws");
+        aws.put("Timestamp", timestamp);
+        final ObjectNode directive = objectMapper.createObjectNode();
+        directive.put("Namespace", namespace);
+        final ArrayNode dimensionSet = directive.putArray("Dimensions").addArray();
+        if (functionName != null) {
+            dimensionSet.add(FUNCTION_NAME_DIMENSION);
+            root.put(FUNCTION_NAME_DIMENSION, functionName);
+        }
+        final ArrayNode definitions = directive.putArray("Metrics");
+        for (Map.Entry<Metric, Long> entry : metrics.entrySet()) {
+            final Metric metric = entry.getKey();
+            definitions.addObject()
+                       .put("Name", metric.getMetricName())
+                       .put("Unit", metric.getCloudWatchUnit());
+            root.put(metric.getMetricName(), metric.toReportedValue(entry.getValue()));
+        }
+        aws.putArray("CloudWatchMetrics").add(directive);
+        return root;
+    }
+}
@@ -0,0 +1,77 @@
+package org.graylog.integrations.s3.metrics;
+
+/**
+ * The counters and timers of the processing stages, with their CloudWatch name and unit.
+ *
+ * Timers are summed over all threads and objects of an invocation, so they can exceed the invocation duration.
+ */
+public enum Metric {
+    // Objects which were read, including objects which failed.
+    OBJECTS_PROCESSED("ObjectsProcessed", Unit.COUNT),
+    // Objects which were skipped because they had been processed before.
+    OBJECTS_SKIPPED("ObjectsSkipped", Unit.COUNT),
+    // Bytes received from S3, as stored (e.g. compressed).
+    BYTES_DOWNLOADED("BytesDownloaded", Unit.BYTES),
+    // Bytes of object content after decompression, which were split into lines.
+    BYTES_INFLATED("BytesInflated", Unit.BYTES),
+    // Lines handed to the decode threads.
+    LINES_FRAMED("LinesFramed", Unit.COUNT),
+    // Lines which were too long or not valid UTF-8.
+    MALFORMED_LINES("MalformedLines", Unit.COUNT),
+    // Time the decode threads spent filtering, decoding and encoding lines, without waiting for the transport.
+    DECODE_TIME("DecodeTime", Unit.NANOSECONDS),
+    // Lines which failed to decode and were handed to the dead-letter sink.
+    DECODE_FAILURES("DecodeFailures", Unit.COUNT),
+    // Lines which were dropped by the filter rules before decoding.
+    LINES_FILTERED("LinesFiltered", Unit.COUNT),
+    // Messages written and flushed to Graylog.
+    MESSAGES_SENT("MessagesSent", Unit.COUNT),
+    // Time the transports spent writing and flushing messages, including retries.
+    SEND_TIME("SendTime", Unit.NANOSECONDS),
+    // Time the sent messages waited in the transport queue, summed over all messages.
+    QUEUE_WAIT_TIME("QueueWaitTime", Unit.NANOSECONDS),
+    // Time spent waiting for the transport queue to drain at the end of the invocation.
+    FLUSH_TIME("FlushTime", Unit.NANOSECONDS);
+
+    /**
+     * How a metric is counted, and how it is reported.
+     */
+    enum Unit {
+        COUNT("Count"),
+        BYTES("Bytes"),
+        // Reported in milliseconds, which is the smallest time unit CloudWatch supports.
+        NANOSECONDS("Milliseconds");
+
+        private final String cloudWatchUnit;
+
+        Unit(String cloudWatchUnit) {
+            this.cloudWatchUnit = cloudWatchUnit;
+        }
+    }
+
+    private final String metricName;
+    private final Unit unit;
+
+    Metric(String metricName, Unit unit) {
+        this.metricName = metricName;
+        this.unit = unit;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    /**
+     * @return The CloudWatch unit of the reported value.
+     */
+    public String getCloudWatchUnit() {
+        return unit.cloudWatchUnit;
+    }
+
+    /**
+     * @return The reported value of a counted value, e.g. milliseconds for nanoseconds.
+     */
+    public double toReportedValue(long value) {
+        return unit == Unit.NANOSECONDS ? value / 1_000_000.0 : value;
+    }
+}
@@ -0,0 +1,42 @@
+package org.graylog.integrations.s3.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the {@link Metric}s of all stages until they are reported at the end of an invocation.
+ *
+ * The counters are striped ({@link LongAdder}), so the reader, decode and sender threads can update them concurrently
+ * without contending. Stages add up their counts locally (e.g. per batch) where that is cheap.
+ */
+public class StageMetrics {
+
+    private final LongAdder[] counters = new LongAdder[Metric.values().length];
+
+    public StageMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public void add(Metric metric, long value) {
+        counters[metric.ordinal()].add(value);
+    }
+
+    public void increment(Metric metric) {
+        counters[metric.ordinal()].increment();
+    }
+
+    /**
+     * @return The values counted since the last snapshot. Updates which happen concurrently are counted either in
+     * this snapshot or the next one.
+     */
+    public Map<Metric, Long> snapshotAndReset() {
+        final Map<Metric, Long> snapshot = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            snapshot.put(metric, counters[metric.ordinal()].sumThenReset());
+        }
+        return snapshot;
+    }
+}
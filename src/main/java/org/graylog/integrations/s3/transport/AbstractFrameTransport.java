@@ -0,0 +1,375 @@
+package org.graylog.integrations.s3.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.gelf.GelfFramePool;
+import org.graylog.integrations.s3.gelf.GelfFrameWriter;
+import org.graylog.integrations.s3.metrics.Metric;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog2.gelfclient.GelfMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends GELF frames from a bounded queue on a single sender thread.
+ *
+ * The sender thread takes all frames which are waiting in the queue (up to a maximum), writes them, and flushes them to
+ * the network in one go. With a linger time, it waits up to that long for a batch to fill up. The queue size and the
+ * batch size are limited by {@link AdaptiveSendLimits}, which may tune them below the configured maximums. If writing fails, the
+ * connection is re-established after a retry delay, which doubles with each failure up to a maximum, and the whole
+ * batch is written again. Messages may be duplicated but are not lost while the transport is running.
+ *
+ * A transport which failed to send reports itself as unavailable until the maximum retry delay has passed. With a
+ * {@link Failover}, it then hands the failed batch and all queued frames over instead of retrying them itself.
+ *
+ * The sender thread is started with the first message.
+ */
+abstract class AbstractFrameTransport implements GelfFrameTransport {
+    private static final Logger LOG = LogManager.getLogger(AbstractFrameTransport.class);
+
+    /**
+     * Takes over frames which a transport failed to send.
+     */
+    interface Failover {
+
+        /**
+         * @return true if the frame has been queued on another transport, which now owns it.
+         */
+        boolean offer(AbstractFrameTransport failed, GelfFrame frame);
+    }
+
+    private final String name;
+    private final int initialRetryDelay;
+    private final int maxRetryDelay;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final AdaptiveSendLimits limits;
+    private final StageMetrics metrics;
+    private final GelfFramePool framePool = new GelfFramePool();
+    private final BlockingQueue<GelfFrame> queue;
+    // Frames which have been queued but not been written and flushed yet.
+    private final AtomicInteger pendingFrames = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Thread senderThread;
+    private volatile Failover failover;
+    private volatile boolean failed;
+    // The System.nanoTime() after which a failed transport is available again.
+    private volatile long unavailableUntil;
+    private volatile boolean stopped;
+
+    /**
+     * @param name              The name of the transport, for the sender thread and log messages.
+     * @param queueSize         The maximum number of frames waiting to be sent.
+     * @param initialRetryDelay Milliseconds to wait before reconnecting after the first failure.
+     * @param maxRetryDelay     The maximum milliseconds to wait before reconnecting after repeated failures.
+     * @param maxBatchSize      The maximum number of frames written before the connection is flushed.
+     * @param lingerMs          Milliseconds to wait for more frames before a batch which is not full is flushed.
+     * @param adaptive          Tune the queue and batch sizes up to the given maximums, see {@link AdaptiveSendLimits}.
+     * @param metrics           Counts the messages sent, and the time spent sending them.
+     */
+    AbstractFrameTransport(String name, int queueSize, int initialRetryDelay, int maxRetryDelay, int maxBatchSize,
+                           int lingerMs, boolean adaptive, StageMetrics metrics) {
+        this.name = name;
+        this.metrics = metrics;
+        this.initialRetryDelay = Math.max(1, Math.min(initialRetryDelay, maxRetryDelay));
+        this.maxRetryDelay = Math.max(1, maxRetryDelay);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMs));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.limits = new AdaptiveSendLimits(queueSize, maxBatchSize, adaptive);
+        this.senderThread = new Thread(this::runSender, "gelf-" + name + "-sender");
+        this.senderThread.setDaemon(true);
+    }
+
+    /**
+     * Opens the connection.
+     */
+    abstract void connect() throws IOException;
+
+    /**
+     * @return true if the connection is open.
+     */
+    abstract boolean isConnected();
+
+    /**
+     * Writes a frame to the connection. The frame may be buffered until {@link #flushWrites()} is called.
+     */
+    abstract void write(GelfFrame frame) throws IOException;
+
+    /**
+     * Sends all buffered frames.
+     */
+    abstract void flushWrites() throws IOException;
+
+    /**
+     * Closes the connection. This is also called to abort a blocked write, so it may be called from any thread.
+     */
+    abstract void disconnect();
+
+    /**
+     * Sets the transport which takes over frames after a failure. Must be called before the first message is sent.
+     */
+    void setFailover(Failover failover) {
+        this.failover = failover;
+    }
+
+    /**
+     * @return false if sending failed recently, so that new frames should go elsewhere.
+     */
+    boolean isAvailable() {
+        return !failed || System.nanoTime() - unavailableUntil >= 0;
+    }
+
+    /**
+     * @return The number of frames which have been queued but not been sent yet.
+     */
+    int getPendingFrames() {
+        return pendingFrames.get();
+    }
+
+    /**
+     * Queues a frame without blocking. The transport takes over the frame if true is returned.
+     *
+     * @return false if the queue is full or the transport has been stopped.
+     */
+    boolean offer(GelfFrame frame) {
+        if (stopped) {
+            return false;
+        }
+        start();
+        if (!limits.tryAcquire()) {
+            return false;
+        }
+        enqueue(frame);
+        return true;
+    }
+
+    @Override
+    public GelfFrame newFrame() {
+        return framePool.acquire();
+    }
+
+    @Override
+    public void send(GelfFrame frame) throws InterruptedException {
+        start();
+        limits.acquire();
+        enqueue(frame);
+    }
+
+    @Override
+    public void send(GelfMessage message) throws InterruptedException {
+        final GelfFrame frame = encode(message);
+        try {
+            send(frame);
+        } catch (InterruptedException | RuntimeException e) {
+            frame.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean trySend(GelfMessage message) {
+        start();
+        final GelfFrame frame = encode(message);
+        if (!offer(frame)) {
+            frame.release();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean flush(int waitDuration, TimeUnit timeUnit, int retries) {
+        boolean interrupted = false;
+        for (int i = 0; i < retries && pendingFrames.get() > 0; i++) {
+            try {
+                timeUnit.sleep(waitDuration);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        final int pending = pendingFrames.get();
+        if (pending > 0) {
+            LOG.warn("[{}] messages have not been sent to [{}] yet.", pending, name);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return pending == 0;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        if (started.get()) {
+            // Closing the connection aborts a blocked write.
+            disconnect();
+            senderThread.interrupt();
+            try {
+                senderThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void flushAndStopSynchronously(int waitDuration, TimeUnit timeUnit, int retries) {
+        flush(waitDuration, timeUnit, retries);
+        stop();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private void start() {
+        if (stopped) {
+            throw new IllegalStateException("The " + name + " transport has been stopped.");
+        }
+        if (!started.get() && started.compareAndSet(false, true)) {
+            senderThread.start();
+        }
+    }
+
+    /**
+     * Adds a frame to the queue, after space has been acquired from the limits.
+     */
+    private void enqueue(GelfFrame frame) {
+        frame.setQueuedNanos(System.nanoTime());
+        pendingFrames.incrementAndGet();
+        // The queue is as large as the maximum limit, so there is always space.
+        queue.add(frame);
+    }
+
+    private GelfFrame encode(GelfMessage message) {
+        final GelfFrame frame = newFrame();
+        try {
+            new GelfFrameWriter().write(message, frame);
+        } catch (IOException e) {
+            frame.release();
+            throw new UncheckedIOException("Failed to encode message.", e);
+        }
+        return frame;
+    }
+
+    private void runSender() {
+        final List<GelfFrame> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!stopped) {
+                final int batchLimit = limits.getBatchLimit();
+                batch.add(queue.take());
+                queue.drainTo(batch, batchLimit - 1);
+                linger(batch, batchLimit);
+                limits.release(batch.size());
+
+                final int batchSize = batch.size();
+                final long startNanos = System.nanoTime();
+                long totalQueueWaitNanos = 0;
+                for (GelfFrame frame : batch) {
+                    totalQueueWaitNanos += startNanos - frame.getQueuedNanos();
+                }
+                final long queueWaitNanos = startNanos - batch.get(0).getQueuedNanos();
+                writeBatch(batch);
+                final long sendNanos = System.nanoTime() - startNanos;
+                limits.onBatchSent(batchSize, sendNanos, queueWaitNanos);
+                metrics.add(Metric.SEND_TIME, sendNanos);
+                metrics.add(Metric.QUEUE_WAIT_TIME, totalQueueWaitNanos);
+
+                for (GelfFrame frame : batch) {
+                    frame.release();
+                }
+                pendingFrames.addAndGet(-batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // The transport has been stopped.
+        } finally {
+            disconnect();
+        }
+    }
+
+    /**
+     * Waits up to the linger time for the batch to fill up.
+     */
+    private void linger(List<GelfFrame> batch, int batchLimit) throws InterruptedException {
+        final long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchLimit) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            final GelfFrame frame = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (frame == null) {
+                return;
+            }
+            batch.add(frame);
+            queue.drainTo(batch, batchLimit - batch.size());
+        }
+    }
+
+    private void writeBatch(List<GelfFrame> batch) throws InterruptedException {
+        int retryDelay = initialRetryDelay;
+        boolean connected = isConnected();
+        while (true) {
+            try {
+                if (!connected) {
+                    connect();
+                    connected = true;
+                }
+                for (GelfFrame frame : batch) {
+                    write(frame);
+                }
+                flushWrites();
+                metrics.add(Metric.MESSAGES_SENT, batch.size());
+                failed = false;
+                return;
+            } catch (IOException e) {
+                if (stopped) {
+                    throw new InterruptedException();
+                }
+                unavailableUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxRetryDelay);
+                failed = true;
+                disconnect();
+                connected = false;
+                if (failover != null && failOver(batch, e)) {
+                    return;
+                }
+                LOG.warn("Failed to send [{}] messages to [{}]: {}. Retrying in [{}ms].",
+                         batch.size(), name, e.getMessage(), retryDelay);
+                TimeUnit.MILLISECONDS.sleep(retryDelay);
+                retryDelay = (int) Math.min(maxRetryDelay, retryDelay * 2L);
+            }
+        }
+    }
+
+    /**
+     * Hands the batch and all queued frames over to the failover. Frames which it does not take stay in the batch.
+     *
+     * @return true if all frames have been handed over.
+     */
+    private boolean failOver(List<GelfFrame> batch, IOException cause) {
+        limits.release(queue.drainTo(batch));
+        int handedOver = 0;
+        while (handedOver < batch.size() && failover.offer(this, batch.get(handedOver))) {
+            handedOver++;
+        }
+        batch.subList(0, handedOver).clear();
+        pendingFrames.addAndGet(-handedOver);
+        if (handedOver > 0) {
+            LOG.warn("Failed to send to [{}]: {}. Moved [{}] messages to other transports.",
+                     name, cause.getMessage(), handedOver);
+        }
+        return batch.isEmpty();
+    }
+}
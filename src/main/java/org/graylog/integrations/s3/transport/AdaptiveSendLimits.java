@@ -0,0 +1,232 @@
+package org.graylog.integrations.s3.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Limits the number of frames waiting in the queue of a transport, and the number of frames sent in one batch.
+ *
+ * The limits start low and are tuned after each batch, additive increase / multiplicative decrease style:
+ * <ul>
+ * <li>The batch limit grows while batches are full, and is halved when the send latency per frame more than doubles,
+ * because the network or Graylog cannot keep up.</li>
+ * <li>The queue limit grows while producers have to wait for space, and is halved when frames wait in the queue for
+ * longer than {@link #MAX_QUEUE_WAIT_MS}, because a deeper queue only holds more memory.</li>
+ * <li>Both limits are halved when less than {@link #MIN_HEAP_HEADROOM} of the heap was free after the last garbage
+ * collection, so that large messages do not run a small Lambda out of memory.</li>
+ * </ul>
+ * The configured sizes are never exceeded. The limits are only tuned by the sender thread.
+ */
+class AdaptiveSendLimits {
+    private static final Logger LOG = LogManager.getLogger(AdaptiveSendLimits.class);
+
+    static final int INITIAL_LIMIT = 64;
+    static final long MAX_QUEUE_WAIT_MS = 100;
+    static final double MIN_HEAP_HEADROOM = 0.25;
+    private static final List<MemoryPoolMXBean> HEAP_POOLS =
+            ManagementFactory.getMemoryPoolMXBeans().stream()
+                             .filter(pool -> pool.getType() == MemoryType.HEAP)
+                             .collect(Collectors.toList());
+    // Limits are decreased at most this often, so that one slow moment does not collapse them.
+    private static final long DECREASE_INTERVAL_MS = 100;
+
+    private final int maxQueueSize;
+    private final int maxBatchSize;
+    private final boolean adaptive;
+    private final LongSupplier nanoClock;
+    private final DoubleSupplier heapHeadroom;
+    private final QueueSlots queueSlots;
+
+    private volatile int queueLimit;
+    private volatile int batchLimit;
+    private volatile boolean producersBlocked;
+
+    // Only used by the sender thread.
+    private long baselineFrameNanos;
+    private long lastQueueDecreaseNanos;
+    private long lastBatchDecreaseNanos;
+
+    /**
+     * @param adaptive If false, the limits stay at the configured sizes.
+     */
+    AdaptiveSendLimits(int maxQueueSize, int maxBatchSize, boolean adaptive) {
+        this(maxQueueSize, maxBatchSize, adaptive, System::nanoTime, AdaptiveSendLimits::getHeapHeadroom);
+    }
+
+    AdaptiveSendLimits(int maxQueueSize, int maxBatchSize, boolean adaptive, LongSupplier nanoClock,
+                       DoubleSupplier heapHeadroom) {
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.adaptive = adaptive;
+        this.nanoClock = nanoClock;
+        this.heapHeadroom = heapHeadroom;
+        this.queueLimit = adaptive ? Math.min(this.maxQueueSize, INITIAL_LIMIT) : this.maxQueueSize;
+        this.batchLimit = adaptive ? Math.min(this.maxBatchSize, INITIAL_LIMIT) : this.maxBatchSize;
+        this.queueSlots = new QueueSlots(queueLimit);
+        this.lastQueueDecreaseNanos = nanoClock.getAsLong() - TimeUnit.MILLISECONDS.toNanos(DECREASE_INTERVAL_MS);
+        this.lastBatchDecreaseNanos = lastQueueDecreaseNanos;
+    }
+
+    /**
+     * Waits for space in the queue.
+     */
+    void acquire() throws InterruptedException {
+        if (!queueSlots.tryAcquire()) {
+            producersBlocked = true;
+            queueSlots.acquire();
+        }
+    }
+
+    /**
+     * @return false if the queue is full.
+     */
+    boolean tryAcquire() {
+        if (!queueSlots.tryAcquire()) {
+            producersBlocked = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Frees space in the queue, after frames have been taken from it.
+     */
+    void release(int frames) {
+        if (frames > 0) {
+            queueSlots.release(frames);
+        }
+    }
+
+    int getQueueLimit() {
+        return queueLimit;
+    }
+
+    int getBatchLimit() {
+        return batchLimit;
+    }
+
+    /**
+     * Tunes the limits after a batch has been sent.
+     *
+     * @param batchSize      The number of frames in the batch.
+     * @param sendNanos      The time it took to write and flush the batch.
+     * @param queueWaitNanos The time the oldest frame of the batch waited in the queue.
+     */
+    void onBatchSent(int batchSize, long sendNanos, long queueWaitNanos) {
+        final boolean blocked = producersBlocked;
+        producersBlocked = false;
+        if (!adaptive || batchSize == 0) {
+            return;
+        }
+
+        final long now = nanoClock.getAsLong();
+        if (heapHeadroom.getAsDouble() < MIN_HEAP_HEADROOM) {
+            LOG.debug("Less than [{}] of the heap is free.", MIN_HEAP_HEADROOM);
+            decreaseQueueLimit(now);
+            decreaseBatchLimit(now);
+            return;
+        }
+
+        // The baseline follows the lowest latency, and slowly rises so that it adapts to a changed network.
+        final long frameNanos = Math.max(1, sendNanos / batchSize);
+        baselineFrameNanos = baselineFrameNanos == 0 ? frameNanos
+                : Math.min(frameNanos, baselineFrameNanos + (baselineFrameNanos >> 6) + 1);
+        if (batchSize > 1 && frameNanos > 2 * baselineFrameNanos) {
+            decreaseBatchLimit(now);
+        } else if (batchSize >= batchLimit) {
+            setBatchLimit(batchLimit + step(maxBatchSize));
+        }
+
+        if (queueWaitNanos > TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_WAIT_MS)) {
+            decreaseQueueLimit(now);
+        } else if (blocked) {
+            setQueueLimit(queueLimit + step(maxQueueSize));
+        }
+    }
+
+    private void decreaseBatchLimit(long now) {
+        if (now - lastBatchDecreaseNanos >= TimeUnit.MILLISECONDS.toNanos(DECREASE_INTERVAL_MS)) {
+            lastBatchDecreaseNanos = now;
+            setBatchLimit(batchLimit / 2);
+        }
+    }
+
+    private void decreaseQueueLimit(long now) {
+        if (now - lastQueueDecreaseNanos >= TimeUnit.MILLISECONDS.toNanos(DECREASE_INTERVAL_MS)) {
+            lastQueueDecreaseNanos = now;
+            setQueueLimit(queueLimit / 2);
+        }
+    }
+
+    /**
+     * @return The additive increase, which reaches the maximum from zero in 64 steps.
+     */
+    private static int step(int max) {
+        return Math.max(1, max / 64);
+    }
+
+    private void setBatchLimit(int limit) {
+        final int newLimit = Math.max(1, Math.min(maxBatchSize, limit));
+        if (newLimit != batchLimit) {
+            LOG.debug("Sending up to [{}] messages at once.", newLimit);
+            batchLimit = newLimit;
+        }
+    }
+
+    private void setQueueLimit(int limit) {
+        final int newLimit = Math.max(1, Math.min(maxQueueSize, limit));
+        if (newLimit > queueLimit) {
+            queueSlots.release(newLimit - queueLimit);
+        } else if (newLimit < queueLimit) {
+            // Producers wait until enough frames have been taken from the queue.
+            queueSlots.reducePermits(queueLimit - newLimit);
+        }
+        if (newLimit != queueLimit) {
+            LOG.debug("Queueing up to [{}] messages.", newLimit);
+            queueLimit = newLimit;
+        }
+    }
+
+    /**
+     * @return The share of the heap which was free after the last garbage collection. Garbage which has not been
+     * collected yet does not count as used.
+     */
+    private static double getHeapHeadroom() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        final long max = Runtime.getRuntime().maxMemory();
+        return (double) (max - used) / max;
+    }
+
+    /**
+     * A semaphore whose permits can be taken away while they are in use.
+     */
+    private static class QueueSlots extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        QueueSlots(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
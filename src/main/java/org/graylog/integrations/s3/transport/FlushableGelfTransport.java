@@ -0,0 +1,21 @@
+package org.graylog.integrations.s3.transport;
+
+import org.graylog2.gelfclient.transport.GelfTransport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GelfTransport} that can wait for all messages to be sent while staying open for further messages.
+ */
+public interface FlushableGelfTransport extends GelfTransport {
+
+    /**
+     * Blocks until all messages passed to the transport have been sent, or until the retries are exhausted.
+     *
+     * @param waitDuration How long to wait between checks.
+     * @param timeUnit     The unit of the wait duration.
+     * @param retries      How many times to check before giving up.
+     * @return true if all messages have been sent, false if some were still pending when the retries ran out.
+     */
+    boolean flush(int waitDuration, TimeUnit timeUnit, int retries);
+}
@@ -0,0 +1,24 @@
+package org.graylog.integrations.s3.transport;
+
+import org.graylog.integrations.s3.gelf.GelfFrame;
+
+/**
+ * A {@link FlushableGelfTransport} which also sends messages that have already been encoded to GELF JSON.
+ *
+ * A frame is taken with {@link #newFrame()}, filled, and handed over with {@link #send(GelfFrame)}. The transport
+ * releases the frame once it has been sent.
+ */
+public interface GelfFrameTransport extends FlushableGelfTransport {
+
+    /**
+     * @return An empty frame to encode a message into. If it is not passed to {@link #send(GelfFrame)}, it must be
+     * released by the caller.
+     */
+    GelfFrame newFrame();
+
+    /**
+     * Queues an encoded message, blocking while the queue is full. The transport takes over the frame, unless an
+     * exception is thrown.
+     */
+    void send(GelfFrame frame) throws InterruptedException;
+}
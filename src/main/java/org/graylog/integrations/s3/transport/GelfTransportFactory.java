@@ -0,0 +1,49 @@
+package org.graylog.integrations.s3.transport;
+
+import com.google.common.net.HostAndPort;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens new connections to Graylog. Messages are encoded to GELF by the codecs, so the transports only send frames.
+ *
+ * With several Graylog nodes, the messages are spread over one transport per node.
+ */
+public class GelfTransportFactory implements Provider<GelfFrameTransport> {
+    private final Configuration config;
+    private final StageMetrics metrics;
+
+    public GelfTransportFactory(Configuration config, StageMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public GelfFrameTransport get() {
+        final List<HostAndPort> endpoints = config.getGraylogEndpoints();
+        if (endpoints.size() == 1) {
+            return get(endpoints.get(0));
+        }
+
+        final List<AbstractFrameTransport> transports = new ArrayList<>(endpoints.size());
+        for (HostAndPort endpoint : endpoints) {
+            transports.add(get(endpoint));
+        }
+        return new LoadBalancedFrameTransport(transports, config.getLoadBalancingType());
+    }
+
+    private AbstractFrameTransport get(HostAndPort endpoint) {
+        switch (config.getProtocolType()) {
+            case UDP:
+                return new UdpFrameTransport(config, endpoint, metrics);
+            case HTTP:
+                return new HttpFrameTransport(config, endpoint, metrics);
+            default:
+                return new TcpFrameTransport(config, endpoint, metrics);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.graylog.integrations.s3.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GZIP compresses data into a reused buffer, with a reused {@link Deflater}. Not thread-safe.
+ */
+class GzipCompressor {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private byte[] compressed = new byte[8192];
+
+    /**
+     * Compresses the data into {@link #getBuffer()}.
+     *
+     * @return The number of compressed bytes.
+     */
+    int compress(byte[] data, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+
+        System.arraycopy(GZIP_HEADER, 0, compressed, 0, GZIP_HEADER.length);
+        int compressedLength = GZIP_HEADER.length;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        crc.reset();
+        crc.update(data, offset, length);
+        if (compressed.length - compressedLength < GZIP_TRAILER_LENGTH) {
+            compressed = Arrays.copyOf(compressed, compressedLength + GZIP_TRAILER_LENGTH);
+        }
+        ByteBuffer.wrap(compressed, compressedLength, GZIP_TRAILER_LENGTH)
+                  .order(ByteOrder.LITTLE_ENDIAN)
+                  .putInt((int) crc.getValue())
+                  .putInt(length);
+        return compressedLength + GZIP_TRAILER_LENGTH;
+    }
+
+    /**
+     * @return The buffer holding the output of the last {@link #compress(byte[], int, int)} call.
+     */
+    byte[] getBuffer() {
+        return compressed;
+    }
+}
@@ -0,0 +1,149 @@
+package org.graylog.integrations.s3.transport;
+
+import com.google.common.net.HostAndPort;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Sends GELF frames to a GELF HTTP input.
+ *
+ * Each batch of frames is posted in one request over a persistent keep-alive connection, which is kept in a pool across
+ * batches and invocations. Frames in a batch are separated by newlines, which the input accepts with bulk receiving
+ * enabled. Requests which fail with an I/O error or a server error are retried with an exponential backoff. Requests
+ * rejected with any other error status are dropped, because sending them again would not help.
+ */
+public class HttpFrameTransport extends AbstractFrameTransport {
+    private static final Logger LOG = LogManager.getLogger(HttpFrameTransport.class);
+
+    private static final String GELF_PATH = "/gelf";
+    private static final int INITIAL_RETRY_DELAY = 100;
+    private static final int SC_REQUEST_TIMEOUT = 408;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final URI uri;
+    private final RequestConfig requestConfig;
+    private final boolean gzip;
+
+    // Only used by the sender thread.
+    private final GelfFrame body = new GelfFrame();
+    private final GzipCompressor compressor = new GzipCompressor();
+    private int bodyFrames;
+
+    private volatile CloseableHttpClient client;
+
+    public HttpFrameTransport(Configuration config, HostAndPort endpoint, StageMetrics metrics) {
+        this(config, URI.create((config.getHttpTls() ? "https" : "http") + "://" + endpoint + GELF_PATH), metrics);
+    }
+
+    private HttpFrameTransport(Configuration config, URI uri, StageMetrics metrics) {
+        super(uri.toString(), config.getQueueSize(), INITIAL_RETRY_DELAY, config.getReconnectDelay(),
+              config.getHttpBatchSize(), config.getHttpLingerMs(), config.getAdaptiveSending(), metrics);
+        this.uri = uri;
+        this.requestConfig = RequestConfig.custom()
+                                          .setConnectTimeout(config.getConnectTimeout())
+                                          .setConnectionRequestTimeout(config.getConnectTimeout())
+                                          .setSocketTimeout(config.getHttpSocketTimeout())
+                                          .build();
+        this.gzip = config.getHttpGzip();
+    }
+
+    @Override
+    void connect() {
+        // Requests are sent by a single thread, so one connection is enough.
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(1);
+        connectionManager.setDefaultMaxPerRoute(1);
+        client = HttpClients.custom()
+                            .setConnectionManager(connectionManager)
+                            .setDefaultRequestConfig(requestConfig)
+                            // Failed requests are retried by the sender thread, with a backoff.
+                            .disableAutomaticRetries()
+                            .disableContentCompression()
+                            .build();
+    }
+
+    @Override
+    boolean isConnected() {
+        return client != null;
+    }
+
+    @Override
+    void write(GelfFrame frame) throws IOException {
+        if (bodyFrames > 0) {
+            body.write('\n');
+        }
+        body.write(frame.getBuffer(), 0, frame.getLength());
+        bodyFrames++;
+    }
+
+    @Override
+    void flushWrites() throws IOException {
+        if (bodyFrames == 0) {
+            return;
+        }
+        try {
+            post();
+        } finally {
+            body.clear();
+            bodyFrames = 0;
+        }
+    }
+
+    @Override
+    void disconnect() {
+        final CloseableHttpClient current = client;
+        client = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // The connections are not used anymore.
+            }
+        }
+    }
+
+    private void post() throws IOException {
+        final CloseableHttpClient current = client;
+        if (current == null) {
+            throw new IOException("The transport has been disconnected.");
+        }
+
+        final ByteArrayEntity entity;
+        if (gzip) {
+            final int length = compressor.compress(body.getBuffer(), 0, body.getLength());
+            entity = new ByteArrayEntity(compressor.getBuffer(), 0, length, ContentType.APPLICATION_JSON);
+            entity.setContentEncoding("gzip");
+        } else {
+            entity = new ByteArrayEntity(body.getBuffer(), 0, body.getLength(), ContentType.APPLICATION_JSON);
+        }
+        final HttpPost request = new HttpPost(uri);
+        request.setEntity(entity);
+
+        try (CloseableHttpResponse response = current.execute(request)) {
+            // The response must be read completely, so that the connection can be reused.
+            EntityUtils.consume(response.getEntity());
+
+            final int status = response.getStatusLine().getStatusCode();
+            if (status >= 500 || status == SC_REQUEST_TIMEOUT || status == SC_TOO_MANY_REQUESTS) {
+                throw new IOException("Graylog responded with HTTP status [" + status + "]");
+            } else if (status >= 300) {
+                LOG.error("Dropping [{}] messages, which Graylog rejected with HTTP status [{}].", bodyFrames, status);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.graylog.integrations.s3.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.LoadBalancingType;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.gelf.GelfFramePool;
+import org.graylog2.gelfclient.GelfMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads GELF frames over the transports of several Graylog nodes, so that a single node does not limit throughput.
+ *
+ * Each frame is queued on one transport, which is chosen in turn or by the fewest frames waiting to be sent. A
+ * transport which failed to send is skipped until it is available again, and the frames it holds are moved to the
+ * other transports. If no transport is available, frames are queued in turn and wait for their node to come back.
+ */
+public class LoadBalancedFrameTransport implements GelfFrameTransport {
+    private static final Logger LOG = LogManager.getLogger(LoadBalancedFrameTransport.class);
+
+    private final List<AbstractFrameTransport> transports;
+    private final LoadBalancingType loadBalancingType;
+    private final GelfFramePool framePool = new GelfFramePool();
+    private final AtomicInteger nextTransport = new AtomicInteger();
+
+    LoadBalancedFrameTransport(List<AbstractFrameTransport> transports, LoadBalancingType loadBalancingType) {
+        this.transports = new ArrayList<>(transports);
+        this.loadBalancingType = loadBalancingType;
+        for (AbstractFrameTransport transport : this.transports) {
+            transport.setFailover(this::failOver);
+        }
+    }
+
+    @Override
+    public GelfFrame newFrame() {
+        return framePool.acquire();
+    }
+
+    @Override
+    public void send(GelfFrame frame) throws InterruptedException {
+        select().send(frame);
+    }
+
+    @Override
+    public void send(GelfMessage message) throws InterruptedException {
+        select().send(message);
+    }
+
+    @Override
+    public boolean trySend(GelfMessage message) {
+        return select().trySend(message);
+    }
+
+    @Override
+    public boolean flush(int waitDuration, TimeUnit timeUnit, int retries) {
+        boolean interrupted = false;
+        for (int i = 0; i < retries && getPendingFrames() > 0; i++) {
+            try {
+                timeUnit.sleep(waitDuration);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        final boolean flushed = getPendingFrames() == 0;
+        if (!flushed) {
+            for (AbstractFrameTransport transport : transports) {
+                if (transport.getPendingFrames() > 0) {
+                    LOG.warn("[{}] messages have not been sent to [{}] yet.", transport.getPendingFrames(), transport);
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return flushed;
+    }
+
+    @Override
+    public void stop() {
+        for (AbstractFrameTransport transport : transports) {
+            transport.stop();
+        }
+    }
+
+    @Override
+    public void flushAndStopSynchronously(int waitDuration, TimeUnit timeUnit, int retries) {
+        flush(waitDuration, timeUnit, retries);
+        stop();
+    }
+
+    private int getPendingFrames() {
+        int pendingFrames = 0;
+        for (AbstractFrameTransport transport : transports) {
+            pendingFrames += transport.getPendingFrames();
+        }
+        return pendingFrames;
+    }
+
+    /**
+     * @return The transport for the next frame. If none is available, the next one in turn.
+     */
+    private AbstractFrameTransport select() {
+        final int first = nextIndex();
+        final AbstractFrameTransport transport = selectAvailable(first, null);
+        return transport != null ? transport : transports.get(first);
+    }
+
+    /**
+     * @return The index of the next transport in turn.
+     */
+    private int nextIndex() {
+        return Math.floorMod(nextTransport.getAndIncrement(), transports.size());
+    }
+
+    /**
+     * @param first The index of the transport to look at first. Starting at the next transport in turn also spreads
+     *              ties between the least loaded transports.
+     * @return An available transport other than the excluded one, or null if there is none.
+     */
+    private AbstractFrameTransport selectAvailable(int first, AbstractFrameTransport excluded) {
+        AbstractFrameTransport selected = null;
+        for (int i = 0; i < transports.size(); i++) {
+            final AbstractFrameTransport transport = transports.get((first + i) % transports.size());
+            if (transport == excluded || !transport.isAvailable()) {
+                continue;
+            }
+            if (loadBalancingType == LoadBalancingType.ROUND_ROBIN) {
+                return transport;
+            }
+            if (selected == null || transport.getPendingFrames() < selected.getPendingFrames()) {
+                selected = transport;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Moves a frame from a failed transport to an available one, without blocking the failed transport.
+     */
+    private boolean failOver(AbstractFrameTransport failed, GelfFrame frame) {
+        final AbstractFrameTransport transport = selectAvailable(nextIndex(), failed);
+        return transport != null && transport.offer(frame);
+    }
+}
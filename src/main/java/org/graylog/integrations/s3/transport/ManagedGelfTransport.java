@@ -0,0 +1,87 @@
+package org.graylog.integrations.s3.transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog2.gelfclient.GelfMessage;
+
+import javax.inject.Provider;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a single GELF transport open for the lifetime of the Lambda execution environment.
+ *
+ * Warm invocations reuse the connection of earlier invocations instead of paying for a new connection for every
+ * object. The end of an invocation is marked with {@link #flush(int, TimeUnit, int)}, which waits for all messages to
+ * be sent but leaves the connection open. The underlying transport reconnects by itself if the connection drops.
+ *
+ * If the transport is stopped, the next message opens a new one.
+ */
+public class ManagedGelfTransport implements GelfFrameTransport {
+    private static final Logger LOG = LogManager.getLogger(ManagedGelfTransport.class);
+
+    private final Provider<GelfFrameTransport> transportProvider;
+    private volatile GelfFrameTransport delegate;
+
+    /**
+     * @param transportProvider Creates a new transport each time it is called.
+     */
+    public ManagedGelfTransport(Provider<GelfFrameTransport> transportProvider) {
+        this.transportProvider = transportProvider;
+    }
+
+    @Override
+    public GelfFrame newFrame() {
+        return getDelegate().newFrame();
+    }
+
+    @Override
+    public void send(GelfFrame frame) throws InterruptedException {
+        getDelegate().send(frame);
+    }
+
+    @Override
+    public void send(GelfMessage message) throws InterruptedException {
+        getDelegate().send(message);
+    }
+
+    @Override
+    public boolean trySend(GelfMessage message) {
+        return getDelegate().trySend(message);
+    }
+
+    @Override
+    public boolean flush(int waitDuration, TimeUnit timeUnit, int retries) {
+        final GelfFrameTransport current = delegate;
+        return current == null || current.flush(waitDuration, timeUnit, retries);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (delegate != null) {
+            LOG.debug("Stopping the GELF transport.");
+            delegate.stop();
+            delegate = null;
+        }
+    }
+
+    @Override
+    public void flushAndStopSynchronously(int waitDuration, TimeUnit timeUnit, int retries) {
+        flush(waitDuration, timeUnit, retries);
+        stop();
+    }
+
+    private GelfFrameTransport getDelegate() {
+        GelfFrameTransport current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                if (delegate == null) {
+                    LOG.debug("Opening the GELF transport.");
+                    delegate = transportProvider.get();
+                }
+                current = delegate;
+            }
+        }
+        return current;
+    }
+}
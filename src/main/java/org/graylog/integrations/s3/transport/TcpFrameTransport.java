@@ -0,0 +1,84 @@
+package org.graylog.integrations.s3.transport;
+
+import com.google.common.net.HostAndPort;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Sends GELF frames over TCP. Each frame is terminated with a null byte.
+ */
+public class TcpFrameTransport extends AbstractFrameTransport {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final String host;
+    private final int port;
+    private final int connectTimeout;
+    private final boolean tcpKeepAlive;
+    private final boolean tcpNoDelay;
+
+    private volatile Socket socket;
+    private OutputStream output;
+
+    public TcpFrameTransport(Configuration config, HostAndPort endpoint, StageMetrics metrics) {
+        super("tcp://" + endpoint, config.getQueueSize(), config.getReconnectDelay(), config.getReconnectDelay(),
+              config.getMaxInflightSends(), 0, config.getAdaptiveSending(), metrics);
+        this.host = endpoint.getHost();
+        this.port = endpoint.getPort();
+        this.connectTimeout = config.getConnectTimeout();
+        this.tcpKeepAlive = config.getTcpKeepAlive();
+        this.tcpNoDelay = config.getTcpNoDelay();
+    }
+
+    @Override
+    void connect() throws IOException {
+        final Socket newSocket = new Socket();
+        try {
+            newSocket.setKeepAlive(tcpKeepAlive);
+            newSocket.setTcpNoDelay(tcpNoDelay);
+            newSocket.connect(new InetSocketAddress(host, port), connectTimeout);
+            output = new BufferedOutputStream(newSocket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+    }
+
+    @Override
+    boolean isConnected() {
+        final Socket current = socket;
+        return current != null && !current.isClosed();
+    }
+
+    @Override
+    void write(GelfFrame frame) throws IOException {
+        output.write(frame.getBuffer(), 0, frame.getLength());
+        output.write(0);
+    }
+
+    @Override
+    void flushWrites() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    void disconnect() {
+        final Socket current = socket;
+        socket = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // The connection is not used anymore.
+            }
+        }
+    }
+}
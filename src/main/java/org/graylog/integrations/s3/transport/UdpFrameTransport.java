@@ -0,0 +1,108 @@
+package org.graylog.integrations.s3.transport;
+
+import com.google.common.net.HostAndPort;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends GELF frames over UDP, like gelfclient does: each message is GZIP compressed, and split into chunks if it does
+ * not fit into a single datagram.
+ */
+public class UdpFrameTransport extends AbstractFrameTransport {
+    private static final Logger LOG = LogManager.getLogger(UdpFrameTransport.class);
+
+    private static final int MAX_CHUNK_SIZE = 1420;
+    private static final int MAX_CHUNKS = 128;
+    private static final byte[] CHUNK_MAGIC_BYTES = {0x1e, 0x0f};
+    private static final int CHUNK_HEADER_LENGTH = 12;
+
+    private final String host;
+    private final int port;
+
+    // Only used by the sender thread.
+    private final GzipCompressor compressor = new GzipCompressor();
+    private final ByteBuffer datagram = ByteBuffer.allocate(CHUNK_HEADER_LENGTH + MAX_CHUNK_SIZE);
+    private long nextMessageId = ThreadLocalRandom.current().nextLong();
+
+    private volatile DatagramChannel channel;
+    private InetSocketAddress address;
+
+    public UdpFrameTransport(Configuration config, HostAndPort endpoint, StageMetrics metrics) {
+        super("udp://" + endpoint, config.getQueueSize(), config.getReconnectDelay(), config.getReconnectDelay(),
+              config.getMaxInflightSends(), 0, config.getAdaptiveSending(), metrics);
+        this.host = endpoint.getHost();
+        this.port = endpoint.getPort();
+    }
+
+    @Override
+    void connect() throws IOException {
+        address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unable to resolve host [" + host + "].");
+        }
+        channel = DatagramChannel.open();
+    }
+
+    @Override
+    boolean isConnected() {
+        final DatagramChannel current = channel;
+        return current != null && current.isOpen();
+    }
+
+    @Override
+    void write(GelfFrame frame) throws IOException {
+        final int length = compressor.compress(frame.getBuffer(), 0, frame.getLength());
+        final byte[] compressed = compressor.getBuffer();
+        if (length <= MAX_CHUNK_SIZE) {
+            channel.send(ByteBuffer.wrap(compressed, 0, length), address);
+            return;
+        }
+
+        final int chunkCount = (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+        if (chunkCount > MAX_CHUNKS) {
+            LOG.error("Dropping a message of [{}] compressed bytes. GELF over UDP supports at most [{}] bytes.",
+                      length, MAX_CHUNKS * MAX_CHUNK_SIZE);
+            return;
+        }
+
+        final long messageId = nextMessageId++;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int chunkOffset = chunk * MAX_CHUNK_SIZE;
+            datagram.clear();
+            datagram.put(CHUNK_MAGIC_BYTES)
+                    .putLong(messageId)
+                    .put((byte) chunk)
+                    .put((byte) chunkCount)
+                    .put(compressed, chunkOffset, Math.min(MAX_CHUNK_SIZE, length - chunkOffset));
+            datagram.flip();
+            channel.send(datagram, address);
+        }
+    }
+
+    @Override
+    void flushWrites() {
+        // Datagrams are sent right away.
+    }
+
+    @Override
+    void disconnect() {
+        final DatagramChannel current = channel;
+        channel = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // The channel is not used anymore.
+            }
+        }
+    }
+}
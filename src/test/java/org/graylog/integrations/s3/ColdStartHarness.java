@@ -0,0 +1,93 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold start of {@link GraylogS3Function}: the time until the function has been constructed, and the
+ * time of its first invocation, in a JVM which has not run anything else.
+ *
+ * The object is served from an {@link InMemoryAmazonS3} and sent to a local {@link GelfSink}, so the time it takes to
+ * build the real S3 client is not included. Run it in a fresh JVM each time, e.g. with
+ * {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-classpath %classpath org.graylog.integrations.s3.ColdStartHarness"}.
+ * Pass function settings (e.g. CONTENT_TYPE) as {@code -Dharness.CONTENT_TYPE=application/json}.
+ *
+ * With {@code -Dharness.snapshot=true}, the SnapStart hooks run between construction and the first invocation, as
+ * they would around a snapshot. The first invocation then shows the effect of priming.
+ */
+public class ColdStartHarness {
+
+    private static final String BUCKET_NAME = "harness";
+    private static final String OBJECT_KEY = "cold-start";
+    private static final String SETTING_PREFIX = "harness.";
+    private static final int MESSAGES = Integer.getInteger("harness.messages", 100);
+    private static final boolean SNAPSHOT = Boolean.getBoolean("harness.snapshot");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final long mainStartMillis = System.currentTimeMillis();
+        Configurator.setRootLevel(Level.WARN);
+
+        final InMemoryAmazonS3 s3Client = new InMemoryAmazonS3();
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < MESSAGES; i++) {
+            lines.append(TestDataGenerator.buildMessage(0, 32)).append('\n');
+        }
+        s3Client.addObject(BUCKET_NAME, OBJECT_KEY, lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (GelfSink sink = new GelfSink(ProtocolType.TCP)) {
+            final Map<String, String> settings = buildSettings(sink.getPort());
+
+            final long constructStart = System.nanoTime();
+            final S3ProcessorComponents components = OfflineComponents.create(settings, s3Client);
+            final GraylogS3Function function = new GraylogS3Function(components);
+            final long constructNanos = System.nanoTime() - constructStart;
+
+            if (SNAPSHOT) {
+                final long snapshotStart = System.nanoTime();
+                components.getSnapStartResource().beforeCheckpoint(null);
+                components.getSnapStartResource().afterRestore(null);
+                System.out.printf("Snapshot hooks: %.1f ms%n", (System.nanoTime() - snapshotStart) / 1_000_000.0);
+            }
+
+            final long invokeStart = System.nanoTime();
+            function.handleRequest(new S3Event(Collections.singletonList(s3Client.buildRecord(BUCKET_NAME, OBJECT_KEY))),
+                                   null);
+            final long invokeNanos = System.nanoTime() - invokeStart;
+            final long totalMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+
+            System.out.printf("JVM start to main: %d ms, construct: %.1f ms, first invocation: %.1f ms, " +
+                              "JVM start to end of first invocation: %d ms, received: %d/%d%n",
+                              mainStartMillis - ManagementFactory.getRuntimeMXBean().getStartTime(),
+                              constructNanos / 1_000_000.0, invokeNanos / 1_000_000.0, totalMillis,
+                              sink.awaitMessages(MESSAGES, 10, TimeUnit.SECONDS) ? MESSAGES : sink.getValidMessages(),
+                              MESSAGES);
+
+            components.getGelfTransport().stop();
+        }
+    }
+
+    private static Map<String, String> buildSettings(int port) {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "127.0.0.1");
+        settings.put("GRAYLOG_PORT", String.valueOf(port));
+        settings.put("SHUTDOWN_FLUSH_TIMEOUT_MS", "1");
+        settings.put("SHUTDOWN_FLUSH_RETRIES", "10000");
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(SETTING_PREFIX)) {
+                settings.put(name.substring(SETTING_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        return settings;
+    }
+}
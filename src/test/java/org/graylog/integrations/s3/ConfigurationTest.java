@@ -1,8 +1,18 @@
 package org.graylog.integrations.s3;
 
+import com.github.joschi.jadconfig.JadConfig;
+import com.github.joschi.jadconfig.RepositoryException;
+import com.github.joschi.jadconfig.ValidationException;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import com.google.common.net.HostAndPort;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class ConfigurationTest {
 
     @Test
@@ -10,5 +20,61 @@ public class ConfigurationTest {
 
         final Configuration config = new Configuration();
         Assert.assertEquals(ContentType.TEXT_PLAIN, config.getContentType());
+        Assert.assertEquals(LoadBalancingType.ROUND_ROBIN, config.getLoadBalancingType());
+        Assert.assertEquals(IdempotencyStoreType.NONE, config.getIdempotencyStoreType());
+    }
+
+    @Test
+    public void testGraylogEndpoints() throws RepositoryException, ValidationException {
+        final Configuration config = new Configuration();
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "graylog-1:12202, graylog-2 ,[::1]:12203");
+        settings.put("GRAYLOG_PORT", "12201");
+        new JadConfig(new InMemoryRepository(settings), config).process();
+
+        Assert.assertEquals(Arrays.asList(HostAndPort.fromParts("graylog-1", 12202),
+                                          HostAndPort.fromParts("graylog-2", 12201),
+                                          HostAndPort.fromParts("::1", 12203)),
+                            config.getGraylogEndpoints());
+        Assert.assertEquals("graylog-1", config.getGraylogHost());
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testInvalidGraylogEndpoint() throws RepositoryException, ValidationException {
+        new JadConfig(new InMemoryRepository(Collections.singletonMap("GRAYLOG_HOST", "graylog:port")),
+                      new Configuration()).process();
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testS3IdempotencyStoreRequiresBucket() throws RepositoryException, ValidationException {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "graylog");
+        settings.put("IDEMPOTENCY_STORE", IdempotencyStoreType.S3.getType());
+        new JadConfig(new InMemoryRepository(settings), new Configuration()).process();
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testS3DeadLetterSinkRequiresBucket() throws RepositoryException, ValidationException {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "graylog");
+        settings.put("DEAD_LETTER_SINK", DeadLetterSinkType.S3.getType());
+        new JadConfig(new InMemoryRepository(settings), new Configuration()).process();
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testInvalidFilterRules() throws RepositoryException, ValidationException {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "graylog");
+        settings.put("FILTER_RULES", "CacheCacheStatus=hit -> 1.5");
+        new JadConfig(new InMemoryRepository(settings), new Configuration()).process();
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testFilterConditionsRequireJson() throws RepositoryException, ValidationException {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "graylog");
+        settings.put("CONTENT_TYPE", ContentType.TEXT_PLAIN.getType());
+        settings.put("FILTER_RULES", "CacheCacheStatus=hit -> 0");
+        new JadConfig(new InMemoryRepository(settings), new Configuration()).process();
     }
 }
@@ -0,0 +1,268 @@
+package org.graylog.integrations.s3;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.integrations.s3.codec.PlainTextCodec;
+import org.graylog.integrations.s3.codec.S3Codec;
+import org.graylog.integrations.s3.deadletter.DeadLetterSink;
+import org.graylog.integrations.s3.filter.FilterRule;
+import org.graylog.integrations.s3.filter.MessageFilter;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.gelf.GelfWriter;
+import org.graylog.integrations.s3.metrics.Metric;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog.integrations.s3.transport.GelfFrameTransport;
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DecodePipelineTest {
+
+    // Code Under Test
+    private DecodePipeline cut;
+
+    // Test Objects
+    private final RecordingTransport transport = new RecordingTransport();
+    private final DeadLetterSink deadLetterSink = mock(DeadLetterSink.class);
+    private final StageMetrics metrics = new StageMetrics();
+    private MessageFilter messageFilter = new MessageFilter(Collections.emptyList());
+    private LineReader lineReader;
+    private long sentMessages;
+
+    // Test Cases
+    @Test
+    public void testAllLinesAreSentExactlyOnce() throws IOException, InterruptedException {
+        givenLines(1000);
+        givenPipeline(new PlainTextCodec(), 4, 7, 3);
+
+        whenProcessIsCalled();
+
+        thenSentMessagesAre(1000);
+        thenEachLineWasSentOnce(1000);
+    }
+
+    @Test
+    public void testFewerLinesThanOneBatch() throws IOException, InterruptedException {
+        givenLines(3);
+        givenPipeline(new PlainTextCodec(), 4, 256, 8);
+
+        whenProcessIsCalled();
+
+        thenSentMessagesAre(3);
+        thenEachLineWasSentOnce(3);
+    }
+
+    @Test
+    public void testStopIsIgnoredAtTheEndOfTheObject() throws IOException, InterruptedException {
+        givenLines(14);
+        givenPipeline(new PlainTextCodec(), 1, 7, 1);
+
+        final DecodePipeline.Result result = cut.process(lineReader, "key", () -> true);
+
+        // The stop was requested after the first batch, and the second batch ended the object.
+        assertTrue(result.isStopped());
+        assertEquals(7, result.getSentMessages());
+        final DecodePipeline.Result lastResult = cut.process(lineReader, "key", () -> true);
+        assertFalse(lastResult.isStopped());
+        assertEquals(7, lastResult.getSentMessages());
+    }
+
+    @Test
+    public void testDecodeFailuresAreDeadLettered() throws IOException, InterruptedException {
+        givenLines(1000);
+        givenPipeline(failingCodec(10, 20), 4, 7, 3, 2);
+
+        whenProcessIsCalled();
+
+        thenSentMessagesAre(998);
+        verify(deadLetterSink, times(2)).add(eq("key"), any(String.class), any(IOException.class));
+    }
+
+    @Test
+    public void testDecodeFailureOverBudgetStopsProcessing() throws IOException, InterruptedException {
+        givenLines(1000);
+        final AtomicInteger decodeCount = new AtomicInteger();
+        givenPipeline((line, offset, length, context, writer) -> {
+            if (decodeCount.incrementAndGet() == 10) {
+                throw new IOException("Broken line");
+            }
+            writer.finish(line, offset, length, GelfWriter.DEFAULT_HOST, 0);
+        }, 1, 5, 1, 0);
+
+        whenProcessIsCalled();
+
+        // Lines are decoded in order on a single thread, so everything before the broken line was sent.
+        thenSentMessagesAre(9);
+        assertEquals(10, decodeCount.get());
+        verify(deadLetterSink).add(eq("key"), eq("line 9"), any(IOException.class));
+    }
+
+    @Test
+    public void testFilteredLinesAreNotDecoded() throws IOException, InterruptedException {
+        givenJsonLines(1000);
+        givenFilterRules("status=200 -> 0");
+        final AtomicInteger decodeCount = new AtomicInteger();
+        givenPipeline((line, offset, length, context, writer) -> {
+            decodeCount.incrementAndGet();
+            writer.finish(line, offset, length, GelfWriter.DEFAULT_HOST, 0);
+        }, 4, 7, 3, 0);
+
+        whenProcessIsCalled();
+
+        // Every other line has status 200.
+        thenSentMessagesAre(500);
+        assertEquals(500, decodeCount.get());
+        assertEquals(Long.valueOf(500), metrics.snapshotAndReset().get(Metric.LINES_FILTERED));
+    }
+
+    @Test
+    public void testDecodeTimeExcludesWaitingForTheTransport() throws IOException, InterruptedException {
+        givenLines(10);
+        givenPipeline(new PlainTextCodec(), 1, 10, 1);
+        transport.sendDelayMillis = 50;
+
+        whenProcessIsCalled();
+
+        thenSentMessagesAre(10);
+        // The sends were blocked for 500 ms in total.
+        final long decodeNanos = metrics.snapshotAndReset().get(Metric.DECODE_TIME);
+        assertTrue("Decode time " + decodeNanos, decodeNanos < TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    // GIVENs
+    private void givenJsonLines(int lineCount) {
+        final StringBuilder data = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            data.append("{\"line\":").append(i).append(",\"status\":").append(i % 2 == 0 ? 200 : 500).append("}\n");
+        }
+        lineReader = new LineReader(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8)), 1024);
+    }
+
+    private void givenFilterRules(String rules) {
+        messageFilter = new MessageFilter(FilterRule.parseAll(rules));
+    }
+
+    private void givenLines(int lineCount) {
+        final StringBuilder data = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            data.append("line ").append(i).append('\n');
+        }
+        lineReader = new LineReader(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8)), 1024);
+    }
+
+    private void givenPipeline(S3Codec codec, int decodeThreads, int batchSize, int maxPendingBatches) {
+        givenPipeline(codec, decodeThreads, batchSize, maxPendingBatches, 0);
+    }
+
+    private void givenPipeline(S3Codec codec, int decodeThreads, int batchSize, int maxPendingBatches,
+                               int errorBudget) {
+        cut = new DecodePipeline(codec, messageFilter, transport, decodeThreads, batchSize, maxPendingBatches,
+                                 errorBudget, deadLetterSink, metrics);
+    }
+
+    /**
+     * @return A codec which fails to decode the given lines, and sends all others as plain text.
+     */
+    private static S3Codec failingCodec(int... failingLines) {
+        final Set<String> failing = new HashSet<>();
+        for (int line : failingLines) {
+            failing.add("line " + line);
+        }
+        return (line, offset, length, context, writer) -> {
+            if (failing.contains(new String(line, offset, length, StandardCharsets.UTF_8))) {
+                throw new IOException("Broken line");
+            }
+            writer.finish(line, offset, length, GelfWriter.DEFAULT_HOST, 0);
+        };
+    }
+
+    // WHENs
+    private void whenProcessIsCalled() throws IOException, InterruptedException {
+        sentMessages = cut.process(lineReader, "key");
+    }
+
+    // THENs
+    private void thenSentMessagesAre(long expectedCount) {
+        assertEquals(expectedCount, sentMessages);
+        assertEquals(expectedCount, transport.messages.size());
+    }
+
+    private void thenEachLineWasSentOnce(int lineCount) {
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < lineCount; i++) {
+            expected.add("line " + i);
+        }
+        assertTrue(transport.messages.keySet().containsAll(expected));
+        for (Integer count : transport.messages.values()) {
+            assertEquals(Integer.valueOf(1), count);
+        }
+    }
+
+    private static class RecordingTransport implements GelfFrameTransport {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final ConcurrentHashMap<String, Integer> messages = new ConcurrentHashMap<>();
+        // Simulates backpressure of a slow Graylog node.
+        private volatile long sendDelayMillis;
+
+        @Override
+        public GelfFrame newFrame() {
+            return new GelfFrame();
+        }
+
+        @Override
+        public void send(GelfFrame frame) throws InterruptedException {
+            if (sendDelayMillis > 0) {
+                Thread.sleep(sendDelayMillis);
+            }
+            try {
+                final String shortMessage = objectMapper.readTree(frame.getBuffer(), 0, frame.getLength())
+                                                        .path("short_message")
+                                                        .asText();
+                messages.merge(shortMessage, 1, Integer::sum);
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid frame.", e);
+            }
+        }
+
+        @Override
+        public void send(GelfMessage message) {
+            messages.merge(message.getMessage(), 1, Integer::sum);
+        }
+
+        @Override
+        public boolean trySend(GelfMessage message) {
+            send(message);
+            return true;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public boolean flush(int waitDuration, TimeUnit timeUnit, int retries) {
+            return true;
+        }
+
+        @Override
+        public void flushAndStopSynchronously(int waitDuration, TimeUnit timeUnit, int retries) {
+        }
+    }
+}
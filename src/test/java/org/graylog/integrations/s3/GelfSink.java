@@ -0,0 +1,351 @@
+package org.graylog.integrations.s3;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A local GELF input which counts and validates the messages it receives.
+ *
+ * TCP frames are null-byte delimited. UDP datagrams may be chunked and/or GZIP or ZLIB compressed. HTTP requests are
+ * posted to /gelf, may be GZIP compressed, and may contain several newline-delimited messages.
+ * A message is valid if it is a JSON object with version 1.1, a host and a short_message, and all additional fields
+ * start with an underscore.
+ */
+class GelfSink implements Closeable {
+
+    private static final byte[] CHUNK_MAGIC = {0x1e, 0x0f};
+    private static final int CHUNK_HEADER_LENGTH = 12;
+
+    private final ProtocolType protocolType;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ServerSocket serverSocket;
+    private final DatagramSocket datagramSocket;
+    private final HttpServer httpServer;
+    private final Thread receiverThread;
+
+    private final AtomicLong validMessages = new AtomicLong();
+    private final AtomicLong invalidMessages = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong httpRequests = new AtomicLong();
+    private final AtomicInteger failingHttpRequests = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    GelfSink(ProtocolType protocolType) throws IOException {
+        this.protocolType = protocolType;
+        final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (protocolType == ProtocolType.HTTP) {
+            serverSocket = null;
+            datagramSocket = null;
+            receiverThread = null;
+            httpServer = HttpServer.create(address, 0);
+            httpServer.createContext("/gelf", this::handleRequest);
+            httpServer.start();
+            return;
+        }
+
+        httpServer = null;
+        if (protocolType == ProtocolType.TCP) {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(address);
+            datagramSocket = null;
+            receiverThread = new Thread(this::acceptConnections, "gelf-sink-tcp");
+        } else {
+            serverSocket = null;
+            datagramSocket = new DatagramSocket(null);
+            // A large receive buffer makes it less likely that datagrams are dropped during bursts.
+            datagramSocket.setReceiveBufferSize(16 * 1024 * 1024);
+            datagramSocket.bind(address);
+            receiverThread = new Thread(this::receiveDatagrams, "gelf-sink-udp");
+        }
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    int getPort() {
+        switch (protocolType) {
+            case TCP:
+                return serverSocket.getLocalPort();
+            case HTTP:
+                return httpServer.getAddress().getPort();
+            default:
+                return datagramSocket.getLocalPort();
+        }
+    }
+
+    /**
+     * Responds to the next HTTP requests with a server error, without reading the messages.
+     */
+    void failNextHttpRequests(int requestCount) {
+        failingHttpRequests.set(requestCount);
+    }
+
+    /**
+     * @return The number of HTTP requests received, including failed ones.
+     */
+    long getHttpRequests() {
+        return httpRequests.get();
+    }
+
+    long getValidMessages() {
+        return validMessages.get();
+    }
+
+    long getInvalidMessages() {
+        return invalidMessages.get();
+    }
+
+    /**
+     * @return The number of bytes received on the wire.
+     */
+    long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    void reset() {
+        validMessages.set(0);
+        invalidMessages.set(0);
+        receivedBytes.set(0);
+    }
+
+    /**
+     * Waits until the given number of messages (valid or not) has been received.
+     *
+     * @return true if all messages were received before the timeout.
+     */
+    boolean awaitMessages(long messageCount, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        while (validMessages.get() + invalidMessages.get() < messageCount) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        if (datagramSocket != null) {
+            datagramSocket.close();
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        httpRequests.incrementAndGet();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        receivedBytes.addAndGet(body.size());
+
+        if (failingHttpRequests.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        final byte[] messages = decompress(body.toByteArray());
+        int start = 0;
+        for (int i = 0; i <= messages.length; i++) {
+            if (i == messages.length || messages[i] == '\n') {
+                if (i > start) {
+                    validate(Arrays.copyOfRange(messages, start, i));
+                }
+                start = i + 1;
+            }
+        }
+        exchange.sendResponseHeaders(202, -1);
+        exchange.close();
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread connectionThread = new Thread(() -> readFrames(socket), "gelf-sink-tcp-connection");
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new IllegalStateException("Failed to accept GELF connection.", e);
+                }
+            }
+        }
+    }
+
+    private void readFrames(Socket socket) {
+        try (InputStream inputStream = new BufferedInputStream(socket.getInputStream(), 64 * 1024)) {
+            final ByteArrayOutputStream frame = new ByteArrayOutputStream(4096);
+            int b;
+            while ((b = inputStream.read()) != -1) {
+                receivedBytes.incrementAndGet();
+                if (b == 0) {
+                    validate(frame.toByteArray());
+                    frame.reset();
+                } else {
+                    frame.write(b);
+                }
+            }
+        } catch (SocketException e) {
+            // The connection was closed by the client or the sink.
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read GELF frames.", e);
+        }
+    }
+
+    private void receiveDatagrams() {
+        final Map<Long, byte[][]> pendingChunks = new HashMap<>();
+        final DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        while (!closed) {
+            try {
+                datagramSocket.receive(packet);
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new IllegalStateException("Failed to receive GELF datagram.", e);
+                }
+                return;
+            }
+
+            receivedBytes.addAndGet(packet.getLength());
+            final byte[] datagram = new byte[packet.getLength()];
+            System.arraycopy(packet.getData(), packet.getOffset(), datagram, 0, packet.getLength());
+            if (datagram.length > CHUNK_HEADER_LENGTH && datagram[0] == CHUNK_MAGIC[0] && datagram[1] == CHUNK_MAGIC[1]) {
+                final byte[] message = addChunk(pendingChunks, datagram);
+                if (message != null) {
+                    validate(decompress(message));
+                }
+            } else {
+                validate(decompress(datagram));
+            }
+        }
+    }
+
+    /**
+     * @return The reassembled message once all chunks have arrived, otherwise null.
+     */
+    private static byte[] addChunk(Map<Long, byte[][]> pendingChunks, byte[] datagram) {
+        final ByteBuffer header = ByteBuffer.wrap(datagram);
+        final long messageId = header.getLong(2);
+        final int sequenceNumber = datagram[10] & 0xff;
+        final int sequenceCount = datagram[11] & 0xff;
+
+        final byte[][] chunks = pendingChunks.computeIfAbsent(messageId, id -> new byte[sequenceCount][]);
+        final byte[] chunk = new byte[datagram.length - CHUNK_HEADER_LENGTH];
+        System.arraycopy(datagram, CHUNK_HEADER_LENGTH, chunk, 0, chunk.length);
+        chunks[sequenceNumber] = chunk;
+
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        for (byte[] part : chunks) {
+            if (part == null) {
+                return null;
+            }
+            message.write(part, 0, part.length);
+        }
+        pendingChunks.remove(messageId);
+        return message.toByteArray();
+    }
+
+    private byte[] decompress(byte[] payload) {
+        final InputStream inputStream;
+        try {
+            if (payload.length > 2 && payload[0] == (byte) 0x1f && payload[1] == (byte) 0x8b) {
+                inputStream = new GZIPInputStream(new ByteArrayInputStream(payload));
+            } else if (payload.length > 2 && payload[0] == (byte) 0x78) {
+                inputStream = new InflaterInputStream(new ByteArrayInputStream(payload));
+            } else {
+                return payload;
+            }
+
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length * 4);
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private void validate(byte[] frame) {
+        if (isValidMessage(frame)) {
+            validMessages.incrementAndGet();
+        } else {
+            invalidMessages.incrementAndGet();
+        }
+    }
+
+    private boolean isValidMessage(byte[] frame) {
+        final JsonNode message;
+        try {
+            message = objectMapper.readTree(frame);
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (message == null || !message.isObject()
+            || !"1.1".equals(message.path("version").asText())
+            || message.path("host").asText().isEmpty()
+            || !message.path("short_message").isTextual()) {
+            return false;
+        }
+
+        final Iterator<String> fieldNames = message.fieldNames();
+        while (fieldNames.hasNext()) {
+            final String fieldName = fieldNames.next();
+            switch (fieldName) {
+                case "version":
+                case "host":
+                case "short_message":
+                case "full_message":
+                case "timestamp":
+                case "level":
+                    break;
+                default:
+                    if (!fieldName.startsWith("_")) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,386 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.snappy.FramedSnappyCompressorOutputStream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the whole function against an in-memory S3 and a local GELF input.
+ */
+public class GraylogS3FunctionTest {
+
+    private static final String BUCKET_NAME = "bucket";
+    private static final String CHECKPOINT_BUCKET_NAME = "checkpoint-bucket";
+    private static final int MESSAGES_PER_OBJECT = 250;
+
+    // Code Under Test
+    private GraylogS3Function cut;
+
+    // Test Objects
+    private final InMemoryAmazonS3 s3Client = new InMemoryAmazonS3();
+    private final List<S3EventNotification.S3EventNotificationRecord> records = new ArrayList<>();
+    private GelfSink sink;
+    private GelfSink otherSink;
+    private S3ProcessorComponents components;
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() throws IOException {
+        if (components != null) {
+            components.getGelfTransport().stop();
+        }
+        if (sink != null) {
+            sink.close();
+        }
+        if (otherSink != null) {
+            otherSink.close();
+        }
+    }
+
+    // Test Cases
+    @Test
+    public void testGzipCloudflareLogsOverTcp() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(3, CompressionType.GZIP);
+        givenFunction(CompressionType.GZIP, ContentType.CLOUD_FLARE_LOG, ProtocolType.TCP);
+
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(3 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testPlainJsonOverTcpAcrossInvocations() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(2, CompressionType.NONE);
+        givenFunction(CompressionType.NONE, ContentType.APPLICATION_JSON, ProtocolType.TCP);
+
+        whenHandleRequestIsCalled();
+        givenObjects(2, CompressionType.NONE);
+        whenHandleRequestIsCalled();
+
+        // The objects of the first invocation are not sent again.
+        thenAllMessagesWereReceived(2 * 2 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testRedeliveredNotificationIsSkippedByNewContainer() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(2, CompressionType.GZIP);
+        final String[] idempotencySettings = {
+                "IDEMPOTENCY_STORE", IdempotencyStoreType.FILE.getType(),
+                "IDEMPOTENCY_FILE", temporaryFolder.getRoot().toPath().resolve("processed-objects").toString()};
+        givenFunction(CompressionType.GZIP, ContentType.APPLICATION_JSON, ProtocolType.TCP, idempotencySettings);
+
+        whenHandleRequestIsCalled();
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        givenFunction(CompressionType.GZIP, ContentType.APPLICATION_JSON, ProtocolType.TCP, idempotencySettings);
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testLargeJsonMessagesOverUdp() throws IOException, InterruptedException {
+        givenSink(ProtocolType.UDP);
+        givenObjects(1, CompressionType.GZIP, 40, 256);
+        givenFunction(CompressionType.GZIP, ContentType.APPLICATION_JSON, ProtocolType.UDP);
+
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testMixedCompressionWithAutoDetection() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(1, CompressionType.NONE);
+        givenObjects(1, CompressionType.GZIP);
+        givenObjects(1, CompressionType.ZSTD);
+        givenObjects(1, CompressionType.BZIP2);
+        givenObjects(1, CompressionType.SNAPPY);
+        givenFunction(CompressionType.AUTO, ContentType.CLOUD_FLARE_LOG, ProtocolType.TCP);
+
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(5 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testBatchedGzipMessagesOverHttp() throws IOException, InterruptedException {
+        givenSink(ProtocolType.HTTP);
+        givenObjects(2, CompressionType.GZIP);
+        givenFunction(CompressionType.GZIP, ContentType.CLOUD_FLARE_LOG, ProtocolType.HTTP,
+                      "HTTP_BATCH_SIZE", "50", "HTTP_GZIP", "true");
+
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        assertTrue(sink.getHttpRequests() < 2 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testHttpServerErrorsAreRetried() throws IOException, InterruptedException {
+        givenSink(ProtocolType.HTTP);
+        givenObjects(1, CompressionType.NONE);
+        givenFunction(CompressionType.NONE, ContentType.APPLICATION_JSON, ProtocolType.HTTP,
+                      "HTTP_BATCH_SIZE", "20", "RECONNECT_DELAY", "200");
+        sink.failNextHttpRequests(3);
+
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(MESSAGES_PER_OBJECT);
+        assertTrue(sink.getHttpRequests() > 3);
+    }
+
+    @Test
+    public void testMessagesAreSpreadOverSeveralNodes() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        otherSink = new GelfSink(ProtocolType.TCP);
+        givenObjects(4, CompressionType.GZIP);
+        givenFunction(CompressionType.GZIP, ContentType.CLOUD_FLARE_LOG, ProtocolType.TCP,
+                      "GRAYLOG_HOST", "127.0.0.1:" + sink.getPort() + ", 127.0.0.1:" + otherSink.getPort());
+
+        whenHandleRequestIsCalled();
+
+        thenMessagesWereReceivedByBothNodes(4 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testMessagesFailOverFromUnreachableNode() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(2, CompressionType.NONE);
+        givenFunction(CompressionType.NONE, ContentType.APPLICATION_JSON, ProtocolType.TCP,
+                      "GRAYLOG_HOST", "127.0.0.1:" + givenUnusedPort() + ", 127.0.0.1:" + sink.getPort(),
+                      "LOAD_BALANCING", LoadBalancingType.LEAST_IN_FLIGHT.getType(),
+                      "RECONNECT_DELAY", "100");
+
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+    }
+
+    @Test
+    public void testCompressedObjectsResumeAtCheckpoint() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(2, CompressionType.GZIP);
+        givenCheckpointingFunction(CompressionType.GZIP);
+
+        whenHandleRequestIsCalledCloseToTimeout();
+        thenSomeMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        thenCheckpointsWereRemoved();
+    }
+
+    @Test
+    public void testUncompressedObjectsResumeAtCheckpoint() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(2, CompressionType.NONE);
+        givenCheckpointingFunction(CompressionType.NONE);
+
+        whenHandleRequestIsCalledCloseToTimeout();
+        thenSomeMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        whenHandleRequestIsCalled();
+
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        thenCheckpointsWereRemoved();
+    }
+
+    @Test
+    public void testReserveIsCappedBelowTheRemainingTime() throws IOException, InterruptedException {
+        givenSink(ProtocolType.TCP);
+        givenObjects(2, CompressionType.NONE);
+        givenCheckpointingFunction(CompressionType.NONE);
+
+        // Less time left than the default reserve of 15 seconds.
+        whenHandleRequestIsCalledWithRemainingTime(10000);
+
+        thenAllMessagesWereReceived(2 * MESSAGES_PER_OBJECT);
+        thenCheckpointsWereRemoved();
+        assertEquals(5000, cut.getCheckpointReserveMs(10000));
+        assertEquals(15000, cut.getCheckpointReserveMs(30000));
+    }
+
+    // GIVENs
+    private void givenSink(ProtocolType protocolType) throws IOException {
+        sink = new GelfSink(protocolType);
+    }
+
+    /**
+     * @return A port on which nothing is listening.
+     */
+    private int givenUnusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void givenObjects(int objectCount, CompressionType compressionType) throws IOException {
+        givenObjects(objectCount, compressionType, 0, 0);
+    }
+
+    private void givenObjects(int objectCount, CompressionType compressionType, int extraFields, int extraValueLength)
+            throws IOException {
+        for (int i = 0; i < objectCount; i++) {
+            final StringBuilder lines = new StringBuilder();
+            for (int j = 0; j < MESSAGES_PER_OBJECT; j++) {
+                lines.append(TestDataGenerator.buildMessage(extraFields, extraValueLength)).append('\n');
+            }
+            final String key = "object-" + records.size();
+            s3Client.addObject(BUCKET_NAME, key, encode(lines.toString(), compressionType));
+            records.add(s3Client.buildRecord(BUCKET_NAME, key));
+        }
+    }
+
+    /**
+     * @param extraSettings Additional setting names and values, in pairs.
+     */
+    private void givenFunction(CompressionType compressionType, ContentType contentType, ProtocolType protocolType,
+                               String... extraSettings) {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "127.0.0.1");
+        settings.put("GRAYLOG_PORT", String.valueOf(sink.getPort()));
+        settings.put("COMPRESSION_TYPE", compressionType.getType());
+        settings.put("CONTENT_TYPE", contentType.getType());
+        settings.put("PROTOCOL_TYPE", protocolType.getType());
+        settings.put("SHUTDOWN_FLUSH_TIMEOUT_MS", "10");
+        for (int i = 0; i < extraSettings.length; i += 2) {
+            settings.put(extraSettings[i], extraSettings[i + 1]);
+        }
+
+        if (components != null) {
+            // Like a new Lambda container, which does not share anything with the previous one.
+            components.getGelfTransport().stop();
+        }
+        components = OfflineComponents.create(settings, s3Client);
+        cut = new GraylogS3Function(components);
+    }
+
+    private void givenCheckpointingFunction(CompressionType compressionType) {
+        givenFunction(compressionType, ContentType.APPLICATION_JSON, ProtocolType.TCP,
+                      "CHECKPOINT_BUCKET", CHECKPOINT_BUCKET_NAME,
+                      "DECODE_BATCH_SIZE", "50");
+    }
+
+    // WHENs
+    private void whenHandleRequestIsCalled() {
+        cut.handleRequest(new S3Event(records), null);
+    }
+
+    /**
+     * Calls the function, which runs into its reserve as soon as it checks the remaining time, so it stops after the
+     * first batch of each object.
+     */
+    private void whenHandleRequestIsCalledCloseToTimeout() {
+        final Context context = mock(Context.class);
+        given(context.getRemainingTimeInMillis()).willReturn(1000, 0);
+        try {
+            cut.handleRequest(new S3Event(records), context);
+            fail("The invocation must fail, so that it is retried.");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+    }
+
+    private void whenHandleRequestIsCalledWithRemainingTime(int remainingTimeMillis) {
+        final Context context = mock(Context.class);
+        given(context.getRemainingTimeInMillis()).willReturn(remainingTimeMillis);
+        cut.handleRequest(new S3Event(records), context);
+    }
+
+    // THENs
+    private void thenAllMessagesWereReceived(int messageCount) throws InterruptedException {
+        // The function flushes before it returns, but the sink may still be reading.
+        assertTrue(sink.awaitMessages(messageCount, 10, TimeUnit.SECONDS));
+        assertEquals(messageCount, sink.getValidMessages());
+        assertEquals(0, sink.getInvalidMessages());
+    }
+
+    private void thenSomeMessagesWereReceived(int totalMessageCount) throws InterruptedException {
+        assertTrue(sink.awaitMessages(1, 10, TimeUnit.SECONDS));
+        assertTrue(sink.getValidMessages() < totalMessageCount);
+        for (S3EventNotification.S3EventNotificationRecord record : records) {
+            assertTrue(s3Client.hasObject(CHECKPOINT_BUCKET_NAME, checkpointKey(record)));
+        }
+    }
+
+    private void thenCheckpointsWereRemoved() {
+        for (S3EventNotification.S3EventNotificationRecord record : records) {
+            assertFalse(s3Client.hasObject(CHECKPOINT_BUCKET_NAME, checkpointKey(record)));
+        }
+    }
+
+    private static String checkpointKey(S3EventNotification.S3EventNotificationRecord record) {
+        return "checkpoints/" + BUCKET_NAME + "/" + record.getS3().getObject().getKey() + ".json";
+    }
+
+    private void thenMessagesWereReceivedByBothNodes(int messageCount) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (sink.getValidMessages() + otherSink.getValidMessages() < messageCount && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(messageCount, sink.getValidMessages() + otherSink.getValidMessages());
+        assertTrue(sink.getValidMessages() > 0);
+        assertTrue(otherSink.getValidMessages() > 0);
+        assertEquals(0, sink.getInvalidMessages() + otherSink.getInvalidMessages());
+    }
+
+    /**
+     * Compresses the lines. {@link CompressionType#AUTO} objects are compressed with gzip.
+     */
+    static byte[] encode(String lines, CompressionType compressionType) throws IOException {
+        final byte[] bytes = lines.getBytes(StandardCharsets.UTF_8);
+        if (compressionType == CompressionType.NONE) {
+            return bytes;
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (OutputStream outputStream = compress(compressed, compressionType)) {
+            outputStream.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static OutputStream compress(OutputStream output, CompressionType compressionType) throws IOException {
+        switch (compressionType) {
+            case ZSTD:
+                return new ZstdOutputStream(output);
+            case BZIP2:
+                return new BZip2CompressorOutputStream(output);
+            case SNAPPY:
+                return new FramedSnappyCompressorOutputStream(output);
+            default:
+                return new GZIPOutputStream(output);
+        }
+    }
+}
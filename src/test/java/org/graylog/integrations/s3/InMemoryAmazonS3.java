@@ -0,0 +1,113 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link com.amazonaws.services.s3.AmazonS3} stand-in which serves objects from memory.
+ *
+ * Supports plain and ranged GET requests with an ETag constraint, and putting and deleting small text objects,
+ * which is all the function uses.
+ */
+class InMemoryAmazonS3 extends AbstractAmazonS3 {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    void addObject(String bucketName, String key, byte[] content) {
+        objects.put(bucketName + "/" + key, content);
+    }
+
+    boolean hasObject(String bucketName, String key) {
+        return objects.containsKey(bucketName + "/" + key);
+    }
+
+    /**
+     * @return The S3 event notification record which S3 would send for a stored object.
+     */
+    S3EventNotification.S3EventNotificationRecord buildRecord(String bucketName, String key) {
+        final byte[] content = getContent(bucketName, key);
+        final S3EventNotification.S3ObjectEntity object =
+                new S3EventNotification.S3ObjectEntity(key, (long) content.length, eTag(content), null, null);
+        final S3EventNotification.S3Entity s3 =
+                new S3EventNotification.S3Entity(null, new S3EventNotification.S3BucketEntity(bucketName, null, null),
+                                                 object, null);
+        return new S3EventNotification.S3EventNotificationRecord(null, "ObjectCreated:Put", "aws:s3", null, null,
+                                                                 null, null, s3, null);
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        final byte[] content = getContent(request.getBucketName(), request.getKey());
+
+        // Like the S3 client, return null if the ETag constraint is not met.
+        final List<String> eTags = request.getMatchingETagConstraints();
+        if (!eTags.isEmpty() && !eTags.contains(eTag(content))) {
+            return null;
+        }
+
+        int offset = 0;
+        int length = content.length;
+        final long[] range = request.getRange();
+        if (range != null) {
+            offset = (int) range[0];
+            length = (int) Math.min(range[1] + 1, content.length) - offset;
+        }
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(length);
+        final S3Object s3Object = new S3Object();
+        s3Object.setBucketName(request.getBucketName());
+        s3Object.setKey(request.getKey());
+        s3Object.setObjectMetadata(metadata);
+        s3Object.setObjectContent(new ByteArrayInputStream(content, offset, length));
+        return s3Object;
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, String content) {
+        addObject(bucketName, key, content.getBytes(StandardCharsets.UTF_8));
+        return new PutObjectResult();
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        objects.remove(bucketName + "/" + key);
+    }
+
+    @Override
+    public void shutdown() {
+        // The objects are kept, as the same instance may be used again after a SnapStart restore.
+    }
+
+    private byte[] getContent(String bucketName, String key) {
+        final byte[] content = objects.get(bucketName + "/" + key);
+        if (content == null) {
+            final AmazonS3Exception exception = new AmazonS3Exception("The specified key does not exist.");
+            exception.setStatusCode(404);
+            exception.setErrorCode("NoSuchKey");
+            throw exception;
+        }
+        return content;
+    }
+
+    private static String eTag(byte[] content) {
+        return Integer.toHexString(Arrays.hashCode(content));
+    }
+}
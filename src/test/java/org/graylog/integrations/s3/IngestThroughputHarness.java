@@ -0,0 +1,190 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end throughput of {@link GraylogS3Function} without AWS or Graylog.
+ *
+ * Objects are generated with {@link TestDataGenerator} and served from an {@link InMemoryAmazonS3}. Messages are sent
+ * to a local {@link GelfSink}, which validates every message. Every combination of {@link CompressionType},
+ * {@link ContentType} and {@link ProtocolType} runs in a fresh function instance: one warm-up pass over all objects,
+ * then one measured pass with one invocation per object.
+ *
+ * Reported per combination:
+ * - msg/s and MB/s: messages and uncompressed object bytes per second of the measured pass.
+ * - p50/p99: latency of a single invocation (one object), including the final flush.
+ * - heap MB: the sum of the peak usage of all heap pools during the measured pass, minus the heap in use before it
+ *   (mostly the generated objects). This is an upper bound of the heap the function needs, and a guide for the Lambda
+ *   memory setting.
+ * - received: the valid and invalid messages received by the sink. UDP may drop messages under load.
+ *
+ * This is not run as part of the build. Run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.graylog.integrations.s3.IngestThroughputHarness}.
+ * Set the size of the test with {@code -Dharness.objects}, {@code -Dharness.messagesPerObject} and
+ * {@code -Dharness.extraFields}, and pass function settings (e.g. DECODE_THREADS) as {@code -Dharness.DECODE_THREADS=2}.
+ */
+public class IngestThroughputHarness {
+
+    private static final String BUCKET_NAME = "harness";
+    private static final String SETTING_PREFIX = "harness.";
+    // The number of distinct messages which are repeated to fill the objects. Generating messages is slow.
+    private static final int DISTINCT_MESSAGES = 1000;
+
+    private static final int OBJECTS = Integer.getInteger("harness.objects", 20);
+    private static final int MESSAGES_PER_OBJECT = Integer.getInteger("harness.messagesPerObject", 5000);
+    private static final int EXTRA_FIELDS = Integer.getInteger("harness.extraFields", 0);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Configurator.setRootLevel(Level.WARN);
+
+        final String[] lines = generateObjectContent();
+        final long uncompressedBytes = Arrays.stream(lines)
+                                             .mapToLong(s -> s.getBytes(StandardCharsets.UTF_8).length)
+                                             .sum();
+        System.out.printf("[%d] objects with [%d] messages each, [%.1f] MB uncompressed.%n",
+                          OBJECTS, MESSAGES_PER_OBJECT, uncompressedBytes / 1_048_576.0);
+        System.out.printf("%-6s %-29s %-4s %10s %8s %9s %9s %10s %s%n",
+                          "comp", "content type", "prot", "msg/s", "MB/s", "p50 ms", "p99 ms", "heap MB", "received");
+
+        for (CompressionType compressionType : CompressionType.values()) {
+            final InMemoryAmazonS3 s3Client = new InMemoryAmazonS3();
+            for (int i = 0; i < OBJECTS; i++) {
+                s3Client.addObject(BUCKET_NAME, "object-" + i, GraylogS3FunctionTest.encode(lines[i], compressionType));
+            }
+
+            for (ContentType contentType : ContentType.values()) {
+                for (ProtocolType protocolType : ProtocolType.values()) {
+                    run(s3Client, compressionType, contentType, protocolType, uncompressedBytes);
+                }
+            }
+        }
+    }
+
+    private static void run(InMemoryAmazonS3 s3Client, CompressionType compressionType, ContentType contentType,
+                            ProtocolType protocolType, long uncompressedBytes) throws IOException, InterruptedException {
+        try (GelfSink sink = new GelfSink(protocolType)) {
+            final S3ProcessorComponents components = OfflineComponents.create(
+                    buildSettings(compressionType, contentType, protocolType, sink.getPort()), s3Client);
+            final GraylogS3Function function = new GraylogS3Function(components);
+
+            // Warm up, so that the measured pass runs JIT-compiled code over an open connection.
+            for (int i = 0; i < OBJECTS; i++) {
+                invoke(function, s3Client, i);
+            }
+            sink.awaitMessages((long) OBJECTS * MESSAGES_PER_OBJECT, 30, TimeUnit.SECONDS);
+            sink.reset();
+
+            System.gc();
+            final long baselineHeap = getHeapUsage(false);
+            resetPeakHeapUsage();
+
+            final long[] latencies = new long[OBJECTS];
+            final long start = System.nanoTime();
+            for (int i = 0; i < OBJECTS; i++) {
+                final long invocationStart = System.nanoTime();
+                invoke(function, s3Client, i);
+                latencies[i] = System.nanoTime() - invocationStart;
+            }
+            final long elapsed = System.nanoTime() - start;
+            final long peakHeap = getHeapUsage(true) - baselineHeap;
+
+            final long messageCount = (long) OBJECTS * MESSAGES_PER_OBJECT;
+            sink.awaitMessages(messageCount, 30, TimeUnit.SECONDS);
+            Arrays.sort(latencies);
+
+            final double seconds = elapsed / 1_000_000_000.0;
+            System.out.printf("%-6s %-29s %-4s %10.0f %8.1f %9.1f %9.1f %10.1f %d/%d valid, %d invalid%n",
+                              compressionType.getType(), contentType.getType(), protocolType.getType(),
+                              messageCount / seconds, uncompressedBytes / 1_048_576.0 / seconds,
+                              percentile(latencies, 0.50) / 1_000_000.0, percentile(latencies, 0.99) / 1_000_000.0,
+                              peakHeap / 1_048_576.0, sink.getValidMessages(), messageCount,
+                              sink.getInvalidMessages());
+
+            components.getGelfTransport().stop();
+        }
+    }
+
+    private static void invoke(GraylogS3Function function, InMemoryAmazonS3 s3Client, int objectIndex) {
+        final S3EventNotification.S3EventNotificationRecord record =
+                s3Client.buildRecord(BUCKET_NAME, "object-" + objectIndex);
+        function.handleRequest(new S3Event(Collections.singletonList(record)), null);
+    }
+
+    private static Map<String, String> buildSettings(CompressionType compressionType, ContentType contentType,
+                                                     ProtocolType protocolType, int port) {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "127.0.0.1");
+        settings.put("GRAYLOG_PORT", String.valueOf(port));
+        settings.put("COMPRESSION_TYPE", compressionType.getType());
+        settings.put("CONTENT_TYPE", contentType.getType());
+        settings.put("PROTOCOL_TYPE", protocolType.getType());
+        settings.put("SHUTDOWN_FLUSH_TIMEOUT_MS", "1");
+        settings.put("SHUTDOWN_FLUSH_RETRIES", "30000");
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(SETTING_PREFIX)) {
+                settings.put(name.substring(SETTING_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * @return The content of each object: newline-separated messages.
+     */
+    private static String[] generateObjectContent() {
+        final String[] messages = new String[DISTINCT_MESSAGES];
+        for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+            messages[i] = TestDataGenerator.buildMessage(EXTRA_FIELDS, 32);
+        }
+
+        final String[] objects = new String[OBJECTS];
+        int nextMessage = 0;
+        for (int i = 0; i < OBJECTS; i++) {
+            final StringBuilder lines = new StringBuilder();
+            for (int j = 0; j < MESSAGES_PER_OBJECT; j++) {
+                lines.append(messages[nextMessage]).append('\n');
+                nextMessage = (nextMessage + 1) % DISTINCT_MESSAGES;
+            }
+            objects[i] = lines.toString();
+        }
+        return objects;
+    }
+
+    private static long percentile(long[] sortedValues, double percentile) {
+        final int index = (int) Math.ceil(percentile * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getHeapUsage(boolean peak) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += peak ? pool.getPeakUsage().getUsed() : pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+}
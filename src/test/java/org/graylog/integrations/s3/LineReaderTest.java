@@ -0,0 +1,246 @@
+package org.graylog.integrations.s3;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LineReaderTest {
+
+    // Code Under Test
+    private LineReader cut;
+
+    // Test Objects
+    private List<String> lines;
+    private int malformedLineCount;
+
+    // Test Cases
+    @Test
+    public void testLinesAreSplitOnLineFeed() throws IOException {
+        givenInput("first\nsecond\nthird\n", 64);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("first", "second", "third");
+    }
+
+    @Test
+    public void testLastLineWithoutTerminator() throws IOException {
+        givenInput("first\nsecond", 64);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("first", "second");
+    }
+
+    @Test
+    public void testCarriageReturnIsRemoved() throws IOException {
+        givenInput("first\r\nsecond\r\n", 64);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("first", "second");
+    }
+
+    @Test
+    public void testEmptyLinesAreReturned() throws IOException {
+        givenInput("first\n\nthird", 64);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("first", "", "third");
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException {
+        givenInput("", 64);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre();
+    }
+
+    @Test
+    public void testLinesSpanningBufferRefills() throws IOException {
+        // A 4 byte buffer forces lines to be assembled over several reads.
+        givenInput("a line that is much longer than the buffer\nshort\n", 1024, 4);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("a line that is much longer than the buffer", "short");
+    }
+
+    @Test
+    public void testMultiByteCharactersAcrossBufferRefills() throws IOException {
+        givenInput("gr\u00fc\u00dfe \u20ac \ud83d\ude00\nnext\n", 1024, 3);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("gr\u00fc\u00dfe \u20ac \ud83d\ude00", "next");
+    }
+
+    @Test
+    public void testLinesLongerThanMaximumAreSkipped() throws IOException {
+        givenInput("ok\nthis line is too long\nok again\nthis one is also too long", 10, 4);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("ok", "ok again");
+        thenMalformedLineCountIs(2);
+    }
+
+    @Test
+    public void testInvalidUtf8IsSkipped() throws IOException {
+        final byte[] input = {'o', 'k', '\n', (byte) 0xc3, (byte) 0x28, '\n', 'o', 'k', '\n'};
+        givenInput(input, 64, LineReader.DEFAULT_BUFFER_SIZE);
+
+        whenAllLinesAreRead();
+
+        thenLinesAre("ok", "ok");
+        thenMalformedLineCountIs(1);
+    }
+
+    @Test
+    public void testReadAfterEndOfStream() throws IOException {
+        givenInput("only\n", 64);
+
+        whenAllLinesAreRead();
+
+        assertNull(cut.readLine());
+    }
+
+    @Test
+    public void testNextLineReturnsSliceOfBuffer() throws IOException {
+        givenInput("first\r\nsecond", 64);
+
+        assertTrue(cut.nextLine());
+        thenCurrentLineIs("first");
+        assertTrue(cut.nextLine());
+        thenCurrentLineIs("second");
+        assertFalse(cut.nextLine());
+    }
+
+    @Test
+    public void testPositionCountsConsumedBytes() throws IOException {
+        givenInput("first\r\na line that is much longer than the buffer\n", 1024, 4);
+
+        assertEquals("first", cut.readLine());
+        assertEquals(7, cut.getPosition());
+        assertEquals("a line that is much longer than the buffer", cut.readLine());
+        assertEquals(50, cut.getPosition());
+    }
+
+    @Test
+    public void testSkipResumesAtPosition() throws IOException {
+        givenInput("first\nsecond\nthird\n", 64, 4);
+
+        cut.skip(13);
+        whenAllLinesAreRead();
+
+        thenLinesAre("third");
+    }
+
+    @Test(expected = EOFException.class)
+    public void testSkipPastEndOfStream() throws IOException {
+        givenInput("first\n", 64);
+
+        cut.skip(7);
+    }
+
+    @Test
+    public void testUtf8ValidationMatchesStrictDecoder() {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                                                             .onMalformedInput(CodingErrorAction.REPORT)
+                                                             .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // Every one and two byte sequence, and the boundaries of the longer sequences.
+        for (int first = 0; first < 256; first++) {
+            for (int second = 0; second < 256; second++) {
+                thenValidationMatchesDecoder(decoder, first, second);
+                for (int third : new int[]{0x41, 0x80, 0xbf}) {
+                    thenValidationMatchesDecoder(decoder, first, second, third);
+                    thenValidationMatchesDecoder(decoder, first, second, third, 0x80);
+                    thenValidationMatchesDecoder(decoder, first, second, third, 0xc0);
+                }
+            }
+            thenValidationMatchesDecoder(decoder, first);
+        }
+    }
+
+    // GIVENs
+    private void givenInput(String input, int maxLineLength) {
+        givenInput(input, maxLineLength, LineReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    private void givenInput(String input, int maxLineLength, int bufferSize) {
+        givenInput(input.getBytes(StandardCharsets.UTF_8), maxLineLength, bufferSize);
+    }
+
+    private void givenInput(byte[] input, int maxLineLength, int bufferSize) {
+        cut = new LineReader(new ByteArrayInputStream(input), maxLineLength, bufferSize);
+    }
+
+    // WHENs
+    private void whenAllLinesAreRead() throws IOException {
+        lines = new ArrayList<>();
+        while (true) {
+            final String line;
+            try {
+                line = cut.readLine();
+            } catch (LineReader.MalformedLineException e) {
+                malformedLineCount++;
+                if (malformedLineCount > 100) {
+                    fail("The reader did not advance past a malformed line.");
+                }
+                continue;
+            }
+            if (line == null) {
+                return;
+            }
+            lines.add(line);
+        }
+    }
+
+    // THENs
+    private void thenLinesAre(String... expectedLines) {
+        assertEquals(Arrays.asList(expectedLines), lines);
+    }
+
+    private void thenCurrentLineIs(String expectedLine) {
+        assertEquals(expectedLine, new String(cut.getLineBuffer(), cut.getLineOffset(), cut.getLineLength(),
+                                              StandardCharsets.UTF_8));
+    }
+
+    private void thenValidationMatchesDecoder(CharsetDecoder decoder, int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+
+        boolean decodable = true;
+        try {
+            decoder.decode(ByteBuffer.wrap(bytes));
+        } catch (CharacterCodingException e) {
+            decodable = false;
+        }
+        assertEquals(Arrays.toString(bytes), decodable, LineReader.isValidUtf8(bytes, 0, bytes.length));
+    }
+
+    private void thenMalformedLineCountIs(int expectedCount) {
+        assertEquals(expectedCount, malformedLineCount);
+    }
+}
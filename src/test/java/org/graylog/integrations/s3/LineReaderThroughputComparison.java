@@ -0,0 +1,113 @@
+package org.graylog.integrations.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the line framing throughput of {@link LineReader} with the {@link Scanner} it replaced.
+ *
+ * This is not run as part of the build. Run the main method from the IDE or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.graylog.integrations.s3.LineReaderThroughputComparison}.
+ */
+public class LineReaderThroughputComparison {
+
+    private static final int LINES = 100_000;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        final byte[] plain = generateLines();
+        final byte[] gzip = compress(plain);
+        System.out.printf("Generated [%d] lines, [%.1f] MB uncompressed, [%.1f] MB gzip.%n",
+                          LINES, plain.length / 1_048_576.0, gzip.length / 1_048_576.0);
+
+        compare("none", plain, false);
+        compare("gzip", gzip, true);
+    }
+
+    private static void compare(String compression, byte[] data, boolean gzip) throws IOException {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            readWithScanner(open(data, gzip));
+            readWithLineReader(open(data, gzip));
+        }
+
+        long scannerNanos = 0;
+        long lineReaderNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            readWithScanner(open(data, gzip));
+            scannerNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            readWithLineReader(open(data, gzip));
+            lineReaderNanos += System.nanoTime() - start;
+        }
+
+        System.out.printf("[%s] Scanner: %.0f lines/s, LineReader: %.0f lines/s (%.2fx)%n", compression,
+                          linesPerSecond(scannerNanos), linesPerSecond(lineReaderNanos),
+                          (double) scannerNanos / lineReaderNanos);
+    }
+
+    private static int readWithScanner(InputStream inputStream) {
+        int count = 0;
+        try (Scanner scanner = new Scanner(inputStream)) {
+            while (scanner.hasNextLine()) {
+                count += scanner.nextLine().length() > 0 ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    private static int readWithLineReader(InputStream inputStream) throws IOException {
+        int count = 0;
+        try (LineReader lineReader = new LineReader(inputStream, 8 * 1024 * 1024)) {
+            String line;
+            while ((line = lineReader.readLine()) != null) {
+                count += line.length() > 0 ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    private static InputStream open(byte[] data, boolean gzip) throws IOException {
+        final InputStream inputStream = new ByteArrayInputStream(data);
+        return gzip ? new GZIPInputStream(inputStream, LineReader.DEFAULT_BUFFER_SIZE) : inputStream;
+    }
+
+    private static double linesPerSecond(long nanos) {
+        return (double) LINES * MEASURED_ROUNDS / nanos * 1_000_000_000;
+    }
+
+    /**
+     * Builds lines resembling Cloudflare Logpush records (about 1 KB each).
+     */
+    private static byte[] generateLines() {
+        final Random random = new Random(42);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            builder.append('{');
+            for (int field = 0; field < 30; field++) {
+                builder.append("\"Field").append(field).append("\":\"").append(Long.toHexString(random.nextLong()))
+                       .append("\",");
+            }
+            builder.append("\"ZoneID\":").append(random.nextInt(1_000_000)).append("}\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(data);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,67 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.inject.Provider;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ManagedAmazonS3Test {
+
+    // Code Under Test
+    private ManagedAmazonS3 cut;
+
+    // Mocks
+    @Mock Provider<AmazonS3> mockClientProvider;
+    @Mock AmazonS3 mockFirstClient;
+    @Mock AmazonS3 mockSecondClient;
+
+    // Test Cases
+    @Test
+    public void requests_areSentToTheSameClient() {
+        givenClients();
+
+        cut.doesObjectExist("bucket", "first");
+        cut.doesObjectExist("bucket", "second");
+
+        verify(mockClientProvider, times(1)).get();
+        verify(mockFirstClient).doesObjectExist("bucket", "first");
+        verify(mockFirstClient).doesObjectExist("bucket", "second");
+    }
+
+    @Test
+    public void requests_buildNewClient_afterShutdown() {
+        givenClients();
+        cut.open();
+
+        cut.shutdown();
+        cut.getObject("bucket", "key");
+
+        verify(mockFirstClient).shutdown();
+        verify(mockFirstClient, never()).getObject("bucket", "key");
+        verify(mockSecondClient).getObject("bucket", "key");
+    }
+
+    @Test
+    public void shutdown_doesNotBuildClient() {
+        givenClients();
+
+        cut.shutdown();
+
+        verify(mockClientProvider, never()).get();
+    }
+
+    // GIVENs
+    private void givenClients() {
+        given(mockClientProvider.get()).willReturn(mockFirstClient, mockSecondClient);
+        cut = new ManagedAmazonS3(mockClientProvider);
+    }
+}
@@ -0,0 +1,24 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+
+import java.util.Map;
+
+/**
+ * Builds the components of the function without AWS: the S3 client is given, and the configuration is read from the
+ * given settings instead of environment variables.
+ */
+class OfflineComponents {
+
+    private OfflineComponents() {
+    }
+
+    /**
+     * @param settings The configuration, keyed by environment variable name (e.g. GRAYLOG_HOST).
+     */
+    static S3ProcessorComponents create(Map<String, String> settings, AmazonS3 s3Client) {
+        return new S3ProcessorComponents(S3ProcessorComponents.readConfiguration(new InMemoryRepository(settings)),
+                                         () -> s3Client);
+    }
+}
@@ -0,0 +1,222 @@
+package org.graylog.integrations.s3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelGzipInputStreamTest {
+    private static final int CHUNK_SIZE = 4096;
+
+    // Code Under Test
+    private ParallelGzipInputStream cut;
+
+    // Test Objects
+    private ExecutorService executor;
+    private final AtomicInteger submittedChunks = new AtomicInteger();
+    private final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() {
+        executor = new CountingExecutor(Executors.newFixedThreadPool(3), submittedChunks);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Test Cases
+    @Test
+    public void testMembersAreInflatedInParallelAndInOrder() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            givenMember(randomLines(random.nextInt(200)), Deflater.DEFAULT_COMPRESSION);
+        }
+
+        final byte[] output = whenStreamIsRead(new ByteArrayInputStream(compressed.toByteArray()));
+
+        assertArrayEquals(expected.toByteArray(), output);
+        assertTrue(submittedChunks.get() > 1);
+    }
+
+    @Test
+    public void testFalseMemberHeaderInsideCompressedData() throws IOException {
+        // Stored (uncompressed) deflate blocks contain the data as is, so the member header inside the data is found
+        // when the input is cut into chunks.
+        final byte[] fakeHeader = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        for (int i = 0; i < 20; i++) {
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int j = 0; j < 100; j++) {
+                data.write(randomLines(1));
+                data.write(fakeHeader);
+            }
+            givenMember(data.toByteArray(), Deflater.NO_COMPRESSION);
+        }
+
+        final byte[] output = whenStreamIsRead(new ByteArrayInputStream(compressed.toByteArray()));
+
+        assertArrayEquals(expected.toByteArray(), output);
+    }
+
+    @Test
+    public void testSingleMemberIsInflatedSerially() throws IOException {
+        givenMember(randomLines(20000), Deflater.DEFAULT_COMPRESSION);
+
+        final byte[] output = whenStreamIsRead(new ByteArrayInputStream(compressed.toByteArray()));
+
+        assertArrayEquals(expected.toByteArray(), output);
+        assertEquals(0, submittedChunks.get());
+    }
+
+    @Test
+    public void testLargeMemberAfterSmallMembers() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            givenMember(randomLines(100), Deflater.DEFAULT_COMPRESSION);
+        }
+        givenMember(randomLines(20000), Deflater.NO_COMPRESSION);
+        givenMember(randomLines(100), Deflater.DEFAULT_COMPRESSION);
+
+        // A slow network stream which never reports available bytes.
+        final InputStream input = new ByteArrayInputStream(compressed.toByteArray()) {
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        final byte[] output = whenStreamIsRead(input);
+
+        assertArrayEquals(expected.toByteArray(), output);
+    }
+
+    @Test
+    public void testTrailingGarbageIsIgnored() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            givenMember(randomLines(100), Deflater.DEFAULT_COMPRESSION);
+        }
+        compressed.write(new byte[100]);
+
+        final byte[] output = whenStreamIsRead(new ByteArrayInputStream(compressed.toByteArray()));
+
+        assertArrayEquals(expected.toByteArray(), output);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedStream() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            givenMember(randomLines(100), Deflater.DEFAULT_COMPRESSION);
+        }
+        final byte[] bytes = compressed.toByteArray();
+
+        whenStreamIsRead(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 20)));
+    }
+
+    // GIVENs
+    private void givenMember(byte[] data, int level) throws IOException {
+        expected.write(data);
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(level);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // Keep the underlying stream open for the next member.
+                finish();
+            }
+        }) {
+            output.write(data);
+        }
+    }
+
+    private byte[] randomLines(int count) {
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("line ").append(random.nextInt()).append(" of ").append(count).append('\n');
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // WHENs
+    private byte[] whenStreamIsRead(InputStream input) throws IOException {
+        cut = new ParallelGzipInputStream(input, executor, CHUNK_SIZE, 3, 1024);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[777];
+        int read;
+        while ((read = cut.read(buffer, 0, buffer.length)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        cut.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Counts the chunks handed to the pool.
+     */
+    private static class CountingExecutor extends AbstractExecutorService {
+        private final ExecutorService pool;
+        private final AtomicInteger submitted;
+
+        CountingExecutor(ExecutorService pool, AtomicInteger submitted) {
+            this.pool = pool;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            pool.execute(command);
+        }
+
+        @Override
+        public void shutdown() {
+            pool.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return pool.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return pool.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return pool.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return pool.awaitTermination(timeout, unit);
+        }
+    }
+}
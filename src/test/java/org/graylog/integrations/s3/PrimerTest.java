@@ -0,0 +1,102 @@
+package org.graylog.integrations.s3;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import org.graylog.integrations.s3.codec.S3Codec;
+import org.graylog.integrations.s3.codec.S3CodecFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrimerTest {
+
+    // Code Under Test
+    private Primer cut;
+
+    // Test Objects
+    private final Map<String, String> settings = new HashMap<>();
+    private final AtomicInteger decodedLines = new AtomicInteger();
+    private long primedMessages;
+
+    public PrimerTest() {
+        settings.put("GRAYLOG_HOST", "graylog");
+    }
+
+    // Test Cases
+    @Test
+    public void testPlainTextIsPrimed() throws IOException, InterruptedException {
+        givenSetting("PRIMING_MESSAGES", "1000");
+        givenPrimer();
+
+        whenPrimeIsCalled();
+
+        thenPrimedMessagesAre(1000);
+    }
+
+    @Test
+    public void testGeneratedMessagesDecodeAsCloudflareLogs() throws IOException, InterruptedException {
+        givenSetting("PRIMING_MESSAGES", "1000");
+        givenSetting("CONTENT_TYPE", ContentType.CLOUD_FLARE_LOG.getType());
+        givenSetting("COMPRESSION_TYPE", CompressionType.GZIP.getType());
+        givenPrimer();
+
+        whenPrimeIsCalled();
+
+        thenPrimedMessagesAre(1000);
+    }
+
+    @Test
+    public void testGeneratedMessagesDecodeAsJson() throws IOException, InterruptedException {
+        givenSetting("PRIMING_MESSAGES", "1000");
+        givenSetting("CONTENT_TYPE", ContentType.APPLICATION_JSON.getType());
+        givenSetting("COMPRESSION_TYPE", CompressionType.AUTO.getType());
+        givenPrimer();
+
+        whenPrimeIsCalled();
+
+        thenPrimedMessagesAre(1000);
+    }
+
+    @Test
+    public void testPrimingCanBeDisabled() throws IOException, InterruptedException {
+        givenSetting("PRIMING_MESSAGES", "0");
+        givenPrimer();
+
+        whenPrimeIsCalled();
+
+        thenPrimedMessagesAre(0);
+    }
+
+    // GIVENs
+    private void givenSetting(String name, String value) {
+        settings.put(name, value);
+    }
+
+    private void givenPrimer() {
+        final Configuration config = S3ProcessorComponents.readConfiguration(new InMemoryRepository(settings));
+        final S3Codec codec = new S3CodecFactory(config, ObjectMapper::new).get();
+        // Counts the lines which were passed to the codec, whether or not they decoded.
+        final S3Codec countingCodec = (line, offset, length, context, writer) -> {
+            decodedLines.incrementAndGet();
+            codec.decode(line, offset, length, context, writer);
+        };
+        cut = new Primer(config, countingCodec, new S3ScannerFactory(config), null);
+    }
+
+    // WHENs
+    private void whenPrimeIsCalled() throws IOException, InterruptedException {
+        primedMessages = cut.prime();
+    }
+
+    // THENs
+    private void thenPrimedMessagesAre(int messages) {
+        // Lines which fail to decode are not counted as primed.
+        assertEquals(messages, primedMessages);
+        assertEquals(messages, decodedLines.get());
+    }
+}
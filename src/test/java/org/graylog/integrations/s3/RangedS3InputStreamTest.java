@@ -0,0 +1,158 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RangedS3InputStreamTest {
+    private static final String TEST_BUCKET_NAME = "bucket";
+    private static final String TEST_OBJECT_KEY = "key";
+    private static final String TEST_ETAG = "etag";
+
+    // Code Under Test
+    private RangedS3InputStream cut;
+
+    // Mock Objects
+    @Mock AmazonS3 mockS3Client;
+
+    // Test Objects
+    private ExecutorService executor;
+    private byte[] objectContent;
+    private byte[] output;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Test Cases
+    @Test
+    public void testContentIsReassembledInOrder() throws IOException {
+        givenObject(10_000);
+        givenStubbedS3Client();
+        givenStream(128, 3);
+
+        whenStreamIsReadFully();
+
+        assertArrayEquals(objectContent, output);
+        thenRangesWereRequested(79);
+    }
+
+    @Test
+    public void testLinesSpanningChunksAreJoined() throws IOException {
+        objectContent = "first line\nsecond line\nthird line\n".getBytes(StandardCharsets.UTF_8);
+        givenStubbedS3Client();
+        givenStream(7, 4);
+
+        final List<String> lines = new ArrayList<>();
+        try (LineReader lineReader = new LineReader(cut, 1024)) {
+            String line;
+            while ((line = lineReader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+
+        assertEquals(Arrays.asList("first line", "second line", "third line"), lines);
+    }
+
+    @Test
+    public void testSingleChunkObject() throws IOException {
+        givenObject(100);
+        givenStubbedS3Client();
+        givenStream(1024, 4);
+
+        whenStreamIsReadFully();
+
+        assertArrayEquals(objectContent, output);
+        thenRangesWereRequested(1);
+    }
+
+    @Test(expected = IOException.class)
+    public void testChangedObjectFails() throws IOException {
+        givenObject(1000);
+        given(mockS3Client.getObject(any(GetObjectRequest.class))).willReturn(null);
+        givenStream(100, 2);
+
+        whenStreamIsReadFully();
+    }
+
+    // GIVENs
+    private void givenObject(int size) {
+        objectContent = new byte[size];
+        for (int i = 0; i < size; i++) {
+            objectContent[i] = (byte) (i % 251);
+        }
+    }
+
+    private void givenStubbedS3Client() {
+        given(mockS3Client.getObject(any(GetObjectRequest.class))).willAnswer(invocation -> {
+            final GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+            final long[] range = request.getRange();
+            final S3Object s3Object = new S3Object();
+            s3Object.setObjectContent(new ByteArrayInputStream(Arrays.copyOfRange(objectContent, (int) range[0],
+                                                                                  (int) range[1] + 1)));
+            return s3Object;
+        });
+    }
+
+    private void givenStream(int chunkSize, int parallelism) {
+        cut = new RangedS3InputStream(mockS3Client, TEST_BUCKET_NAME, TEST_OBJECT_KEY, TEST_ETAG, objectContent.length,
+                                      chunkSize, parallelism, executor);
+    }
+
+    // WHENs
+    private void whenStreamIsReadFully() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = cut) {
+            final byte[] buffer = new byte[100];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        output = outputStream.toByteArray();
+    }
+
+    // THENs
+    private void thenRangesWereRequested(int requestCount) {
+        final ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(mockS3Client, atLeastOnce()).getObject(captor.capture());
+        assertEquals(requestCount, captor.getAllValues().size());
+        for (GetObjectRequest request : captor.getAllValues()) {
+            assertEquals(TEST_BUCKET_NAME, request.getBucketName());
+            assertEquals(TEST_OBJECT_KEY, request.getKey());
+            assertEquals(Arrays.asList(TEST_ETAG), request.getMatchingETagConstraints());
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package org.graylog.integrations.s3;
 
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.S3Object;
+import org.graylog.integrations.s3.checkpoint.Checkpoint;
+import org.graylog.integrations.s3.checkpoint.CheckpointStore;
+import org.graylog.integrations.s3.codec.DecodeContext;
 import org.graylog.integrations.s3.codec.S3Codec;
-import org.graylog2.gelfclient.GelfMessage;
-import org.graylog2.gelfclient.transport.GelfTransport;
+import org.graylog.integrations.s3.deadletter.DeadLetterSink;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.gelf.GelfWriter;
+import org.graylog.integrations.s3.idempotency.IdempotencyCache;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.graylog.integrations.s3.transport.GelfFrameTransport;
+import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -14,8 +21,11 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import static org.mockito.BDDMockito.*;
@@ -24,6 +34,7 @@ import static org.mockito.BDDMockito.*;
 public class S3EventProcessorTest {
     private static final String TEST_BUCKET_NAME = "bucket";
     private static final String TEST_OBJECT_KEY = "key";
+    private static final String TEST_FAILING_OBJECT_KEY = "failing-key";
     private static final String TEST_DATA_LINE = "This is a line of test data";
 
     @Rule public ExpectedException thrown = ExpectedException.none();
@@ -33,26 +44,39 @@ public class S3EventProcessorTest {
 
     // Mock Objects
     @Mock Configuration mockConfig;
-    @Mock GelfTransport mockTransport;
-    @Mock AmazonS3 mockS3Client;
+    @Mock GelfFrameTransport mockTransport;
+    @Mock S3ObjectFetcher mockObjectFetcher;
     @Mock S3Codec mockS3Codec;
     @Mock S3ScannerFactory mockS3ScannerFactory;
+    @Mock DeadLetterSink mockDeadLetterSink;
+    @Mock IdempotencyCache mockIdempotencyCache;
+    @Mock CheckpointStore mockCheckpointStore;
+    @Mock StageMetrics mockMetrics;
     @Mock S3EventNotification.S3BucketEntity mockBucketEntity;
     @Mock S3EventNotification.S3ObjectEntity mockObjectEntity;
-    @Mock S3Object mockS3Object;
-    Scanner fauxScanner;
-    @Mock GelfMessage mockMessage;
+    @Mock S3EventNotification.S3Entity mockFailingEntity;
+    @Mock S3EventNotification.S3ObjectEntity mockFailingObjectEntity;
+    @Mock S3ObjectContent mockObjectContent;
+    LineReader fauxLineReader;
+    @Mock S3EventNotification.S3EventNotificationRecord mockRecord;
+    @Mock S3EventNotification.S3EventNotificationRecord mockFailingRecord;
 
 
     // Test Objects
     @Mock
     S3EventNotification.S3Entity entity;
 
+    @Before
+    public void setUp() {
+        given(mockTransport.newFrame()).willAnswer(invocation -> new GelfFrame());
+        given(mockTransport.flush(anyInt(), any(TimeUnit.class), anyInt())).willReturn(true);
+    }
+
     // Test Cases
     @Test
     public void testHappyPath() throws IOException, InterruptedException {
         givenGoodS3Entity();
-        givenGoodS3Client();
+        givenGoodObjectFetcher();
         givenGoodScannerFactory(5);
         givenGoodCodec();
 
@@ -66,7 +90,7 @@ public class S3EventProcessorTest {
     @Test
     public void testEmptyS3Object() throws IOException, InterruptedException {
         givenGoodS3Entity();
-        givenGoodS3Client();
+        givenGoodObjectFetcher();
         givenGoodScannerFactory(0);
         givenGoodCodec();
 
@@ -80,7 +104,7 @@ public class S3EventProcessorTest {
     @Test
     public void testCodecFailsToDecode() throws IOException, InterruptedException {
         givenGoodS3Entity();
-        givenGoodS3Client();
+        givenGoodObjectFetcher();
         givenGoodScannerFactory(10);
         givenCodecFails();
 
@@ -89,12 +113,13 @@ public class S3EventProcessorTest {
         thenDecodeWillBeCalled(1);
         thenTransportSendAttempted(0);
         thenGelfTransportWillBeFlushed();
+        thenDeadLettersWillBeFlushed(1);
     }
 
     @Test
     public void testTransportFailsToSend() throws IOException, InterruptedException {
         givenGoodS3Entity();
-        givenGoodS3Client();
+        givenGoodObjectFetcher();
         givenGoodScannerFactory(10);
         givenGoodCodec();
         givenTransportFails();
@@ -109,7 +134,7 @@ public class S3EventProcessorTest {
     @Test
     public void testUnexpectedCodecFailure() throws IOException, InterruptedException {
         givenGoodS3Entity();
-        givenGoodS3Client();
+        givenGoodObjectFetcher();
         givenGoodScannerFactory(10);
         givenRandomCodecFailure();
 
@@ -120,16 +145,78 @@ public class S3EventProcessorTest {
         thenGelfTransportWillBeFlushed();
     }
 
+    @Test
+    public void testFailingRecordDoesNotAffectOtherRecords() throws IOException, InterruptedException {
+        givenGoodS3Entity();
+        givenGoodObjectFetcher();
+        givenGoodScannerFactory(5);
+        givenGoodCodec();
+        givenFailingRecord();
+
+        whenProcessS3RecordsIsCalled();
+
+        thenDecodeWillBeCalled(5);
+        thenTransportSendAttempted(5);
+        thenGelfTransportWillBeFlushed();
+    }
+
+    @Test
+    public void testObjectIsMarkedProcessedOnceSent() throws IOException, InterruptedException {
+        givenGoodS3Entity();
+        givenGoodObjectFetcher();
+        givenGoodScannerFactory(5);
+        givenGoodCodec();
+
+        final boolean complete = cut.processS3Records(Collections.singletonList(mockRecord));
+
+        Assert.assertTrue(complete);
+        verify(mockIdempotencyCache).markProcessed(anyString());
+    }
+
+    @Test
+    public void testObjectIsNotMarkedProcessedWhenFlushTimesOut() throws IOException, InterruptedException {
+        givenGoodS3Entity();
+        givenGoodObjectFetcher();
+        givenGoodScannerFactory(5);
+        givenGoodCodec();
+        givenFlushTimesOut();
+
+        final boolean complete = cut.processS3Records(Collections.singletonList(mockRecord));
+
+        Assert.assertFalse(complete);
+        thenTransportSendAttempted(5);
+        verify(mockIdempotencyCache, never()).markProcessed(anyString());
+    }
+
+    @Test
+    public void testFailedRecordIsNotCheckpointedAsComplete() throws IOException, InterruptedException {
+        givenGoodS3Entity();
+        givenGoodObjectFetcher();
+        givenGoodScannerFactory(5);
+        givenGoodCodec();
+        givenCheckpointsEnabled();
+        givenUnreadableRecord();
+
+        // The deadline is reached after the first line of the good record.
+        final boolean complete = cut.processS3Records(Arrays.asList(mockFailingRecord, mockRecord), () -> true);
+
+        Assert.assertFalse(complete);
+        verify(mockCheckpointStore).save(eq(TEST_BUCKET_NAME), eq(TEST_OBJECT_KEY), any(Checkpoint.class));
+        verify(mockCheckpointStore, never()).save(eq(TEST_BUCKET_NAME), eq(TEST_FAILING_OBJECT_KEY),
+                                                  any(Checkpoint.class));
+    }
+
     // GIVENs
     private void givenGoodS3Entity() {
+        given(mockRecord.getS3()).willReturn(entity);
         given(entity.getBucket()).willReturn(mockBucketEntity);
         given(mockBucketEntity.getName()).willReturn(TEST_BUCKET_NAME);
         given(entity.getObject()).willReturn(mockObjectEntity);
         given(mockObjectEntity.getKey()).willReturn(TEST_OBJECT_KEY);
     }
 
-    private void givenGoodS3Client() {
-        given(mockS3Client.getObject(TEST_BUCKET_NAME, TEST_OBJECT_KEY)).willReturn(mockS3Object);
+    private void givenGoodObjectFetcher() throws IOException {
+        given(mockObjectFetcher.getObjectContent(TEST_BUCKET_NAME, mockObjectEntity)).willReturn(mockObjectContent);
     }
 
     private void givenGoodScannerFactory(int lineCount) throws IOException {
@@ -137,41 +224,83 @@ public class S3EventProcessorTest {
         for (int i = 0; i < lineCount; i++) {
             data.append(TEST_DATA_LINE).append("\n");
         }
-        fauxScanner = new Scanner(data.toString());
-        given(mockS3ScannerFactory.getScanner(mockS3Object)).willReturn(fauxScanner);
+        fauxLineReader = new LineReader(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8)), 1024);
+        given(mockS3ScannerFactory.getLineReader(mockObjectContent, TEST_OBJECT_KEY, null)).willReturn(fauxLineReader);
     }
 
     private void givenGoodCodec() throws IOException {
-        given(mockS3Codec.decode(anyString())).willReturn(mockMessage);
+        willAnswer(invocation -> {
+            final GelfWriter writer = (GelfWriter) invocation.getArguments()[4];
+            writer.finish(TEST_DATA_LINE, GelfWriter.DEFAULT_HOST, 0);
+            return null;
+        }).given(mockS3Codec).decode(any(byte[].class), anyInt(), anyInt(), any(DecodeContext.class),
+                                     any(GelfWriter.class));
     }
 
     private void givenCodecFails() throws IOException {
-        given(mockS3Codec.decode(anyString())).willThrow(new IOException());
+        willThrow(new IOException()).given(mockS3Codec).decode(any(byte[].class), anyInt(), anyInt(),
+                                                               any(DecodeContext.class), any(GelfWriter.class));
     }
 
     private void givenRandomCodecFailure() throws IOException {
-        given(mockS3Codec.decode(anyString())).willThrow(new RuntimeException());
+        willThrow(new RuntimeException()).given(mockS3Codec).decode(any(byte[].class), anyInt(), anyInt(),
+                                                                    any(DecodeContext.class), any(GelfWriter.class));
     }
 
     private void givenTransportFails() throws InterruptedException {
-        doThrow(new InterruptedException()).when(mockTransport).send(mockMessage);
+        doThrow(new InterruptedException()).when(mockTransport).send(any(GelfFrame.class));
+    }
+
+    private void givenFlushTimesOut() {
+        given(mockTransport.flush(anyInt(), any(TimeUnit.class), anyInt())).willReturn(false);
+    }
+
+    private void givenCheckpointsEnabled() {
+        given(mockConfig.getCheckpointBucket()).willReturn("checkpoints");
+    }
+
+    private void givenUnreadableRecord() throws IOException {
+        given(mockFailingRecord.getS3()).willReturn(mockFailingEntity);
+        given(mockFailingEntity.getBucket()).willReturn(mockBucketEntity);
+        given(mockFailingEntity.getObject()).willReturn(mockFailingObjectEntity);
+        given(mockFailingObjectEntity.getKey()).willReturn(TEST_FAILING_OBJECT_KEY);
+        given(mockObjectFetcher.getObjectContent(TEST_BUCKET_NAME, mockFailingObjectEntity))
+                .willThrow(new IllegalStateException("Access denied"));
+    }
+
+    private void givenFailingRecord() {
+        given(mockFailingRecord.getS3()).willThrow(new IllegalStateException("Broken record"));
     }
 
     // WHENs
     private void whenProcessS3EventIsCalled() {
-        cut.processS3Event(entity);
+        cut.processS3Records(Collections.singletonList(mockRecord));
+    }
+
+    private void whenProcessS3RecordsIsCalled() {
+        cut.processS3Records(Arrays.asList(mockFailingRecord, mockRecord));
     }
 
     // THENs
     private void thenDecodeWillBeCalled(int callCount) throws IOException {
-        verify(mockS3Codec, times(callCount)).decode(TEST_DATA_LINE);
+        verify(mockS3Codec, times(callCount)).decode(any(byte[].class), anyInt(), eq(TEST_DATA_LINE.length()),
+                                                     any(DecodeContext.class), any(GelfWriter.class));
     }
 
     private void thenTransportSendAttempted(int messageCount) throws InterruptedException {
-        verify(mockTransport, times(messageCount)).send(mockMessage);
+        verify(mockTransport, times(messageCount)).send(any(GelfFrame.class));
     }
 
     private void thenGelfTransportWillBeFlushed() {
-        verify(mockTransport, times(1)).flushAndStopSynchronously(anyInt(), any(TimeUnit.class), anyInt());
+        verify(mockTransport, times(1)).flush(anyInt(), any(TimeUnit.class), anyInt());
+        // The transport stays open for the next invocation.
+        verify(mockTransport, never()).flushAndStopSynchronously(anyInt(), any(TimeUnit.class), anyInt());
+        verify(mockTransport, never()).stop();
+    }
+
+    private void thenDeadLettersWillBeFlushed(int deadLetterCount) throws IOException {
+        verify(mockDeadLetterSink, times(deadLetterCount)).add(eq(TEST_OBJECT_KEY), eq(TEST_DATA_LINE),
+                                                               any(IOException.class));
+        verify(mockDeadLetterSink).flush();
     }
 }
@@ -0,0 +1,148 @@
+package org.graylog.integrations.s3;
+
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import com.google.common.io.ByteStreams;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class S3ObjectFetcherTest {
+    private static final String TEST_BUCKET_NAME = "bucket";
+    private static final String TEST_OBJECT_KEY = "key";
+    private static final int CHUNK_SIZE = 256;
+
+    // Code Under Test
+    private S3ObjectFetcher cut;
+
+    // Test Objects
+    private final RecordingAmazonS3 s3Client = new RecordingAmazonS3();
+    private byte[] objectContent;
+    private S3ObjectContent content;
+
+    // Test Cases
+    @Test
+    public void testAutoReadsLargeUncompressedObjectsWithRangedGets() throws IOException {
+        givenObject(CompressionType.NONE);
+        givenFetcher(CompressionType.AUTO);
+
+        whenObjectIsRead(0);
+
+        thenContentIs(objectContent);
+        thenDetectionWasRequested();
+        thenOnlyChunksWereRequestedAfter(1, 0);
+    }
+
+    @Test
+    public void testAutoReadsLargeCompressedObjectsWithOneGet() throws IOException {
+        givenObject(CompressionType.GZIP);
+        givenFetcher(CompressionType.AUTO);
+
+        whenObjectIsRead(0);
+
+        thenContentIs(objectContent);
+        thenDetectionWasRequested();
+        assertEquals(2, s3Client.requests.size());
+        assertNull(s3Client.requests.get(1).getRange());
+    }
+
+    @Test
+    public void testUncompressedObjectsAreNotDetected() throws IOException {
+        givenObject(CompressionType.NONE);
+        givenFetcher(CompressionType.NONE);
+
+        whenObjectIsRead(0);
+
+        thenContentIs(objectContent);
+        thenOnlyChunksWereRequestedAfter(0, 0);
+    }
+
+    @Test
+    public void testAutoResumesUncompressedObjectsAtPosition() throws IOException {
+        givenObject(CompressionType.NONE);
+        givenFetcher(CompressionType.AUTO);
+
+        whenObjectIsRead(1000);
+
+        assertEquals(1000, content.getStartOffset());
+        thenContentIs(Arrays.copyOfRange(objectContent, 1000, objectContent.length));
+        thenDetectionWasRequested();
+        thenOnlyChunksWereRequestedAfter(1, 1000);
+    }
+
+    // GIVENs
+    private void givenObject(CompressionType compressionType) throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; lines.length() < 4000; i++) {
+            lines.append("{\"line\":").append(i).append(",\"message\":\"a message which is not very short\"}\n");
+        }
+        objectContent = GraylogS3FunctionTest.encode(lines.toString(), compressionType);
+        s3Client.addObject(TEST_BUCKET_NAME, TEST_OBJECT_KEY, objectContent);
+    }
+
+    private void givenFetcher(CompressionType compressionType) {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "localhost");
+        settings.put("COMPRESSION_TYPE", compressionType.getType());
+        settings.put("RANGED_GET_THRESHOLD", "100");
+        settings.put("RANGED_GET_CHUNK_SIZE", String.valueOf(CHUNK_SIZE));
+        settings.put("RANGED_GET_PARALLELISM", "4");
+        cut = new S3ObjectFetcher(S3ProcessorComponents.readConfiguration(new InMemoryRepository(settings)),
+                                  s3Client, new StageMetrics());
+    }
+
+    // WHENs
+    private void whenObjectIsRead(long position) throws IOException {
+        final S3EventNotification.S3ObjectEntity s3Object =
+                s3Client.buildRecord(TEST_BUCKET_NAME, TEST_OBJECT_KEY).getS3().getObject();
+        content = cut.getObjectContent(TEST_BUCKET_NAME, s3Object, position);
+    }
+
+    // THENs
+    private void thenContentIs(byte[] expected) throws IOException {
+        try (S3ObjectContent closeable = content) {
+            assertArrayEquals(expected, ByteStreams.toByteArray(closeable));
+        }
+    }
+
+    private void thenDetectionWasRequested() {
+        assertArrayEquals(new long[]{0, CompressionDetector.MAGIC_LENGTH - 1}, s3Client.requests.get(0).getRange());
+    }
+
+    /**
+     * @param firstChunkRequest The index of the request for the first chunk.
+     * @param start             The position of the first chunk.
+     */
+    private void thenOnlyChunksWereRequestedAfter(int firstChunkRequest, long start) {
+        final List<GetObjectRequest> chunkRequests = s3Client.requests.subList(firstChunkRequest,
+                                                                               s3Client.requests.size());
+        assertEquals((objectContent.length - start + CHUNK_SIZE - 1) / CHUNK_SIZE, chunkRequests.size());
+        // The chunks are requested concurrently, so not necessarily in order.
+        final long[] chunkStarts = chunkRequests.stream().mapToLong(request -> request.getRange()[0]).sorted().toArray();
+        for (int i = 0; i < chunkStarts.length; i++) {
+            assertEquals(start + (long) i * CHUNK_SIZE, chunkStarts[i]);
+        }
+    }
+
+    private static class RecordingAmazonS3 extends InMemoryAmazonS3 {
+        private final List<GetObjectRequest> requests = new CopyOnWriteArrayList<>();
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            requests.add(request);
+            return super.getObject(request);
+        }
+    }
+}
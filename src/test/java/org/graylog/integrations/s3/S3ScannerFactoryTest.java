@@ -0,0 +1,96 @@
+package org.graylog.integrations.s3;
+
+import com.github.joschi.jadconfig.JadConfig;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class S3ScannerFactoryTest {
+    private static final String TEST_OBJECT_KEY = "key";
+    private static final String TEST_LINES = "first line\nsecond line\n";
+
+    // Code Under Test
+    private S3ScannerFactory cut;
+
+    // Test Cases
+    @Test
+    public void testConfiguredCompression() throws Exception {
+        for (CompressionType compressionType : CompressionType.values()) {
+            givenCompressionType(compressionType);
+
+            final List<String> lines = whenLinesAreRead(GraylogS3FunctionTest.encode(TEST_LINES, compressionType),
+                                                        null);
+
+            assertEquals(compressionType.getType(), TEST_LINES, String.join("", lines));
+        }
+    }
+
+    @Test
+    public void testAutoDetectsEveryCompression() throws Exception {
+        givenCompressionType(CompressionType.AUTO);
+
+        for (CompressionType compressionType : CompressionType.values()) {
+            // Writers like pigz, pzstd and pbzip2 concatenate several compressed streams.
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            content.write(GraylogS3FunctionTest.encode(TEST_LINES, compressionType));
+            content.write(GraylogS3FunctionTest.encode(TEST_LINES, compressionType));
+
+            final List<String> lines = whenLinesAreRead(content.toByteArray(), null);
+
+            assertEquals(compressionType.getType(), TEST_LINES + TEST_LINES, String.join("", lines));
+        }
+    }
+
+    @Test
+    public void testAutoReadsUncompressedContentDespiteMetadata() throws Exception {
+        givenCompressionType(CompressionType.AUTO);
+
+        // Starts like bzip2, but without the block magic.
+        final String lines = "BZh91AY text\nsecond line\n";
+        assertEquals(lines, String.join("", whenLinesAreRead(lines.getBytes(StandardCharsets.UTF_8), "gzip")));
+        assertEquals(Collections.emptyList(), whenLinesAreRead(new byte[0], "zstd"));
+    }
+
+    @Test
+    public void testMetadataDetection() {
+        assertEquals(CompressionType.GZIP, CompressionDetector.detectFromMetadata("logs/a.json", "x-gzip"));
+        assertEquals(CompressionType.ZSTD, CompressionDetector.detectFromMetadata("logs/a.json.ZST", null));
+        assertEquals(CompressionType.BZIP2, CompressionDetector.detectFromMetadata("logs/a.json.bz2", "identity"));
+        assertEquals(CompressionType.SNAPPY, CompressionDetector.detectFromMetadata("logs/a.json.sz", null));
+        assertEquals(CompressionType.NONE, CompressionDetector.detectFromMetadata("logs/a.json", null));
+    }
+
+    // GIVENs
+    private void givenCompressionType(CompressionType compressionType) throws Exception {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "localhost");
+        settings.put("COMPRESSION_TYPE", compressionType.getType());
+        final Configuration config = new Configuration();
+        new JadConfig(new InMemoryRepository(settings), config).process();
+        cut = new S3ScannerFactory(config);
+    }
+
+    // WHENs
+    private List<String> whenLinesAreRead(byte[] content, String contentEncoding) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (LineReader lineReader = cut.getLineReader(new ByteArrayInputStream(content), TEST_OBJECT_KEY,
+                                                       contentEncoding)) {
+            String line;
+            while ((line = lineReader.readLine()) != null) {
+                lines.add(line + "\n");
+            }
+        }
+        return lines;
+    }
+}
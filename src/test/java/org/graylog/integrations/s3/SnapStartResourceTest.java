@@ -0,0 +1,68 @@
+package org.graylog.integrations.s3;
+
+import org.graylog.integrations.s3.transport.ManagedGelfTransport;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SnapStartResourceTest {
+
+    // Code Under Test
+    @InjectMocks
+    private SnapStartResource cut;
+
+    // Mocks
+    @Mock Configuration mockConfig;
+    @Mock Primer mockPrimer;
+    @Mock ManagedGelfTransport mockGelfTransport;
+    @Mock ManagedAmazonS3 mockS3Client;
+
+    // Test Cases
+    @Test
+    public void beforeCheckpoint_primesAndClosesConnections() throws IOException, InterruptedException {
+        whenBeforeCheckpointIsCalled();
+
+        verify(mockPrimer).prime();
+        thenConnectionsAreClosed();
+    }
+
+    @Test
+    public void beforeCheckpoint_closesConnections_whenPrimingFails() throws IOException, InterruptedException {
+        given(mockPrimer.prime()).willThrow(new IOException("Broken"));
+
+        whenBeforeCheckpointIsCalled();
+
+        thenConnectionsAreClosed();
+    }
+
+    @Test
+    public void afterRestore_reopensS3Client() throws IOException, InterruptedException {
+        cut.afterRestore(null);
+
+        verify(mockS3Client).open();
+        verify(mockPrimer, never()).prime();
+    }
+
+    // WHENs
+    private void whenBeforeCheckpointIsCalled() {
+        cut.beforeCheckpoint(null);
+    }
+
+    // THENs
+    private void thenConnectionsAreClosed() {
+        verify(mockGelfTransport).flushAndStopSynchronously(anyInt(), eq(TimeUnit.MILLISECONDS), anyInt());
+        verify(mockS3Client).shutdown();
+    }
+}
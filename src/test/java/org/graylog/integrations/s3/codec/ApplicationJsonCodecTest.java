@@ -1,23 +1,35 @@
 package org.graylog.integrations.s3.codec;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.graylog.integrations.s3.Configuration;
 import org.graylog2.gelfclient.GelfMessage;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
-@RunWith(MockitoJUnitRunner.class)
 public class ApplicationJsonCodecTest {
 
+    private static final String NESTED_JSON = "{\"a\":{\"b\":1,\"c\":[1,2.5,{\"d\":true}]},\"e\":null,\"f\":{},\"g\":[]," +
+                                              "\"h_i\":\"x\",\"m\":12345678901234567890,\"p\":[[1,\"two\"],[]]}";
+
     // Code Under Test
-    @InjectMocks
     private ApplicationJsonCodec cut;
 
+    // Test Objects
+    private Configuration config;
+
+    @Before
+    public void setUp() {
+        config = new Configuration();
+        cut = new ApplicationJsonCodec(config, new ObjectMapper());
+    }
+
     /**
      * Verify that JSON is flattened out.
      *
@@ -85,4 +97,65 @@ public class ApplicationJsonCodecTest {
         Assert.assertEquals("2.0", decodedMessage.getAdditionalFields().get("Records[2]_eventVersion"));
     }
 
+    @Test
+    public void testFlatteningKeysAndValues() throws IOException {
+        final Map<String, Object> fields = cut.decode(NESTED_JSON).getAdditionalFields();
+
+        Assert.assertEquals(1, fields.get("a_b"));
+        Assert.assertEquals(1, fields.get("a_c[0]"));
+        Assert.assertEquals(2.5, fields.get("a_c[1]"));
+        Assert.assertEquals(true, fields.get("a_c[2]_d"));
+        Assert.assertEquals("x", fields.get("h_i"));
+        Assert.assertEquals(new BigInteger("12345678901234567890"), fields.get("m"));
+        Assert.assertEquals(1, fields.get("p[0][0]"));
+        Assert.assertEquals("two", fields.get("p[0][1]"));
+        // Null values and empty objects or arrays have no GELF representation.
+        Assert.assertEquals(8, fields.size());
+    }
+
+    @Test
+    public void testScalarAndArrayDocuments() throws IOException {
+        Assert.assertEquals("text", cut.decode("\"text\"").getAdditionalFields().get("root"));
+        Assert.assertEquals(2, cut.decode("[1,2]").getAdditionalFields().get("[1]"));
+    }
+
+    @Test
+    public void testMaxDepth() throws IOException {
+        config.setJsonMaxDepth(2);
+        cut = new ApplicationJsonCodec(config, new ObjectMapper());
+
+        final Map<String, Object> fields = cut.decode(NESTED_JSON).getAdditionalFields();
+
+        // The document and the objects and arrays directly inside it are flattened.
+        Assert.assertEquals(1, fields.get("a_b"));
+        Assert.assertEquals("x", fields.get("h_i"));
+        Assert.assertFalse(fields.containsKey("a_c[0]"));
+        Assert.assertFalse(fields.containsKey("p[0][0]"));
+    }
+
+    @Test
+    public void testMaxFields() throws IOException {
+        config.setJsonMaxFields(3);
+        cut = new ApplicationJsonCodec(config, new ObjectMapper());
+
+        final Map<String, Object> fields = cut.decode(NESTED_JSON).getAdditionalFields();
+
+        Assert.assertEquals(3, fields.size());
+        Assert.assertTrue(fields.keySet().containsAll(Arrays.asList("a_b", "a_c[0]", "a_c[1]")));
+    }
+
+    @Test
+    public void testIncludeAndExcludePaths() throws IOException {
+        config.setJsonIncludePaths(Arrays.asList("a_c", "p[0][1]", "h_i"));
+        config.setJsonExcludePaths(Collections.singletonList("a_c[2]"));
+        cut = new ApplicationJsonCodec(config, new ObjectMapper());
+
+        final Map<String, Object> fields = cut.decode(NESTED_JSON).getAdditionalFields();
+
+        Assert.assertEquals(4, fields.size());
+        Assert.assertEquals(1, fields.get("a_c[0]"));
+        Assert.assertEquals(2.5, fields.get("a_c[1]"));
+        Assert.assertEquals("two", fields.get("p[0][1]"));
+        Assert.assertEquals("x", fields.get("h_i"));
+    }
 }
@@ -0,0 +1,78 @@
+package org.graylog.integrations.s3.codec;
+
+import org.graylog.integrations.s3.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CloudflareFieldPlanTest {
+
+    // Code Under Test
+    private CloudflareFieldPlan cut;
+
+    // Test Objects
+    private Configuration config;
+
+    @Before
+    public void setUp() {
+        config = new Configuration();
+        config.setMessageFields(Collections.emptyList());
+        config.setMessageSummaryFields(Collections.emptyList());
+    }
+
+    // Test Cases
+    @Test
+    public void testAllFieldsIncludedByDefault() {
+        whenPlanIsBuilt();
+
+        assertTrue(cut.get("AnyField").isIncluded());
+        assertTrue(cut.get("EdgeStartTimestamp").isIncluded());
+        assertTrue(cut.get("EdgeStartTimestamp").isMessageTimestamp());
+        assertTrue(cut.get("EdgeEndTimestamp").isTimestamp());
+        assertFalse(cut.get("EdgeEndTimestamp").isMessageTimestamp());
+        assertEquals("EdgeResponseStatusClass", cut.get("EdgeResponseStatus").getStatusClassFieldName());
+        assertEquals("OriginResponseTimeMillis", cut.get("OriginResponseTime").getResponseTimeMillisFieldName());
+        assertNull(cut.get("AnyField").getStatusClassFieldName());
+        assertEquals(-1, cut.get("AnyField").getSummarySlot());
+    }
+
+    @Test
+    public void testOnlyConfiguredFieldsIncluded() {
+        config.setMessageFields(Arrays.asList("ClientSrcPort", "EdgeEndTimestamp"));
+
+        whenPlanIsBuilt();
+
+        assertTrue(cut.get("ClientSrcPort").isIncluded());
+        assertTrue(cut.get("EdgeEndTimestamp").isIncluded());
+        assertFalse(cut.get("AnyField").isIncluded());
+        // Still used for the message timestamp.
+        assertFalse(cut.get("EdgeStartTimestamp").isIncluded());
+        assertTrue(cut.get("EdgeStartTimestamp").isMessageTimestamp());
+    }
+
+    @Test
+    public void testSummarySlots() {
+        config.setMessageSummaryFields(Arrays.asList(" ClientRequestHost", "", "OriginIP", "ClientRequestHost"));
+
+        whenPlanIsBuilt();
+
+        assertEquals(2, cut.getSummarySize());
+        assertEquals(0, cut.get("ClientRequestHost").getSummarySlot());
+        assertEquals(1, cut.get("OriginIP").getSummarySlot());
+        assertEquals("ClientRequestHost", cut.getSummaryFieldName(0));
+        assertEquals("OriginIP", cut.getSummaryFieldName(1));
+        assertTrue(cut.get("OriginIP").isIncluded());
+    }
+
+    // WHENs
+    private void whenPlanIsBuilt() {
+        cut = new CloudflareFieldPlan(config);
+    }
+}
@@ -32,7 +32,6 @@ public class CloudflareLogCodecTest {
     public void setUp() {
         config = new Configuration();
         config.setContentType(ContentType.CLOUD_FLARE_LOG);
-        cut  = new CloudflareLogCodec(config, new ObjectMapper());
     }
 
     // Test Cases
@@ -106,6 +105,18 @@ public class CloudflareLogCodecTest {
         thenOutputAdditionalFieldHasValue("EdgeResponseStatusClass", "2xx");
     }
 
+    @Test
+    public void testSummaryFollowsConfigurationOrder() throws IOException {
+        givenConfigMessageSummaryFields(Arrays.asList("EdgeResponseBytes", "Missing", "ClientRequestHost", "EdgeResponseBytes"));
+        givenInput("{\"ClientRequestHost\":\"graylog.org\",\"EdgeResponseBytes\":911,\"EdgeStartTimestamp\":1568923202}");
+
+        whenDecodeIsCalled();
+
+        thenOutputMessageIs("EdgeResponseBytes: 911 | ClientRequestHost: graylog.org");
+        thenOutputTimestampIs(Double.valueOf(1568923202));
+        thenOutputAdditionalFieldCountIs(3);
+    }
+
     // GIVENs
     private void givenInput(String input) {
         this.input = input;
@@ -121,6 +132,8 @@ public class CloudflareLogCodecTest {
 
     // WHENs
     private void whenDecodeIsCalled() throws IOException {
+        // The codec reads the configuration when it is created.
+        cut = new CloudflareLogCodec(config, new ObjectMapper());
         output = cut.decode(input);
     }
 
@@ -10,12 +10,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.inject.Provider;
+
 import static org.graylog.integrations.s3.ContentType.APPLICATION_JSON;
 import static org.graylog.integrations.s3.ContentType.CLOUD_FLARE_LOG;
 import static org.graylog.integrations.s3.ContentType.TEXT_PLAIN;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class S3CodecFactoryTest {
@@ -26,6 +30,7 @@ public class S3CodecFactoryTest {
 
     // Mocks
     @Mock Configuration mockConfig;
+    @Mock Provider<ObjectMapper> mockObjectMapperProvider;
 
     // Test objects
     private S3Codec codec;
@@ -56,11 +61,14 @@ public class S3CodecFactoryTest {
         whenGetCodecIsCalled();
 
         thenCodecInstanceOf(PlainTextCodec.class);
+        // Plain text does not need Jackson, so a cold start does not pay for it.
+        verify(mockObjectMapperProvider, never()).get();
     }
 
     // GIVENs
     private void givenContentType(ContentType contentType) {
         given(mockConfig.getContentType()).willReturn(contentType);
+        given(mockObjectMapperProvider.get()).willReturn(new ObjectMapper());
     }
 
     // WHENs
@@ -0,0 +1,108 @@
+package org.graylog.integrations.s3.deadletter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchingDeadLetterSinkTest {
+
+    // Code Under Test
+    private RecordingSink cut;
+
+    // Test Cases
+    @Test
+    public void testFullBatchesAreWritten() throws IOException {
+        cut = new RecordingSink(2);
+
+        cut.add("key", "line 1", new IOException("Broken line"));
+        cut.add("key", "line 2", new IOException("Broken line"));
+        cut.add("key", "line 3", new IOException("Broken line"));
+
+        assertEquals(1, cut.batches.size());
+        assertEquals(2, cut.batches.get(0).split("\n").length);
+
+        cut.flush();
+        assertEquals(2, cut.batches.size());
+        assertTrue(cut.batches.get(1).contains("\"line\":\"line 3\""));
+    }
+
+    @Test(timeout = 10000)
+    public void testAddDoesNotWaitForWrite() throws Exception {
+        cut = new RecordingSink(1);
+        cut.blockWrites();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> blockedAdd = executor.submit(() -> cut.add("key", "line 1", new IOException()));
+            assertTrue(cut.writeStarted.await(5, TimeUnit.SECONDS));
+
+            // The first batch is still being written.
+            cut.add("key", "line 2", new IOException());
+
+            cut.unblockWrites();
+            blockedAdd.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, cut.batches.size());
+    }
+
+    @Test
+    public void testFailedBatchIsDropped() throws IOException {
+        cut = new RecordingSink(1);
+        cut.failWrites = true;
+
+        cut.add("key", "line 1", new IOException());
+        cut.failWrites = false;
+        cut.flush();
+
+        assertTrue(cut.batches.isEmpty());
+    }
+
+    private static class RecordingSink extends BatchingDeadLetterSink {
+        private final List<String> batches = new CopyOnWriteArrayList<>();
+        private final CountDownLatch writeStarted = new CountDownLatch(1);
+        private volatile CountDownLatch writeAllowed;
+        private volatile boolean failWrites;
+
+        private RecordingSink(int maxBatchSize) {
+            super(new ObjectMapper(), maxBatchSize);
+        }
+
+        private void blockWrites() {
+            writeAllowed = new CountDownLatch(1);
+        }
+
+        private void unblockWrites() {
+            writeAllowed.countDown();
+        }
+
+        @Override
+        void write(byte[] deadLetters, int count) throws IOException {
+            if (failWrites) {
+                throw new IOException("Bucket not found");
+            }
+            final CountDownLatch allowed = writeAllowed;
+            if (allowed != null && writeStarted.getCount() > 0) {
+                writeStarted.countDown();
+                try {
+                    allowed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            batches.add(new String(deadLetters, StandardCharsets.UTF_8));
+        }
+    }
+}
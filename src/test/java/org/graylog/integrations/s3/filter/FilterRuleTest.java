@@ -0,0 +1,63 @@
+package org.graylog.integrations.s3.filter;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilterRuleTest {
+
+    // Test Cases
+    @Test
+    public void testRulesAreParsed() {
+        final List<FilterRule> rules = FilterRule.parseAll(
+                "CacheCacheStatus=hit, EdgeResponseStatus=200..299 -> 0.01; ClientRequestHost=a.com:8080|b.com -> 0;" +
+                " EdgeResponseStatus=500.. -> 1; ClientRequestPath=/a..b -> 0.5; * -> 0.1");
+
+        assertEquals(5, rules.size());
+        assertEquals("CacheCacheStatus=hit,EdgeResponseStatus=200.0..299.0 -> 0.01", rules.get(0).toString());
+        assertEquals("ClientRequestHost=a.com:8080|b.com -> 0.0", rules.get(1).toString());
+        assertEquals("EdgeResponseStatus=500.0.. -> 1.0", rules.get(2).toString());
+        // Not a numeric range, so the value is compared as text.
+        assertEquals("ClientRequestPath=/a..b -> 0.5", rules.get(3).toString());
+        assertTrue(rules.get(4).getConditions().isEmpty());
+        assertEquals(0.1, rules.get(4).getSampleRate(), 0);
+    }
+
+    @Test
+    public void testNoRules() {
+        assertTrue(FilterRule.parseAll(null).isEmpty());
+        assertTrue(FilterRule.parseAll(" ; ").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRuleWithoutRate() {
+        FilterRule.parseAll("CacheCacheStatus=hit");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateOutOfRange() {
+        FilterRule.parseAll("CacheCacheStatus=hit -> 2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConditionWithoutValue() {
+        FilterRule.parseAll("CacheCacheStatus -> 0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRange() {
+        FilterRule.parseAll("EdgeResponseStatus=500..200 -> 0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyConditions() {
+        final StringBuilder rules = new StringBuilder();
+        for (int i = 0; i <= FilterRule.MAX_CONDITIONS; i++) {
+            rules.append("Field").append(i).append("=x -> 0;");
+        }
+        FilterRule.parseAll(rules.toString());
+    }
+}
@@ -0,0 +1,115 @@
+package org.graylog.integrations.s3.filter;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageFilterTest {
+
+    private static final String CACHE_HIT = "{\"CacheCacheStatus\":\"hit\",\"EdgeResponseStatus\":200," +
+                                            "\"ClientRequestPath\":\"/search\",\"FirewallMatchesActions\":[\"allow\"]}";
+    private static final String CACHE_MISS = "{\"CacheCacheStatus\":\"miss\",\"EdgeResponseStatus\":200," +
+                                             "\"ClientRequestPath\":\"/search\"}";
+    private static final String SERVER_ERROR = "{\"CacheCacheStatus\":\"hit\",\"EdgeResponseStatus\":503," +
+                                               "\"ClientRequestPath\":\"/search\"}";
+    private static final String HEALTH_CHECK = "{\"ClientRequestPath\":\"/healthz\",\"EdgeResponseStatus\":200}";
+
+    // Code Under Test
+    private MessageFilter cut;
+
+    // Test Cases
+    @Test
+    public void testLinesMatchingAllConditionsAreDropped() {
+        givenRules("CacheCacheStatus=hit, EdgeResponseStatus=200..299 -> 0");
+
+        assertFalse(accept(CACHE_HIT));
+        assertTrue(accept(CACHE_MISS));
+        assertTrue(accept(SERVER_ERROR));
+    }
+
+    @Test
+    public void testFirstMatchingRuleDecides() {
+        givenRules("ClientRequestPath=/healthz -> 0; EdgeResponseStatus=200 -> 1; * -> 0");
+
+        assertFalse(accept(HEALTH_CHECK));
+        assertTrue(accept(CACHE_HIT));
+        assertFalse(accept(SERVER_ERROR));
+    }
+
+    @Test
+    public void testInCondition() {
+        givenRules("CacheCacheStatus=hit|stale -> 0");
+
+        assertFalse(accept(CACHE_HIT));
+        assertTrue(accept(CACHE_MISS));
+    }
+
+    @Test
+    public void testMissingFieldDoesNotMatch() {
+        givenRules("CacheCacheStatus=hit|miss -> 0");
+
+        assertTrue(accept(HEALTH_CHECK));
+    }
+
+    @Test
+    public void testInvalidLinesAreKept() {
+        givenRules("CacheCacheStatus=hit -> 0");
+
+        assertTrue(accept("not json"));
+        assertTrue(accept("{\"EdgeResponseStatus\":200,\"CacheCacheStatus\":"));
+    }
+
+    @Test
+    public void testParsingStopsAfterReferencedFields() {
+        givenRules("CacheCacheStatus=hit -> 0");
+
+        assertFalse(accept("{\"CacheCacheStatus\":\"hit\",\"EdgeResponseStatus\":"));
+    }
+
+    @Test
+    public void testMatchAllRuleDoesNotParse() {
+        givenRules("* -> 0");
+
+        assertFalse(accept("not json"));
+    }
+
+    @Test
+    public void testSamplingIsDeterministic() {
+        givenRules("* -> 0.25");
+
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            final String line = "{\"RayID\":\"" + i + "\"}";
+            final boolean accepted = accept(line);
+            assertEquals(accepted, accept(line));
+            if (accepted) {
+                kept++;
+            }
+        }
+        assertTrue("Kept " + kept, kept > 2250 && kept < 2750);
+    }
+
+    @Test
+    public void testNoRulesKeepAllLines() {
+        givenRules("");
+
+        assertTrue(cut.isEmpty());
+        assertTrue(accept("not json"));
+    }
+
+    // GIVENs
+    private void givenRules(String rules) {
+        cut = new MessageFilter(FilterRule.parseAll(rules));
+    }
+
+    // WHENs
+    private boolean accept(String line) {
+        // The line in the middle of a buffer, as it is in a batch.
+        final byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+        return cut.accept(bytes, 2, bytes.length - 4);
+    }
+}
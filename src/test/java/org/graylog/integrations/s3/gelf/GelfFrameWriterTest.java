@@ -0,0 +1,129 @@
+package org.graylog.integrations.s3.gelf;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class GelfFrameWriterTest {
+
+    private static final String FIELDS_JSON = "{\"s\":\"quoted \\\"value\\\"\",\"i\":42,\"d\":2.5,\"t\":true," +
+                                              "\"_u\":\"x\"}";
+    private static final String SHORT_MESSAGE = "line with \"quotes\", \\ and \u00fcml\u00e4uts";
+    private static final double TIMESTAMP = 1555444800.123D;
+
+    // Code Under Test
+    private GelfFrameWriter cut;
+
+    // Test Objects
+    private ObjectMapper objectMapper;
+    private GelfMessageWriter messageWriter;
+
+    @Before
+    public void setUp() {
+        cut = new GelfFrameWriter();
+        objectMapper = new ObjectMapper();
+        messageWriter = new GelfMessageWriter();
+    }
+
+    // Test Cases
+    @Test
+    public void testFrameMatchesGelfMessage() throws IOException {
+        // GIVENs
+        final GelfFrame frame = new GelfFrame();
+        cut.start(frame);
+        messageWriter.start();
+
+        // WHENs
+        writeFields(cut);
+        writeFields(messageWriter);
+        cut.finish(SHORT_MESSAGE, "host-a", TIMESTAMP);
+        messageWriter.finish(SHORT_MESSAGE, "host-a", TIMESTAMP);
+
+        // THENs
+        final Map<String, Object> fields = parse(frame);
+        Assert.assertEquals(parse(encode(messageWriter.getMessage())), fields);
+        Assert.assertEquals("1.1", fields.get("version"));
+        Assert.assertEquals(1, fields.get("level"));
+        Assert.assertEquals(SHORT_MESSAGE, fields.get("short_message"));
+        Assert.assertEquals("quoted \"value\"", fields.get("_s"));
+        Assert.assertEquals(42, fields.get("_i"));
+        Assert.assertEquals(2.5D, fields.get("_d"));
+        Assert.assertEquals("true", fields.get("_t"));
+        Assert.assertEquals("x", fields.get("_u"));
+        Assert.assertEquals(3.0D, fields.get("_n"));
+        Assert.assertEquals("plain", fields.get("_p"));
+    }
+
+    @Test
+    public void testShortMessageFromBytes() throws IOException {
+        // GIVENs
+        final byte[] line = ("ignored" + SHORT_MESSAGE + "ignored").getBytes(StandardCharsets.UTF_8);
+        final int offset = "ignored".length();
+        final int length = SHORT_MESSAGE.getBytes(StandardCharsets.UTF_8).length;
+        final GelfFrame frame = new GelfFrame();
+
+        // WHENs
+        cut.start(frame);
+        cut.finish(line, offset, length, GelfWriter.DEFAULT_HOST, TIMESTAMP);
+
+        // THENs
+        final Map<String, Object> fields = parse(frame);
+        Assert.assertEquals(SHORT_MESSAGE, fields.get("short_message"));
+        Assert.assertEquals(GelfWriter.DEFAULT_HOST, fields.get("host"));
+        Assert.assertEquals(TIMESTAMP, (Double) fields.get("timestamp"), 0);
+    }
+
+    @Test
+    public void testWriterIsReusedAfterAbort() throws IOException {
+        // GIVENs
+        cut.start(new GelfFrame());
+        cut.addField("dropped", "value");
+        cut.abort();
+        final GelfFrame frame = new GelfFrame();
+
+        // WHENs
+        cut.start(frame);
+        cut.finish("message", GelfWriter.DEFAULT_HOST, TIMESTAMP);
+
+        // THENs
+        final Map<String, Object> fields = parse(frame);
+        Assert.assertEquals("message", fields.get("short_message"));
+        Assert.assertFalse(fields.containsKey("_dropped"));
+    }
+
+    // GIVENs
+    private void writeFields(GelfWriter writer) throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser(FIELDS_JSON)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                writer.addField(name, parser, parser.nextToken());
+            }
+        }
+        writer.addField("n", 3D);
+        writer.addField("p", "plain");
+    }
+
+    // WHENs
+    private GelfFrame encode(GelfMessage message) throws IOException {
+        final GelfFrame frame = new GelfFrame();
+        new GelfFrameWriter().write(message, frame);
+        return frame;
+    }
+
+    // THENs
+    private Map<String, Object> parse(GelfFrame frame) throws IOException {
+        return objectMapper.readValue(frame.getBuffer(), 0, frame.getLength(),
+                                      new TypeReference<Map<String, Object>>() {});
+    }
+}
@@ -0,0 +1,84 @@
+package org.graylog.integrations.s3.idempotency;
+
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.IdempotencyStoreType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class IdempotencyCacheTest {
+    private static final String OBJECT_ID = "bucket/key@etag#0055AED6DCD90281E5";
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Code Under Test
+    private IdempotencyCache cut;
+
+    // Test Cases
+    @Test
+    public void testProcessedObjectIsRemembered() {
+        givenCache(100, givenNoStore());
+
+        assertFalse(cut.isProcessed(OBJECT_ID));
+        cut.markProcessed(OBJECT_ID);
+
+        assertTrue(cut.isProcessed(OBJECT_ID));
+        assertFalse(cut.isProcessed("bucket/other-key@etag#0055AED6DCD90281E5"));
+    }
+
+    @Test
+    public void testFileStoreRemembersObjectsAcrossContainers() throws IOException {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("idempotency").resolve("processed-objects");
+        givenCache(100, new FileProcessedObjectStore(file));
+        cut.markProcessed(OBJECT_ID);
+
+        givenCache(100, new FileProcessedObjectStore(file));
+
+        assertTrue(cut.isProcessed(OBJECT_ID));
+    }
+
+    @Test
+    public void testObjectsEvictedFromMemoryAreLookedUpInStore() throws IOException {
+        givenCache(1, new FileProcessedObjectStore(temporaryFolder.newFile().toPath()));
+
+        cut.markProcessed(OBJECT_ID);
+        cut.markProcessed("bucket/other-key@etag#0055AED6DCD90281E5");
+
+        assertTrue(cut.isProcessed(OBJECT_ID));
+    }
+
+    @Test
+    public void testObjectWrittenAgainHasNewId() {
+        final String objectId = IdempotencyCache.getObjectId("bucket", givenObject("etag", "0055AED6DCD90281E5"));
+        final String rewrittenObjectId = IdempotencyCache.getObjectId("bucket", givenObject("etag", "0055AED6DCD90281E6"));
+
+        assertNotEquals(objectId, rewrittenObjectId);
+    }
+
+    // GIVENs
+    private void givenCache(int cacheSize, ProcessedObjectStore store) {
+        final Configuration config = mock(Configuration.class);
+        given(config.getIdempotencyCacheSize()).willReturn(cacheSize);
+        cut = new IdempotencyCache(config, store);
+    }
+
+    private ProcessedObjectStore givenNoStore() {
+        final Configuration config = mock(Configuration.class);
+        given(config.getIdempotencyStoreType()).willReturn(IdempotencyStoreType.NONE);
+        return new ProcessedObjectStoreFactory(config, null).get();
+    }
+
+    private S3EventNotification.S3ObjectEntity givenObject(String eTag, String sequencer) {
+        return new S3EventNotification.S3ObjectEntity("key", 42L, eTag, null, sequencer);
+    }
+}
@@ -0,0 +1,86 @@
+package org.graylog.integrations.s3.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.integrations.s3.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class EmfMetricsWriterTest {
+    private static final String NAMESPACE = "Graylog/S3Lambda";
+
+    // Code Under Test
+    private EmfMetricsWriter cut;
+
+    // Test Objects
+    private final StageMetrics metrics = new StageMetrics();
+    private JsonNode emf;
+
+    @Before
+    public void setUp() {
+        final Configuration config = mock(Configuration.class);
+        given(config.getMetricsNamespace()).willReturn(NAMESPACE);
+        cut = new EmfMetricsWriter(config, new ObjectMapper());
+    }
+
+    // Test Cases
+    @Test
+    public void testMetricsAreWrittenInEmbeddedMetricFormat() {
+        metrics.add(Metric.MESSAGES_SENT, 250);
+        metrics.add(Metric.DECODE_TIME, 1_500_000);
+
+        whenMetricsAreConverted("graylog-s3");
+
+        assertEquals(1234, emf.path("_aws").path("Timestamp").asLong());
+        final JsonNode directive = emf.path("_aws").path("CloudWatchMetrics").get(0);
+        assertEquals(NAMESPACE, directive.path("Namespace").asText());
+        assertEquals("FunctionName", directive.path("Dimensions").get(0).get(0).asText());
+        assertEquals(Metric.values().length, directive.path("Metrics").size());
+        assertEquals("DecodeTime", directive.path("Metrics").get(Metric.DECODE_TIME.ordinal()).path("Name").asText());
+        assertEquals("Milliseconds",
+                     directive.path("Metrics").get(Metric.DECODE_TIME.ordinal()).path("Unit").asText());
+
+        assertEquals("graylog-s3", emf.path("FunctionName").asText());
+        assertEquals(250, emf.path("MessagesSent").asDouble(), 0);
+        assertEquals(1.5, emf.path("DecodeTime").asDouble(), 0);
+        assertEquals(0, emf.path("DecodeFailures").asDouble(), 0);
+    }
+
+    @Test
+    public void testFunctionNameDimensionIsOptional() {
+        whenMetricsAreConverted(null);
+
+        assertEquals(0, emf.path("_aws").path("CloudWatchMetrics").get(0).path("Dimensions").get(0).size());
+        assertFalse(emf.has("FunctionName"));
+    }
+
+    @Test
+    public void testSnapshotResetsCounters() throws IOException {
+        try (InputStream input = new CountingInputStream(new ByteArrayInputStream(new byte[100]), metrics,
+                                                         Metric.BYTES_DOWNLOADED)) {
+            input.read();
+            input.read(new byte[64]);
+            input.skip(10);
+        }
+
+        final Map<Metric, Long> snapshot = metrics.snapshotAndReset();
+
+        assertEquals(75L, (long) snapshot.get(Metric.BYTES_DOWNLOADED));
+        assertEquals(0L, (long) metrics.snapshotAndReset().get(Metric.BYTES_DOWNLOADED));
+    }
+
+    // WHENs
+    private void whenMetricsAreConverted(String functionName) {
+        emf = cut.toEmf(metrics.snapshotAndReset(), functionName, 1234);
+    }
+}
@@ -0,0 +1,114 @@
+package org.graylog.integrations.s3.transport;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSendLimitsTest {
+    private static final long FRAME_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    // Code Under Test
+    private AdaptiveSendLimits cut;
+
+    // Test Objects
+    private long nanoTime;
+    private double heapHeadroom = 1.0;
+
+    // Test Cases
+    @Test
+    public void testLimitsGrowUpToConfiguredMaximums() {
+        givenLimits(512, 256, true);
+        assertEquals(AdaptiveSendLimits.INITIAL_LIMIT, cut.getQueueLimit());
+        assertEquals(AdaptiveSendLimits.INITIAL_LIMIT, cut.getBatchLimit());
+
+        for (int i = 0; i < 200; i++) {
+            whenProducersAreBlocked();
+            whenFullBatchIsSent(FRAME_NANOS, 0);
+        }
+
+        assertEquals(512, cut.getQueueLimit());
+        assertEquals(256, cut.getBatchLimit());
+    }
+
+    @Test
+    public void testSlowSendsHalveBatchLimit() {
+        givenLimits(512, 512, true);
+        whenFullBatchIsSent(FRAME_NANOS, 0);
+        whenFullBatchIsSent(FRAME_NANOS, 0);
+        final int batchLimit = cut.getBatchLimit();
+
+        whenFullBatchIsSent(10 * FRAME_NANOS, 0);
+        // Decreases are spaced out.
+        whenFullBatchIsSent(10 * FRAME_NANOS, 0);
+
+        assertEquals(batchLimit / 2, cut.getBatchLimit());
+    }
+
+    @Test
+    public void testLongQueueWaitHalvesQueueLimit() {
+        givenLimits(512, 512, true);
+
+        whenFullBatchIsSent(FRAME_NANOS, TimeUnit.MILLISECONDS.toNanos(AdaptiveSendLimits.MAX_QUEUE_WAIT_MS + 1));
+
+        assertEquals(AdaptiveSendLimits.INITIAL_LIMIT / 2, cut.getQueueLimit());
+        thenQueueHasSpaceFor(AdaptiveSendLimits.INITIAL_LIMIT / 2);
+    }
+
+    @Test
+    public void testLowHeapHalvesBothLimits() {
+        givenLimits(512, 512, true);
+        whenProducersAreBlocked();
+        heapHeadroom = AdaptiveSendLimits.MIN_HEAP_HEADROOM / 2;
+
+        whenFullBatchIsSent(FRAME_NANOS, 0);
+
+        assertEquals(AdaptiveSendLimits.INITIAL_LIMIT / 2, cut.getQueueLimit());
+        assertEquals(AdaptiveSendLimits.INITIAL_LIMIT / 2, cut.getBatchLimit());
+    }
+
+    @Test
+    public void testConfiguredSizesAreUsedWhenNotAdaptive() {
+        givenLimits(512, 100, false);
+
+        whenProducersAreBlocked();
+        whenFullBatchIsSent(10 * FRAME_NANOS, TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(512, cut.getQueueLimit());
+        assertEquals(100, cut.getBatchLimit());
+    }
+
+    // GIVENs
+    private void givenLimits(int maxQueueSize, int maxBatchSize, boolean adaptive) {
+        cut = new AdaptiveSendLimits(maxQueueSize, maxBatchSize, adaptive, () -> nanoTime, () -> heapHeadroom);
+    }
+
+    // WHENs
+    private void whenFullBatchIsSent(long frameNanos, long queueWaitNanos) {
+        final int batchSize = cut.getBatchLimit();
+        nanoTime += batchSize * frameNanos;
+        cut.onBatchSent(batchSize, batchSize * frameNanos, queueWaitNanos);
+    }
+
+    /**
+     * Fills the queue until a producer finds it full, and takes all frames again.
+     */
+    private void whenProducersAreBlocked() {
+        int queued = 0;
+        while (cut.tryAcquire()) {
+            queued++;
+        }
+        cut.release(queued);
+    }
+
+    // THENs
+    private void thenQueueHasSpaceFor(int frames) {
+        for (int i = 0; i < frames; i++) {
+            assertTrue(cut.tryAcquire());
+        }
+        assertFalse(cut.tryAcquire());
+    }
+}
@@ -0,0 +1,108 @@
+package org.graylog.integrations.s3.transport;
+
+import org.graylog.integrations.s3.LoadBalancingType;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadBalancedFrameTransportTest {
+
+    // Code Under Test
+    private LoadBalancedFrameTransport cut;
+
+    // Test Objects
+    private final CountingTransport first = new CountingTransport("first");
+    private final CountingTransport second = new CountingTransport("second");
+
+    @After
+    public void tearDown() {
+        cut.stop();
+    }
+
+    // Test Cases
+    @Test
+    public void testRoundRobin() throws InterruptedException {
+        givenTransports(LoadBalancingType.ROUND_ROBIN);
+
+        whenFramesAreSent(4);
+
+        thenEachTransportSent(2);
+    }
+
+    @Test
+    public void testFramesAreQueuedInTurnWhenNoTransportIsAvailable() throws InterruptedException {
+        givenTransports(LoadBalancingType.ROUND_ROBIN);
+        first.available = false;
+        second.available = false;
+
+        whenFramesAreSent(4);
+
+        thenEachTransportSent(2);
+    }
+
+    // GIVENs
+    private void givenTransports(LoadBalancingType loadBalancingType) {
+        cut = new LoadBalancedFrameTransport(Arrays.asList(first, second), loadBalancingType);
+    }
+
+    // WHENs
+    private void whenFramesAreSent(int frameCount) throws InterruptedException {
+        for (int i = 0; i < frameCount; i++) {
+            cut.send(cut.newFrame());
+        }
+        assertTrue(cut.flush(10, TimeUnit.MILLISECONDS, 500));
+    }
+
+    // THENs
+    private void thenEachTransportSent(int frameCount) {
+        assertEquals(frameCount, first.written.get());
+        assertEquals(frameCount, second.written.get());
+    }
+
+    private static class CountingTransport extends AbstractFrameTransport {
+        private final AtomicInteger written = new AtomicInteger();
+        private volatile boolean available = true;
+        private volatile boolean connected;
+
+        private CountingTransport(String name) {
+            super(name, 16, 10, 100, 16, 0, false, new StageMetrics());
+        }
+
+        @Override
+        boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        void connect() {
+            connected = true;
+        }
+
+        @Override
+        boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        void write(GelfFrame frame) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        void flushWrites() {
+        }
+
+        @Override
+        void disconnect() {
+            connected = false;
+        }
+    }
+}
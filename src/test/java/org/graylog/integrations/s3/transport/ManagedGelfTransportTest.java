@@ -0,0 +1,73 @@
+package org.graylog.integrations.s3.transport;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class ManagedGelfTransportTest {
+
+    // Code Under Test
+    private ManagedGelfTransport cut;
+
+    // Test Objects
+    private final List<GelfFrameTransport> createdTransports = new ArrayList<>();
+    private final GelfMessage message = new GelfMessage("test");
+
+    // Test Cases
+    @Test
+    public void testFlushKeepsTransportOpen() throws InterruptedException {
+        givenManagedTransport();
+
+        cut.send(message);
+        cut.flush(10, TimeUnit.MILLISECONDS, 1);
+        cut.send(message);
+        cut.flush(10, TimeUnit.MILLISECONDS, 1);
+
+        assertEquals(1, createdTransports.size());
+        final GelfFrameTransport transport = createdTransports.get(0);
+        verify(transport, times(2)).send(message);
+        verify(transport, times(2)).flush(10, TimeUnit.MILLISECONDS, 1);
+        verify(transport, never()).stop();
+    }
+
+    @Test
+    public void testSendAfterStopOpensNewTransport() throws InterruptedException {
+        givenManagedTransport();
+
+        cut.send(message);
+        cut.flushAndStopSynchronously(10, TimeUnit.MILLISECONDS, 1);
+        cut.send(message);
+
+        assertEquals(2, createdTransports.size());
+        verify(createdTransports.get(0)).stop();
+        verify(createdTransports.get(1)).send(message);
+    }
+
+    @Test
+    public void testTransportIsOpenedOnFirstMessage() {
+        givenManagedTransport();
+
+        // Nothing to flush or stop yet.
+        cut.flush(10, TimeUnit.MILLISECONDS, 1);
+        cut.stop();
+        assertEquals(0, createdTransports.size());
+
+        cut.trySend(message);
+        assertEquals(1, createdTransports.size());
+    }
+
+    // GIVENs
+    private void givenManagedTransport() {
+        cut = new ManagedGelfTransport(() -> {
+            final GelfFrameTransport transport = mock(GelfFrameTransport.class);
+            createdTransports.add(transport);
+            return transport;
+        });
+    }
+}
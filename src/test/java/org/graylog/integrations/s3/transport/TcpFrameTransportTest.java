@@ -0,0 +1,161 @@
+package org.graylog.integrations.s3.transport;
+
+import com.github.joschi.jadconfig.JadConfig;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import com.google.common.net.HostAndPort;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TcpFrameTransportTest {
+
+    // Code Under Test
+    private TcpFrameTransport cut;
+
+    // Test Objects
+    private ServerSocket serverSocket;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket();
+        // A small receive window, so that a peer which does not read blocks the writes soon.
+        serverSocket.setReceiveBufferSize(4096);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (cut != null) {
+            cut.stop();
+        }
+        serverSocket.close();
+    }
+
+    // Test Cases
+    @Test(timeout = 10000)
+    public void testFramesAreNullTerminated() throws Exception {
+        givenTransport();
+
+        whenFramesAreSent("first", "second");
+
+        try (Socket connection = serverSocket.accept()) {
+            final InputStream input = connection.getInputStream();
+            assertEquals("first", readFrame(input));
+            assertEquals("second", readFrame(input));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testReconnectsAfterThePeerClosedTheConnection() throws Exception {
+        givenTransport();
+        whenFramesAreSent("first");
+        try (Socket connection = serverSocket.accept()) {
+            assertEquals("first", readFrame(connection.getInputStream()));
+            assertTrue(cut.flush(10, TimeUnit.MILLISECONDS, 100));
+        }
+
+        // The first write after the peer closed the connection may still succeed, so keep sending until the
+        // transport notices and connects again.
+        serverSocket.setSoTimeout(50);
+        Socket reconnection = null;
+        for (int i = 0; i < 200 && reconnection == null; i++) {
+            whenFramesAreSent("after close " + i);
+            try {
+                reconnection = serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                // Not reconnected yet.
+            }
+        }
+
+        assertNotNull(reconnection);
+        try (Socket connection = reconnection) {
+            final String frame = readFrame(connection.getInputStream());
+            assertNotNull(frame);
+            assertTrue(frame, frame.startsWith("after close "));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testStopAbortsABlockedWrite() throws Exception {
+        givenTransport();
+        final char[] largeMessage = new char[1024 * 1024];
+        Arrays.fill(largeMessage, 'x');
+
+        // The peer accepts the connection but never reads, so the writes block once the socket buffers are full.
+        for (int i = 0; i < 16; i++) {
+            whenFramesAreSent(new String(largeMessage));
+        }
+        assertFalse(cut.flush(100, TimeUnit.MILLISECONDS, 5));
+
+        final long startNanos = System.nanoTime();
+        cut.stop();
+
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(4));
+        thenSenderThreadHasEnded();
+    }
+
+    // GIVENs
+    private void givenTransport() throws Exception {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "localhost");
+        settings.put("RECONNECT_DELAY", "10");
+        settings.put("TCP_QUEUE_SIZE", "64");
+        settings.put("ADAPTIVE_SENDING", "false");
+        final Configuration config = new Configuration();
+        new JadConfig(new InMemoryRepository(settings), config).process();
+        cut = new TcpFrameTransport(config, HostAndPort.fromParts("127.0.0.1", serverSocket.getLocalPort()),
+                                    new StageMetrics());
+    }
+
+    // WHENs
+    private void whenFramesAreSent(String... messages) throws InterruptedException {
+        for (String message : messages) {
+            final GelfFrame frame = cut.newFrame();
+            final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            frame.write(bytes, 0, bytes.length);
+            cut.send(frame);
+        }
+    }
+
+    // THENs
+    private void thenSenderThreadHasEnded() {
+        final String senderName = "gelf-" + cut + "-sender";
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName(), senderName.equals(thread.getName()) && thread.isAlive());
+        }
+    }
+
+    /**
+     * @return The next null-terminated frame, or null at the end of the stream.
+     */
+    private static String readFrame(InputStream input) throws IOException {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) > 0) {
+            frame.write(b);
+        }
+        return b == -1 ? null : new String(frame.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
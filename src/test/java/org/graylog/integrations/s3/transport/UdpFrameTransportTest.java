@@ -0,0 +1,163 @@
+package org.graylog.integrations.s3.transport;
+
+import com.github.joschi.jadconfig.JadConfig;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HostAndPort;
+import org.graylog.integrations.s3.Configuration;
+import org.graylog.integrations.s3.gelf.GelfFrame;
+import org.graylog.integrations.s3.metrics.StageMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UdpFrameTransportTest {
+    private static final int MAX_CHUNK_SIZE = 1420;
+    private static final int CHUNK_HEADER_LENGTH = 12;
+
+    // Code Under Test
+    private UdpFrameTransport cut;
+
+    // Test Objects
+    private DatagramSocket receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        receiver = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        receiver.setReceiveBufferSize(1024 * 1024);
+        receiver.setSoTimeout(5000);
+
+        final Map<String, String> settings = new HashMap<>();
+        settings.put("GRAYLOG_HOST", "localhost");
+        settings.put("PROTOCOL_TYPE", "udp");
+        final Configuration config = new Configuration();
+        new JadConfig(new InMemoryRepository(settings), config).process();
+        cut = new UdpFrameTransport(config, HostAndPort.fromParts("127.0.0.1", receiver.getLocalPort()),
+                                    new StageMetrics());
+    }
+
+    @After
+    public void tearDown() {
+        cut.stop();
+        receiver.close();
+    }
+
+    // Test Cases
+    @Test
+    public void testSmallMessagesAreSentInOneDatagram() throws Exception {
+        final byte[] message = "a short message".getBytes(StandardCharsets.UTF_8);
+
+        whenMessageIsSent(message);
+
+        assertArrayEquals(message, gunzip(receive()));
+    }
+
+    @Test
+    public void testLargeMessagesAreChunked() throws Exception {
+        final byte[] message = randomBytes(5000);
+
+        whenMessageIsSent(message);
+
+        assertArrayEquals(message, gunzip(thenChunksAreReceived(4)));
+    }
+
+    @Test
+    public void testLargestMessageIsSentInAtMost128Chunks() throws Exception {
+        // Random bytes do not compress, so the compressed message still just fits into 128 chunks.
+        final byte[] message = randomBytes(128 * MAX_CHUNK_SIZE - 1000);
+
+        whenMessageIsSent(message);
+
+        assertArrayEquals(message, gunzip(thenChunksAreReceived(128)));
+    }
+
+    @Test
+    public void testMessagesNeedingMoreThan128ChunksAreDropped() throws Exception {
+        final byte[] smallMessage = "a short message".getBytes(StandardCharsets.UTF_8);
+
+        whenMessageIsSent(randomBytes(128 * MAX_CHUNK_SIZE + 1000));
+        whenMessageIsSent(smallMessage);
+
+        // Nothing of the dropped message was sent before the next one.
+        assertArrayEquals(smallMessage, gunzip(receive()));
+    }
+
+    // WHENs
+    private void whenMessageIsSent(byte[] message) throws InterruptedException {
+        final GelfFrame frame = cut.newFrame();
+        frame.write(message, 0, message.length);
+        cut.send(frame);
+    }
+
+    // THENs
+    /**
+     * Checks the header of each chunk: the magic bytes, the message ID, the sequence number and the chunk count.
+     *
+     * @return The reassembled content of the chunks.
+     */
+    private byte[] thenChunksAreReceived(int chunkCount) throws IOException {
+        final byte[][] chunks = new byte[chunkCount][];
+        long messageId = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            final ByteBuffer datagram = ByteBuffer.wrap(receive());
+            assertTrue(datagram.remaining() <= CHUNK_HEADER_LENGTH + MAX_CHUNK_SIZE);
+            assertEquals(0x1e, datagram.get());
+            assertEquals(0x0f, datagram.get());
+            final long chunkMessageId = datagram.getLong();
+            if (i == 0) {
+                messageId = chunkMessageId;
+            }
+            assertEquals(messageId, chunkMessageId);
+            final int sequenceNumber = datagram.get() & 0xff;
+            assertEquals(chunkCount, datagram.get() & 0xff);
+            chunks[sequenceNumber] = Arrays.copyOfRange(datagram.array(), datagram.position(), datagram.limit());
+        }
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < chunkCount; i++) {
+            // All chunks but the last are full.
+            if (i < chunkCount - 1) {
+                assertEquals(MAX_CHUNK_SIZE, chunks[i].length);
+            }
+            content.write(chunks[i]);
+        }
+        return content.toByteArray();
+    }
+
+    private byte[] receive() throws IOException {
+        final DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        receiver.receive(packet);
+        return Arrays.copyOf(packet.getData(), packet.getLength());
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return ByteStreams.toByteArray(input);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}